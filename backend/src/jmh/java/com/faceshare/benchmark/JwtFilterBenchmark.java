@@ -0,0 +1,142 @@
+package com.faceshare.benchmark;
+
+import com.faceshare.config.JwtConfig;
+import com.faceshare.model.User;
+import com.faceshare.security.JwtAuthenticationFilter;
+import com.faceshare.service.JwtService;
+import com.faceshare.service.RevokedTokens;
+import com.faceshare.service.UserService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.security.Key;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of JwtAuthenticationFilter for a client repeating one token,
+ * against the previous implementation, which parsed and verified the token
+ * three times per request and rebuilt the HMAC key and parser for each parse,
+ * then loaded the user. The legacy filter's user lookup is a stub, so the
+ * difference is token handling only; the current filter builds its principal
+ * from the token's claims.
+ *
+ * Run with: mvn -Pbenchmark verify -Djmh.args="JwtFilterBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class JwtFilterBenchmark {
+
+    private static final String SECRET = "benchmarkSecretKey123456789012345678901234567890";
+    private static final String EMAIL = "alice@example.com";
+
+    private final FilterChain chain = (request, response) -> { };
+
+    private String authorization;
+    private UserService userService;
+    private JwtAuthenticationFilter filter;
+    private JwtAuthenticationFilter uncachedFilter;
+    private OncePerRequestFilter legacyFilter;
+
+    @Setup
+    public void setUp() {
+        JwtService jwtService = new JwtService(SECRET, 86_400_000, 10_000);
+        User user = new User(EMAIL, "password", "Alice");
+        user.setId(1L);
+        authorization = "Bearer " + jwtService.generateToken(user);
+
+        userService = Mockito.mock(UserService.class);
+        Mockito.when(userService.loadUserByUsername(EMAIL)).thenReturn(user);
+
+        JwtConfig jwtConfig = new JwtConfig();
+        ReflectionTestUtils.setField(jwtConfig, "header", "Authorization");
+
+        RevokedTokens revokedTokens = new RevokedTokens(10_000);
+        filter = new JwtAuthenticationFilter(jwtService, revokedTokens, userService, jwtConfig, "");
+        uncachedFilter = new JwtAuthenticationFilter(new JwtService(SECRET, 86_400_000, 0), revokedTokens,
+                userService, jwtConfig, "");
+        legacyFilter = new LegacyJwtFilter();
+    }
+
+    @Benchmark
+    public Object legacy() throws Exception {
+        return run(legacyFilter);
+    }
+
+    @Benchmark
+    public Object singleParse() throws Exception {
+        return run(uncachedFilter);
+    }
+
+    @Benchmark
+    public Object singleParseCached() throws Exception {
+        return run(filter);
+    }
+
+    private Object run(OncePerRequestFilter target) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/photos/feed");
+        request.addHeader("Authorization", authorization);
+        try {
+            target.doFilter(request, new MockHttpServletResponse(), chain);
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    // The filter and JwtService as they were: extractUsername, then isTokenValid
+    // (which extracts the username and the expiry again), each parse from scratch
+    private class LegacyJwtFilter extends OncePerRequestFilter {
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                        FilterChain filterChain) throws java.io.IOException,
+                jakarta.servlet.ServletException {
+            String jwt = request.getHeader("Authorization").substring(7);
+            String userEmail = parse(jwt).getSubject();
+            if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                UserDetails userDetails = userService.loadUserByUsername(userEmail);
+                boolean valid = parse(jwt).getSubject().equals(userEmail)
+                        && !parse(jwt).getExpiration().before(new Date());
+                if (valid) {
+                    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                            userDetails, null, userDetails.getAuthorities()));
+                }
+            }
+            filterChain.doFilter(request, response);
+        }
+
+        private Claims parse(String token) {
+            Key key = Keys.hmacShaKeyFor(SECRET.getBytes());
+            return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+        }
+    }
+}
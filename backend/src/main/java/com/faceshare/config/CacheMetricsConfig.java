@@ -0,0 +1,42 @@
+package com.faceshare.config;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+
+/**
+ * Per-region metrics for the Hibernate second-level cache.
+ *
+ * Spring Boot already publishes Hibernate's statistics (hit/miss/put per
+ * region as hibernate.second.level.cache.*); those have no evictions, so each
+ * JCache region is also bound as cache.* (gets, puts, removals, evictions)
+ * tagged with its region name.
+ */
+@Configuration
+public class CacheMetricsConfig {
+
+    @Bean
+    public MeterBinder hibernateCacheRegionMetrics(EntityManagerFactory entityManagerFactory) {
+        return registry -> {
+            RegionFactory regionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                    .getCache().getRegionFactory();
+            // Absent when the second-level cache is switched off
+            if (!(regionFactory instanceof JCacheRegionFactory jcache)) {
+                return;
+            }
+
+            CacheManager cacheManager = jcache.getCacheManager();
+            for (String name : cacheManager.getCacheNames()) {
+                JCacheMetrics.monitor(registry, cacheManager.getCache(name), Tags.of("cacheManager", "hibernate"));
+            }
+        };
+    }
+}
@@ -0,0 +1,94 @@
+package com.faceshare.config;
+
+import com.faceshare.service.ReadYourWritesTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-replica routing, active only when read-replicas.urls is set. Otherwise
+ * Spring Boot configures the single primary datasource as usual.
+ *
+ * The primary pool is still built from spring.datasource.*; each replica gets
+ * its own read-only pool. The application sees one DataSource that routes
+ * per transaction (see ReplicaRoutingDataSource).
+ */
+@Configuration
+@ConditionalOnExpression("'${read-replicas.urls:}' != ''")
+public class ReadReplicaConfig {
+
+    @Value("${read-replicas.urls}")
+    private String[] replicaUrls;
+
+    @Value("${read-replicas.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${read-replicas.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${read-replicas.pool-size:10}")
+    private int replicaPoolSize;
+
+    @Value("${read-replicas.lag-query:}")
+    private String lagQuery;
+
+    @Value("${read-replicas.max-lag-seconds:5}")
+    private double maxLagSeconds;
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties,
+                                                             Environment environment,
+                                                             ReadYourWritesTracker readYourWrites) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        if (!StringUtils.hasText(primary.getPoolName())) {
+            primary.setPoolName("primary");
+        }
+
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < replicaUrls.length; i++) {
+            String name = "replica-" + (i + 1);
+            replicas.put(name, createReplicaPool(name, replicaUrls[i].trim(), properties.determineDriverClassName()));
+        }
+
+        return new ReplicaRoutingDataSource(primary, replicas, readYourWrites, lagQuery, maxLagSeconds);
+    }
+
+    /**
+     * The DataSource everything else uses. The lazy proxy delays taking a real
+     * connection until the first statement, when the read-only flag is known.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    private HikariDataSource createReplicaPool(String name, String url, String driverClassName) {
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName(name);
+        replica.setJdbcUrl(url);
+        replica.setUsername(replicaUsername);
+        replica.setPassword(replicaPassword);
+        replica.setDriverClassName(driverClassName);
+        replica.setMaximumPoolSize(replicaPoolSize);
+        replica.setReadOnly(true);
+        // Fail fast so an unreachable replica drops out instead of stalling reads
+        replica.setConnectionTimeout(2000);
+        replica.setInitializationFailTimeout(-1);
+        return replica;
+    }
+}
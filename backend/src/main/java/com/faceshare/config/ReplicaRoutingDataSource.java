@@ -0,0 +1,136 @@
+package com.faceshare.config;
+
+import com.faceshare.service.ReadYourWritesTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to a healthy read replica and everything else
+ * to the primary.
+ *
+ * Reads stay on the primary when:
+ * - no replica passed its last health check (unreachable, or lagging by more than maxLagSeconds)
+ * - the current user's data changed recently (read-your-writes, see ReadYourWritesTracker)
+ *
+ * The lookup key is decided when a connection is first used, so this must sit
+ * behind a LazyConnectionDataSourceProxy; the transaction manager opens the
+ * connection before it publishes the read-only flag.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private final HikariDataSource primary;
+    private final Map<String, HikariDataSource> replicas;
+    private final ReadYourWritesTracker readYourWrites;
+    private final String lagQuery;
+    private final double maxLagSeconds;
+
+    private volatile List<String> healthyReplicas = List.of();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, Map<String, HikariDataSource> replicas,
+                                    ReadYourWritesTracker readYourWrites, String lagQuery, double maxLagSeconds) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.readYourWrites = readYourWrites;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLagSeconds;
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        checkReplicas();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+
+        List<String> candidates = healthyReplicas;
+        if (candidates.isEmpty() || readYourWrites.currentUserWroteRecently()) {
+            return PRIMARY;
+        }
+        return candidates.get(Math.floorMod(nextReplica.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * Re-check every replica: it must answer, and its lag must be within the
+     * tolerance. Unhealthy replicas get no reads until a later check passes.
+     */
+    @Scheduled(fixedDelayString = "${read-replicas.health-check-interval:5000}")
+    public void checkReplicas() {
+        List<String> healthy = new ArrayList<>(replicas.size());
+        for (Map.Entry<String, HikariDataSource> replica : replicas.entrySet()) {
+            if (isHealthy(replica.getKey(), replica.getValue())) {
+                healthy.add(replica.getKey());
+            }
+        }
+
+        if (healthy.size() != healthyReplicas.size()) {
+            logger.info("Healthy read replicas: {} of {}", healthy.size(), replicas.size());
+        }
+        healthyReplicas = List.copyOf(healthy);
+    }
+
+    public List<String> getHealthyReplicas() {
+        return healthyReplicas;
+    }
+
+    @Override
+    public void close() {
+        replicas.values().forEach(HikariDataSource::close);
+        primary.close();
+    }
+
+    private boolean isHealthy(String name, HikariDataSource replica) {
+        try (Connection connection = replica.getConnection()) {
+            if (!connection.isValid(2)) {
+                return false;
+            }
+            if (!StringUtils.hasText(lagQuery)) {
+                return true;
+            }
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(lagQuery)) {
+                double lagSeconds = rs.next() ? rs.getDouble(1) : 0;
+                if (lagSeconds > maxLagSeconds) {
+                    logger.warn("Replica {} is {}s behind (max {}s), reading from primary", name, lagSeconds, maxLagSeconds);
+                    return false;
+                }
+                return true;
+            }
+        } catch (SQLException e) {
+            logger.warn("Replica {} failed its health check: {}", name, e.getMessage());
+            return false;
+        }
+    }
+}
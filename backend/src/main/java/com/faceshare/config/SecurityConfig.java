@@ -1,17 +1,21 @@
 package com.faceshare.config;
 
+import com.faceshare.exception.CustomExceptions;
 import com.faceshare.security.JwtAuthenticationFilter;
 import com.faceshare.service.UserService;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -30,16 +34,29 @@ public class SecurityConfig {
     @Value("${cors.allowed-origins:}")
     private String additionalAllowedOrigins;
 
+    // The PasswordEncoder is PooledPasswordEncoder: BCrypt on its own bounded pool.
+    // Passwords hashed at another cost are rehashed through UserService on login,
+    // as a best effort: the password is already verified, so if the pool has no
+    // room for the extra hash the login succeeds and the next one rehashes.
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
-    }
-
-    @Bean
-    public DaoAuthenticationProvider authenticationProvider(UserService userService) {
-        DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
+    public DaoAuthenticationProvider authenticationProvider(UserService userService, PasswordEncoder passwordEncoder) {
+        DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider() {
+            @Override
+            protected Authentication createSuccessAuthentication(Object principal, Authentication authentication,
+                                                                 UserDetails user) {
+                try {
+                    return super.createSuccessAuthentication(principal, authentication, user);
+                } catch (CustomExceptions.ServiceUnavailable e) {
+                    UsernamePasswordAuthenticationToken result = UsernamePasswordAuthenticationToken.authenticated(
+                            principal, authentication.getCredentials(), user.getAuthorities());
+                    result.setDetails(authentication.getDetails());
+                    return result;
+                }
+            }
+        };
         authProvider.setUserDetailsService(userService);
-        authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setUserDetailsPasswordService(userService);
+        authProvider.setPasswordEncoder(passwordEncoder);
         return authProvider;
     }
 
@@ -54,11 +71,16 @@ public class SecurityConfig {
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(authz -> authz
+                        // Async dispatches (SSE, streamed responses) were authorized on the original request
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // Public endpoints
                         .requestMatchers("/api/auth/**").permitAll()
                         .requestMatchers("/api/health/**").permitAll()
+                        .requestMatchers("/api/photos/signed/**").permitAll()  // HMAC-signed URLs, checked in the controller
                         .requestMatchers("/h2-console/**").permitAll()  // Only if console enabled
                         .requestMatchers("/actuator/health").permitAll()
+                        // Metrics and the storage GC report are for operators
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         // Swagger/OpenAPI
                         .requestMatchers(
                                 "/swagger-ui.html",
@@ -102,7 +124,8 @@ public class SecurityConfig {
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
         configuration.setAllowCredentials(true);
-        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type"));
+        // ETag so browser clients can revalidate the feeds with If-None-Match
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "ETag"));
         configuration.setMaxAge(3600L); // Cache preflight for 1 hour
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -0,0 +1,94 @@
+package com.faceshare.config;
+
+import com.faceshare.repository.PhotoBlobRepository;
+import com.faceshare.repository.PhotoRepository;
+import com.faceshare.storage.LocalBlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Moves files left in the flat upload directory by older versions into the
+ * fanned-out layout (see LocalBlobStore.fanOutKey) and repoints the photos and
+ * blobs that reference them. Enabled with file.migrate-layout=true.
+ *
+ * Each file's rows are updated before it is moved, so an interruption leaves
+ * rows pointing at a file that is still flat; LocalBlobStore falls back to the
+ * other layout in that window, and rerunning finishes the job.
+ */
+@Component
+@ConditionalOnProperty(name = "file.migrate-layout", havingValue = "true")
+public class UploadLayoutMigration implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadLayoutMigration.class);
+
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    @Autowired
+    private LocalBlobStore localBlobStore;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private PhotoBlobRepository photoBlobRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    public void run(String... args) throws Exception {
+        Path root = localBlobStore.getRoot();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+
+        List<Path> flatFiles;
+        try (Stream<Path> entries = Files.list(root)) {
+            flatFiles = entries
+                    .filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().endsWith(".tmp"))
+                    .toList();
+        }
+        if (flatFiles.isEmpty()) {
+            return;
+        }
+
+        logger.info("Migrating {} files in {} to the fanned-out layout", flatFiles.size(), root.toAbsolutePath());
+        int moved = 0;
+        for (Path file : flatFiles) {
+            String fileName = file.getFileName().toString();
+            String key = LocalBlobStore.fanOutKey(fileName);
+            if (key.equals(fileName)) {
+                continue;
+            }
+            migrate(root, fileName, key);
+            if (++moved % PROGRESS_INTERVAL == 0) {
+                logger.info("Migrated {} of {} files", moved, flatFiles.size());
+            }
+        }
+        logger.info("Upload layout migration finished: {} files moved", moved);
+    }
+
+    // A flat file's key is its name (an original or a derivative, never both)
+    private void migrate(Path root, String fileName, String key) throws IOException {
+        String backend = LocalBlobStore.NAME;
+        transactionTemplate.executeWithoutResult(status -> {
+            photoRepository.updateStorageKey(backend, fileName, key);
+            photoRepository.updateThumbnailKey(backend, fileName, key);
+            photoRepository.updatePreviewKey(backend, fileName, key);
+            photoBlobRepository.updateStorageKey(backend, fileName, key);
+        });
+        localBlobStore.moveIntoPlace(root.resolve(fileName), root.resolve(key));
+    }
+}
@@ -1,12 +1,19 @@
 package com.faceshare.config;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
 import org.springframework.web.servlet.config.annotation.*;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    // Endpoints that read multipart bodies as a stream themselves
+    private static final String BATCH_UPLOAD_PATH = "/api/photos/upload-batch";
+
     @Bean
     public WebMvcConfigurer corsConfigurer() {
         return new WebMvcConfigurer() {
@@ -28,4 +35,20 @@ public class WebConfig implements WebMvcConfigurer {
             }
         };
     }
+
+    /**
+     * Standard multipart handling, except for the batch upload endpoint:
+     * parsing it up front would buffer the whole album and apply the
+     * per-request size limit, so it is left for BatchUploadService to stream.
+     */
+    @Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+    public MultipartResolver multipartResolver() {
+        return new StandardServletMultipartResolver() {
+            @Override
+            public boolean isMultipart(HttpServletRequest request) {
+                String path = request.getRequestURI().substring(request.getContextPath().length());
+                return !BATCH_UPLOAD_PATH.equals(path) && super.isMultipart(request);
+            }
+        };
+    }
 }
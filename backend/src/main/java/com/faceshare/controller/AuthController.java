@@ -2,18 +2,24 @@ package com.faceshare.controller;
 
 import com.faceshare.dto.AuthResponse;
 import com.faceshare.dto.AuthRequest;
+import com.faceshare.dto.RefreshRequest;
 import com.faceshare.dto.UserDto;
+import com.faceshare.exception.CustomExceptions;
 import com.faceshare.model.User;
 import com.faceshare.service.JwtService;
+import com.faceshare.service.RefreshTokenService;
+import com.faceshare.service.RevokedTokens;
 import com.faceshare.service.UserService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -21,6 +27,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -28,12 +35,21 @@ public class AuthController {
 
     private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
 
+    // Seconds clients wait before retrying a login or registration the BCrypt pool had no room for
+    private static final String PASSWORD_POOL_RETRY_AFTER = "2";
+
     @Autowired
     private UserService userService;
 
     @Autowired
     private JwtService jwtService;
 
+    @Autowired
+    private RevokedTokens revokedTokens;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
     @Autowired
     private AuthenticationManager authenticationManager;
 
@@ -53,12 +69,14 @@ public class AuthController {
             User user = userService.createUser(request.getEmail(), request.getPassword(), request.getFullName());
             logger.info("User registered successfully with ID: {}", user.getId());
 
-            // Generate JWT token
-            String token = jwtService.generateToken(user.getEmail());
+            // Generate JWT token, and a refresh token to renew it without the password
+            String token = jwtService.generateToken(user);
+            String refreshToken = refreshTokenService.issue(user);
 
             // Create response
             AuthResponse response = new AuthResponse(
                     token,
+                    refreshToken,
                     user.getId(),
                     user.getEmail(),
                     user.getFullName(),
@@ -67,6 +85,8 @@ public class AuthController {
 
             return ResponseEntity.ok(response);
 
+        } catch (CustomExceptions.ServiceUnavailable e) {
+            return passwordPoolBusy();
         } catch (Exception e) {
             logger.error("Registration failed for email: {}", request.getEmail(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -89,12 +109,14 @@ public class AuthController {
 
             logger.info("User authenticated successfully: {}", user.getEmail());
 
-            // Generate JWT token
-            String token = jwtService.generateToken(user.getEmail());
+            // Generate JWT token, and a refresh token to renew it without the password
+            String token = jwtService.generateToken(user);
+            String refreshToken = refreshTokenService.issue(user);
 
             // Create response
             AuthResponse response = new AuthResponse(
                     token,
+                    refreshToken,
                     user.getId(),
                     user.getEmail(),
                     user.getFullName(),
@@ -107,6 +129,16 @@ public class AuthController {
             logger.warn("Login failed: Invalid credentials for email: {}", request.getEmail());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(createErrorResponse("Invalid email or password"));
+        } catch (CustomExceptions.ServiceUnavailable e) {
+            return passwordPoolBusy();
+        } catch (InternalAuthenticationServiceException e) {
+            // Unknown emails are still checked against a dummy hash, inside the user lookup
+            if (e.getCause() instanceof CustomExceptions.ServiceUnavailable) {
+                return passwordPoolBusy();
+            }
+            logger.error("Login failed for email: {}", request.getEmail(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Login failed: " + e.getMessage()));
         } catch (Exception e) {
             logger.error("Login failed for email: {}", request.getEmail(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -114,23 +146,24 @@ public class AuthController {
         }
     }
 
+    /**
+     * Exchange a refresh token for a new access token and the refresh token's
+     * successor. No password check: one indexed lookup of the token. The
+     * presented token is spent, and presenting it again logs out every session
+     * descended from the same login.
+     */
     @PostMapping("/refresh")
-    public ResponseEntity<?> refresh(@RequestHeader("Authorization") String authHeader) {
+    public ResponseEntity<?> refresh(@Valid @RequestBody RefreshRequest request) {
         try {
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(createErrorResponse("Invalid authorization header"));
-            }
-
-            String token = authHeader.substring(7);
-            String email = jwtService.extractUsername(token);
+            Optional<RefreshTokenService.Rotation> rotation = refreshTokenService.rotate(request.getRefreshToken());
 
-            if (email != null && jwtService.isTokenValid(token, email)) {
-                User user = userService.findByEmail(email);
-                String newToken = jwtService.generateToken(email);
+            if (rotation.isPresent()) {
+                User user = rotation.get().user();
+                String newToken = jwtService.generateToken(user);
 
                 AuthResponse response = new AuthResponse(
                         newToken,
+                        rotation.get().refreshToken(),
                         user.getId(),
                         user.getEmail(),
                         user.getFullName(),
@@ -141,7 +174,7 @@ public class AuthController {
             }
 
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(createErrorResponse("Invalid or expired token"));
+                    .body(createErrorResponse("Invalid or expired refresh token"));
 
         } catch (Exception e) {
             logger.error("Token refresh failed", e);
@@ -176,15 +209,31 @@ public class AuthController {
         }
     }
 
+    /**
+     * Revoke the presented access token until it expires, and the refresh
+     * token's family if one is sent. The client still discards both; this
+     * stops copies of them from being used after logout.
+     */
     @PostMapping("/logout")
-    public ResponseEntity<?> logout() {
-        // Since we're using stateless JWT, logout is handled on client side
-        // In a production app, you might want to implement a token blacklist
+    public ResponseEntity<?> logout(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                    @RequestBody(required = false) RefreshRequest request) {
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            jwtService.verify(authHeader.substring(7)).ifPresent(revokedTokens::revoke);
+        }
+        if (request != null && request.getRefreshToken() != null && !request.getRefreshToken().isBlank()) {
+            refreshTokenService.revoke(request.getRefreshToken());
+        }
         Map<String, String> response = new HashMap<>();
         response.put("message", "Logged out successfully");
         return ResponseEntity.ok(response);
     }
 
+    private ResponseEntity<?> passwordPoolBusy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, PASSWORD_POOL_RETRY_AFTER)
+                .body(createErrorResponse("Too many sign-ins in progress, try again shortly"));
+    }
+
     private Map<String, String> createErrorResponse(String message) {
         Map<String, String> error = new HashMap<>();
         error.put("error", message);
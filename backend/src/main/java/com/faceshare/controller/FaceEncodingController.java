@@ -1,14 +1,13 @@
 package com.faceshare.controller;
 
 import com.faceshare.model.FaceEncoding;
-import com.faceshare.model.User;
+import com.faceshare.security.AuthenticatedUser;
 import com.faceshare.service.FaceRecognitionService;
-import com.faceshare.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -29,9 +28,6 @@ public class FaceEncodingController {
     @Autowired
     private FaceRecognitionService faceRecognitionService;
 
-    @Autowired
-    private UserService userService;
-
     /**
      * Register user's face for recognition
      * User uploads a photo of their face, and the system extracts and stores the encoding
@@ -40,18 +36,9 @@ public class FaceEncodingController {
     public ResponseEntity<?> registerFace(
             @RequestParam("face_image") MultipartFile faceImage,
             @RequestParam(value = "is_primary", defaultValue = "false") boolean isPrimary,
-            Authentication authentication) {
+            @AuthenticationPrincipal AuthenticatedUser user) {
 
         try {
-            // Get current user
-            User user = userService.findByEmail(authentication.getName());
-            if (user == null) {
-                return ResponseEntity.badRequest().body(Map.of(
-                    "success", false,
-                    "message", "User not found"
-                ));
-            }
-
             // Validate file
             if (faceImage.isEmpty()) {
                 return ResponseEntity.badRequest().body(Map.of(
@@ -60,15 +47,17 @@ public class FaceEncodingController {
                 ));
             }
 
-            // Save temporary file for processing
+            // Save temporary file for processing, deleted even if detection throws
             Path tempFile = Files.createTempFile("face-", faceImage.getOriginalFilename());
-            faceImage.transferTo(tempFile.toFile());
-
-            // Detect faces in the image
-            Map<String, Object> detectionResult = faceRecognitionService.detectFaces(tempFile.toFile());
-
-            // Clean up temp file
-            Files.deleteIfExists(tempFile);
+            Map<String, Object> detectionResult;
+            try {
+                faceImage.transferTo(tempFile.toFile());
+
+                // Detect faces in the image
+                detectionResult = faceRecognitionService.detectFaces(tempFile.toFile());
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
 
             // Check if detection was successful
             Boolean success = (Boolean) detectionResult.get("success");
@@ -99,9 +88,9 @@ public class FaceEncodingController {
 
             // Save the face encoding
             List<Double> encoding = faceEncodings.get(0);
-            FaceEncoding savedEncoding = faceRecognitionService.saveFaceEncoding(user, encoding, isPrimary);
+            FaceEncoding savedEncoding = faceRecognitionService.saveFaceEncoding(user.id(), encoding, isPrimary);
 
-            logger.info("Face encoding registered for user: {} (ID: {})", user.getEmail(), user.getId());
+            logger.info("Face encoding registered for user: {} (ID: {})", user.email(), user.id());
 
             return ResponseEntity.ok(Map.of(
                 "success", true,
@@ -129,18 +118,10 @@ public class FaceEncodingController {
      * Check if user has registered face encodings
      */
     @GetMapping("/status")
-    public ResponseEntity<?> getFaceRegistrationStatus(Authentication authentication) {
+    public ResponseEntity<?> getFaceRegistrationStatus(@AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            User user = userService.findByEmail(authentication.getName());
-            if (user == null) {
-                return ResponseEntity.badRequest().body(Map.of(
-                    "success", false,
-                    "message", "User not found"
-                ));
-            }
-
-            boolean hasRegisteredFace = faceRecognitionService.hasRegisteredFace(user);
-            List<FaceEncoding> encodings = faceRecognitionService.getUserEncodings(user);
+            boolean hasRegisteredFace = faceRecognitionService.hasRegisteredFace(user.id());
+            List<FaceEncoding> encodings = faceRecognitionService.getUserEncodings(user.id());
 
             return ResponseEntity.ok(Map.of(
                 "success", true,
@@ -161,17 +142,9 @@ public class FaceEncodingController {
      * Get user's face encodings
      */
     @GetMapping("/my-encodings")
-    public ResponseEntity<?> getMyEncodings(Authentication authentication) {
+    public ResponseEntity<?> getMyEncodings(@AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            User user = userService.findByEmail(authentication.getName());
-            if (user == null) {
-                return ResponseEntity.badRequest().body(Map.of(
-                    "success", false,
-                    "message", "User not found"
-                ));
-            }
-
-            List<FaceEncoding> encodings = faceRecognitionService.getUserEncodings(user);
+            List<FaceEncoding> encodings = faceRecognitionService.getUserEncodings(user.id());
 
             return ResponseEntity.ok(Map.of(
                 "success", true,
@@ -0,0 +1,241 @@
+package com.faceshare.controller;
+
+import com.faceshare.storage.BlobStore;
+import com.faceshare.storage.LocalCopy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * Writes a stored photo straight to the servlet response.
+ *
+ * - If-None-Match is answered with 304 before the file is opened
+ * - a single Range (honouring If-Range) gets a 206, so mobile clients can resume
+ * - a local file goes out with Tomcat's sendfile when the connector supports it
+ *   (the kernel copies the file to the socket), otherwise with
+ *   FileChannel.transferTo into the response stream. Files of the disk caches,
+ *   which can be evicted at any time, are always written during the request.
+ * - an object in a remote BlobStore is proxied with a ranged read of just the
+ *   bytes requested
+ */
+@Component
+public class LocalFileSender {
+
+    // Request attributes of Tomcat's sendfile support (org.apache.catalina.Globals)
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Below this, a plain write is cheaper than handing the file to the poller
+    @Value("${file.sendfile-min-size:49152}")
+    private long sendfileMinSize;
+
+    /**
+     * Send the file, or the requested range of it
+     *
+     * @param etag strong ETag (quoted) identifying the content, e.g. its hash; null
+     *             derives one from the file's size and modification time
+     * @param downloadName file name for Content-Disposition, or null to omit it
+     */
+    public void send(HttpServletRequest request, HttpServletResponse response, Path file, String etag,
+                     MediaType mediaType, CacheControl cacheControl, String downloadName) throws IOException {
+        send(request, response, file, true, etag, mediaType, cacheControl, downloadName);
+    }
+
+    /**
+     * Send a local copy of an object, or the requested range of it. A
+     * temporary copy (a reader's link into a disk cache) is written before
+     * this returns rather than with sendfile: Tomcat only opens the file after
+     * the request returns, and the caller has closed the copy by then.
+     */
+    public void send(HttpServletRequest request, HttpServletResponse response, LocalCopy copy, String etag,
+                     MediaType mediaType, CacheControl cacheControl, String downloadName) throws IOException {
+        send(request, response, copy.path(), !copy.temporary(), etag, mediaType, cacheControl, downloadName);
+    }
+
+    private void send(HttpServletRequest request, HttpServletResponse response, Path file, boolean sendfile,
+                      String etag, MediaType mediaType, CacheControl cacheControl, String downloadName)
+            throws IOException {
+        if (etag == null) {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            etag = "\"" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "-"
+                    + Long.toHexString(attributes.size()) + "\"";
+        }
+
+        if (checkNotModified(request, response, etag, cacheControl)) {
+            return;
+        }
+
+        long length;
+        try {
+            length = Files.size(file);
+        } catch (NoSuchFileException e) {
+            response.reset();
+            throw e;
+        }
+
+        long[] range = prepareBody(request, response, length, etag, mediaType, downloadName);
+        if (range == null) {
+            return;
+        }
+        long start = range[0];
+        long count = range[1];
+
+        if (sendfile && count >= sendfileMinSize && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat sends [start, end) itself once the request returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    throw new IOException("File shrank while being sent: " + file);
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    /**
+     * Send an object of a store without local files, or the requested range of it
+     *
+     * @param etag strong ETag (quoted); null derives one from the key, as stored
+     *             objects are never rewritten
+     */
+    public void send(HttpServletRequest request, HttpServletResponse response, BlobStore store, String key,
+                     String etag, MediaType mediaType, CacheControl cacheControl, String downloadName)
+            throws IOException {
+        if (etag == null) {
+            etag = "\"" + store.name() + "-" + Integer.toHexString(key.hashCode()) + "\"";
+        }
+
+        if (checkNotModified(request, response, etag, cacheControl)) {
+            return;
+        }
+
+        long length;
+        try {
+            length = store.size(key);
+        } catch (NoSuchFileException e) {
+            response.reset();
+            throw e;
+        }
+
+        long[] range = prepareBody(request, response, length, etag, mediaType, downloadName);
+        if (range == null) {
+            return;
+        }
+        try (InputStream in = store.open(key, range[0], range[1])) {
+            in.transferTo(response.getOutputStream());
+        }
+    }
+
+    /**
+     * Set the status and headers for the body: 206 with Content-Range for a
+     * satisfiable single range, 416 for an unsatisfiable one
+     *
+     * @return offset and length of the bytes to write, or null if there are none
+     */
+    private long[] prepareBody(HttpServletRequest request, HttpServletResponse response, long length,
+                               String etag, MediaType mediaType, String downloadName) {
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && ifRangeMatches(request.getHeader(HttpHeaders.IF_RANGE), etag)) {
+            List<HttpRange> ranges = parseRanges(rangeHeader);
+            // Multiple ranges are rare for images; serving the whole file is allowed
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (start >= length || start > end) {
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return null;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentType(mediaType.toString());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (downloadName != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition(downloadName));
+        }
+        response.setContentLengthLong(count);
+
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count == 0) {
+            return null;
+        }
+        return new long[] {start, count};
+    }
+
+    /**
+     * Answer If-None-Match with 304 if the etag matches. Lets callers that must
+     * produce the file first (e.g. render it) skip that work on revalidation.
+     *
+     * @return true if the 304 was sent and nothing more should be written
+     */
+    public boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, String etag,
+                                    CacheControl cacheControl) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        return new ServletWebRequest(request, response).checkNotModified(etag);
+    }
+
+    // If-Range carries a validator; the range only applies if the content is unchanged.
+    // Dates are not supported (no Last-Modified is sent), so they mean "send it all".
+    private static boolean ifRangeMatches(String ifRange, String etag) {
+        return ifRange == null || (!ifRange.startsWith("W/") && ifRange.trim().equals(etag));
+    }
+
+    // Plain filename for ASCII names; others also get the RFC 5987 filename* form
+    private static String contentDisposition(String downloadName) {
+        ContentDisposition.Builder builder = ContentDisposition.inline();
+        if (StandardCharsets.US_ASCII.newEncoder().canEncode(downloadName)) {
+            builder.filename(downloadName);
+        } else {
+            builder.filename(downloadName, StandardCharsets.UTF_8);
+        }
+        return builder.build().toString();
+    }
+
+    // A malformed Range header is ignored rather than rejected
+    private static List<HttpRange> parseRanges(String rangeHeader) {
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+}
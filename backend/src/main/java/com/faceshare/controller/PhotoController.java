@@ -1,51 +1,128 @@
 package com.faceshare.controller;
 
+import com.faceshare.dto.BatchUploadResponse;
+import com.faceshare.dto.CursorPage;
 import com.faceshare.dto.PhotoDto;
+import com.faceshare.exception.CustomExceptions;
 import com.faceshare.model.Photo;
+import com.faceshare.security.AuthenticatedUser;
+import com.faceshare.service.BatchUploadService;
+import com.faceshare.service.PhotoEventService;
+import com.faceshare.service.PhotoRenderService;
+import com.faceshare.service.FeedVersionService;
 import com.faceshare.service.PhotoService;
+import com.faceshare.service.PhotoUrlSigner;
 import com.faceshare.service.FileStorageService;
+import com.faceshare.storage.BlobRef;
+import com.faceshare.storage.BlobStore;
+import com.faceshare.storage.LocalCopy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/photos")
 public class PhotoController {
 
+    // Feeds may be cached by the client but must be revalidated with the ETag
+    private static final CacheControl FEED_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
     @Autowired
     private PhotoService photoService;
 
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private BatchUploadService batchUploadService;
+
+    @Autowired
+    private PhotoEventService photoEventService;
+
+    @Autowired
+    private PhotoUrlSigner photoUrlSigner;
+
+    @Autowired
+    private FeedVersionService feedVersionService;
+
+    @Autowired
+    private LocalFileSender localFileSender;
+
+    @Autowired
+    private PhotoRenderService photoRenderService;
+
     @PostMapping("/upload")
     public ResponseEntity<?> uploadPhoto(
             @RequestParam("image") MultipartFile file,
-            Authentication authentication) {
+            @AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            PhotoDto photo = photoService.uploadPhoto(file, authentication.getName());
+            PhotoDto photo = photoService.uploadPhoto(file, user);
             return ResponseEntity.ok(photo);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Upload failed: " + e.getMessage());
         }
     }
 
-    @GetMapping("/my-photos")
-    public ResponseEntity<List<PhotoDto>> getMyPhotos(Authentication authentication) {
-        List<PhotoDto> photos = photoService.getUserPhotos(authentication.getName());
+    /**
+     * Upload many photos in one request. Parts are streamed and stored one at a
+     * time, so only the per-file size limit applies - not the request limit.
+     */
+    @PostMapping(value = "/upload-batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> uploadBatch(HttpServletRequest request, @AuthenticationPrincipal AuthenticatedUser user) {
+        try {
+            BatchUploadResponse response = batchUploadService.uploadBatch(request, user.id());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Batch upload failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the photos of a batch upload with their current processing status
+     */
+    @GetMapping("/batch/{batchId}")
+    public ResponseEntity<List<PhotoDto>> getBatch(@PathVariable String batchId,
+                                                   @AuthenticationPrincipal AuthenticatedUser user) {
+        List<PhotoDto> photos = photoService.getBatchPhotos(batchId, user.id());
         return ResponseEntity.ok(photos);
     }
 
+    /**
+     * All of the user's photos as a JSON array, streamed row by row.
+     * Like the other feed endpoints, answers If-None-Match with 304 without querying the photos.
+     */
+    @GetMapping("/my-photos")
+    public ResponseEntity<StreamingResponseBody> getMyPhotos(@AuthenticationPrincipal AuthenticatedUser user,
+                                                             WebRequest request) {
+        if (request.checkNotModified(feedETag(user.id(), "my-photos"))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(FEED_CACHE_CONTROL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> photoService.writeUserPhotos(user.id(), out));
+    }
+
     /**
      * Get user photos with pagination
      * @param page Page number (0-indexed)
@@ -53,17 +130,30 @@ public class PhotoController {
      */
     @GetMapping("/my-photos/paginated")
     public ResponseEntity<Page<PhotoDto>> getMyPhotosPaginated(
-            Authentication authentication,
+            @AuthenticationPrincipal AuthenticatedUser user,
+            WebRequest request,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
-        Page<PhotoDto> photos = photoService.getUserPhotos(authentication.getName(), page, size);
-        return ResponseEntity.ok(photos);
+        if (request.checkNotModified(feedETag(user.id(), "my-photos/paginated", page, size))) {
+            return null;
+        }
+        Page<PhotoDto> photos = photoService.getUserPhotos(user.id(), page, size);
+        return ResponseEntity.ok().cacheControl(FEED_CACHE_CONTROL).body(photos);
     }
 
+    /**
+     * All photos shared with the user as a JSON array, streamed row by row
+     */
     @GetMapping("/shared")
-    public ResponseEntity<List<PhotoDto>> getSharedPhotos(Authentication authentication) {
-        List<PhotoDto> photos = photoService.getSharedPhotos(authentication.getName());
-        return ResponseEntity.ok(photos);
+    public ResponseEntity<StreamingResponseBody> getSharedPhotos(@AuthenticationPrincipal AuthenticatedUser user,
+                                                                 WebRequest request) {
+        if (request.checkNotModified(feedETag(user.id(), "shared"))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(FEED_CACHE_CONTROL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> photoService.writeSharedPhotos(user.id(), out));
     }
 
     /**
@@ -73,42 +163,226 @@ public class PhotoController {
      */
     @GetMapping("/shared/paginated")
     public ResponseEntity<Page<PhotoDto>> getSharedPhotosPaginated(
-            Authentication authentication,
+            @AuthenticationPrincipal AuthenticatedUser user,
+            WebRequest request,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
-        Page<PhotoDto> photos = photoService.getSharedPhotos(authentication.getName(), page, size);
-        return ResponseEntity.ok(photos);
+        if (request.checkNotModified(feedETag(user.id(), "shared/paginated", page, size))) {
+            return null;
+        }
+        Page<PhotoDto> photos = photoService.getSharedPhotos(user.id(), page, size);
+        return ResponseEntity.ok().cacheControl(FEED_CACHE_CONTROL).body(photos);
     }
 
+    /**
+     * Get the user's photos with keyset pagination, newest first
+     * @param cursor nextCursor from the previous page; omit for the first page
+     * @param size Number of items per page (max 100)
+     */
+    @GetMapping("/my-photos/feed")
+    public ResponseEntity<CursorPage<PhotoDto>> getMyPhotoFeed(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            WebRequest request,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        if (request.checkNotModified(feedETag(user.id(), "my-photos/feed", cursor, size))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(FEED_CACHE_CONTROL)
+                .body(photoService.getUserPhotoFeed(user.id(), cursor, size));
+    }
+
+    /**
+     * Get photos shared with the user with keyset pagination, most recently shared first
+     * @param cursor nextCursor from the previous page; omit for the first page
+     * @param size Number of items per page (max 100)
+     */
+    @GetMapping("/shared/feed")
+    public ResponseEntity<CursorPage<PhotoDto>> getSharedPhotoFeed(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            WebRequest request,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        if (request.checkNotModified(feedETag(user.id(), "shared/feed", cursor, size))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(FEED_CACHE_CONTROL)
+                .body(photoService.getSharedPhotoFeed(user.id(), cursor, size));
+    }
+
+    /**
+     * Weak ETag for a feed response. It changes when the user's feed version moves,
+     * when the expiry of the signed photo URLs in the body rolls over, or with the
+     * query parameters.
+     */
+    private String feedETag(Long userId, String feed, Object... params) {
+        String query = feed + Arrays.toString(params);
+        return "W/\"" + feedVersionService.currentVersion(userId) + "-" + photoUrlSigner.currentExpiry()
+                + "-" + Integer.toHexString(query.hashCode()) + "\"";
+    }
+
+    /**
+     * Stream processing-status and new-share events for the current user.
+     * Reconnecting clients send Last-Event-ID to receive the events they missed.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamEvents(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @AuthenticationPrincipal AuthenticatedUser user) {
+        try {
+            return ResponseEntity.ok(photoEventService.subscribe(user.id(), lastEventId));
+        } catch (CustomExceptions.ServiceUnavailable e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .build();
+        }
+    }
+
+    /**
+     * Serve a photo to its owner or a recipient. variant picks the size
+     * (thumbnail, preview or original); derived variants are JPEG.
+     * w, h and fit (contain or cover) instead render a JPEG of that size on
+     * demand (see PhotoRenderService); cover needs both w and h.
+     * The ETag comes from the content hash, so revalidation needs no file access.
+     */
     @GetMapping("/view/{photoId}")
-    public ResponseEntity<?> viewPhoto(@PathVariable Long photoId, Authentication authentication) {
+    public ResponseEntity<?> viewPhoto(@PathVariable Long photoId,
+                                       @RequestParam(defaultValue = "original") String variant,
+                                       @RequestParam(required = false) Integer w,
+                                       @RequestParam(required = false) Integer h,
+                                       @RequestParam(defaultValue = "contain") String fit,
+                                       @AuthenticationPrincipal AuthenticatedUser user,
+                                       HttpServletRequest request,
+                                       HttpServletResponse response) {
+        Photo.Variant requested = Photo.Variant.fromKey(variant);
+        PhotoRenderService.Spec spec = w == null && h == null ? null : photoRenderService.spec(w, h, fit);
+        if (requested == null || ((w != null || h != null) && spec == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+
         try {
             // Authorization check: user must own or have access to the photo
-            if (!photoService.canUserAccessPhoto(photoId, authentication.getName())) {
+            if (!photoService.canUserAccessPhoto(photoId, user.id())) {
                 return ResponseEntity.status(403).build();  // Forbidden
             }
 
             Photo photo = photoService.getPhotoById(photoId);
-            String filePathOrUrl = photo.getFilePath();
-
-            // If using Cloudinary, redirect to the direct URL
-            if (fileStorageService.isUsingCloudStorage() && filePathOrUrl.startsWith("http")) {
-                return ResponseEntity.status(302)
-                        .header(HttpHeaders.LOCATION, filePathOrUrl)
-                        .build();
+            if (spec != null) {
+                return serveRendered(request, response, photo, spec);
             }
 
-            // Local storage: serve file from backend
-            String fileName = filePathOrUrl.substring(filePathOrUrl.lastIndexOf("/") + 1);
-            Path filePath = fileStorageService.loadFileAsResource(fileName);
-            Resource resource = new UrlResource(filePath.toUri());
+            BlobRef ref = photo.getVariantRef(requested);
+            boolean derived = !ref.key().equals(photo.getStorageKey());
+            // Variants are derived deterministically from the original, so its hash identifies them too
+            String etag = photo.getContentHash() == null ? null
+                    : "\"" + photo.getContentHash() + (derived ? "-" + requested.key() : "") + "\"";
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(photo.getMimeType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + photo.getFileName() + "\"")
-                    .body(resource);
+            if (derived) {
+                return servePhotoFile(request, response, ref, requested, etag, MediaType.IMAGE_JPEG, null,
+                        CacheControl.noCache().cachePrivate());
+            }
+            return servePhotoFile(request, response, ref, requested, etag,
+                    MediaType.parseMediaType(photo.getMimeType()), photo.getFileName(),
+                    CacheControl.noCache().cachePrivate());
+        } catch (CustomExceptions.ServiceUnavailable e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
         } catch (Exception e) {
+            return response.isCommitted() ? null : ResponseEntity.notFound().build();
+        }
+    }
+
+    // Revalidation is answered before rendering; photos in a store that scales on
+    // delivery (Cloudinary) are redirected to its rendition
+    private ResponseEntity<?> serveRendered(HttpServletRequest request, HttpServletResponse response,
+                                            Photo photo, PhotoRenderService.Spec spec) throws IOException {
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        String url = photoRenderService.renderedUrl(photo, spec);
+        if (url != null) {
+            return redirect(url);
+        }
+
+        String etag = "\"" + photoRenderService.cacheKey(photo, spec) + "\"";
+        if (localFileSender.checkNotModified(request, response, etag, cacheControl)) {
+            return null;
+        }
+        try (LocalCopy rendered = photoRenderService.render(photo, spec)) {
+            localFileSender.send(request, response, rendered, etag, MediaType.IMAGE_JPEG, cacheControl, null);
+        }
+        return null;
+    }
+
+    /**
+     * Serve a photo from a signed URL (see PhotoDto.url). The signature stands in
+     * for authentication and the access check, so no database access is needed.
+     * Stored files are never rewritten, so the response is immutable until the
+     * URL expires.
+     */
+    @GetMapping("/signed/{photoId}/{variant}")
+    public ResponseEntity<?> viewSignedPhoto(
+            @PathVariable Long photoId,
+            @PathVariable String variant,
+            @RequestParam String key,
+            @RequestParam long exp,
+            @RequestParam String sig,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        if (!photoUrlSigner.verify(photoId, variant, key, exp, sig)) {
+            return ResponseEntity.status(403).build();
+        }
+        BlobRef ref = BlobRef.parse(key);
+        Photo.Variant requested = Photo.Variant.fromKey(variant);
+        if (ref == null || requested == null) {
             return ResponseEntity.notFound().build();
         }
+
+        try {
+            MediaType mediaType = MediaTypeFactory.getMediaType(ref.key()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            CacheControl cacheControl = CacheControl.maxAge(photoUrlSigner.secondsUntil(exp), TimeUnit.SECONDS)
+                    .cachePublic()
+                    .immutable();
+            return servePhotoFile(request, response, ref, requested, null, mediaType, null, cacheControl);
+        } catch (Exception e) {
+            return response.isCommitted() ? null : ResponseEntity.notFound().build();
+        }
+    }
+
+    // Objects of stores with public URLs (Cloudinary) are redirected to, scaled to the
+    // variant by the store if it does that; others are written to the response
+    // directly, in which case this returns null
+    private ResponseEntity<?> servePhotoFile(HttpServletRequest request, HttpServletResponse response,
+                                             BlobRef ref, Photo.Variant variant, String etag, MediaType mediaType,
+                                             String downloadName, CacheControl cacheControl) throws IOException {
+        BlobStore store = fileStorageService.store(ref.backend());
+        Optional<String> url = store.publicUrl(ref.key(), variant.getMaxSize(), variant.getMaxSize(), false);
+        if (url.isPresent()) {
+            return redirect(url.get());
+        }
+
+        Optional<Path> file = store.localFile(ref.key());
+        if (file.isPresent()) {
+            localFileSender.send(request, response, file.get(), etag, mediaType, cacheControl, downloadName);
+            return null;
+        }
+
+        // Remote objects the local disk tier holds are sent from there
+        Optional<LocalCopy> cached = fileStorageService.cachedCopy(ref.backend(), ref.key());
+        if (cached.isPresent()) {
+            try (LocalCopy copy = cached.get()) {
+                localFileSender.send(request, response, copy, etag, mediaType, cacheControl, downloadName);
+            }
+        } else {
+            localFileSender.send(request, response, store, ref.key(), etag, mediaType, cacheControl, downloadName);
+        }
+        return null;
+    }
+
+    private static ResponseEntity<?> redirect(String url) {
+        return ResponseEntity.status(302)
+                .header(HttpHeaders.LOCATION, url)
+                .build();
     }
-}
\ No newline at end of file
+}
@@ -1,32 +1,28 @@
 package com.faceshare.controller;
 
-import com.faceshare.model.SharedPhoto;
-import com.faceshare.model.User;
-import com.faceshare.repository.SharedPhotoRepository;
-import com.faceshare.repository.UserRepository;
+import com.faceshare.security.AuthenticatedUser;
+import com.faceshare.service.PhotoService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
-
-import java.security.Principal;
-import java.util.List;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/shared")
 public class SharedPhotoController {
 
-    private final SharedPhotoRepository sharedRepo;
-    private final UserRepository userRepo;
+    private final PhotoService photoService;
 
-    public SharedPhotoController(SharedPhotoRepository sharedRepo, UserRepository userRepo) {
-        this.sharedRepo = sharedRepo;
-        this.userRepo = userRepo;
+    public SharedPhotoController(PhotoService photoService) {
+        this.photoService = photoService;
     }
 
-    // list photos shared *to me*
+    // list photos shared *to me*, streamed from one projection query
     @GetMapping("/inbox")
-    public ResponseEntity<List<SharedPhoto>> inbox(Principal principal) {
-        User me = userRepo.findByEmail(principal.getName()).orElse(null);
-        if (me == null) return ResponseEntity.status(401).build();
-        return ResponseEntity.ok(sharedRepo.findByRecipientOrderByCreatedAtDesc(me));
+    public ResponseEntity<StreamingResponseBody> inbox(@AuthenticationPrincipal AuthenticatedUser user) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> photoService.writeSharedPhotos(user.id(), out));
     }
 }
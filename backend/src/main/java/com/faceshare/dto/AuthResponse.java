@@ -2,6 +2,7 @@ package com.faceshare.dto;
 
 public class AuthResponse {
     private String token;
+    private String refreshToken;
     private Long userId;
     private String email;
     private String fullName;
@@ -9,8 +10,10 @@ public class AuthResponse {
 
     public AuthResponse() {}
 
-    public AuthResponse(String token, Long userId, String email, String fullName, String profileImageUrl) {
+    public AuthResponse(String token, String refreshToken, Long userId, String email, String fullName,
+                        String profileImageUrl) {
         this.token = token;
+        this.refreshToken = refreshToken;
         this.userId = userId;
         this.email = email;
         this.fullName = fullName;
@@ -21,6 +24,9 @@ public class AuthResponse {
     public String getToken() { return token; }
     public void setToken(String token) { this.token = token; }
 
+    public String getRefreshToken() { return refreshToken; }
+    public void setRefreshToken(String refreshToken) { this.refreshToken = refreshToken; }
+
     public Long getUserId() { return userId; }
     public void setUserId(Long userId) { this.userId = userId; }
 
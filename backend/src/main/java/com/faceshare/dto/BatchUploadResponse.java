@@ -0,0 +1,72 @@
+package com.faceshare.dto;
+
+import java.util.List;
+
+public class BatchUploadResponse {
+    private String batchId;
+    private int uploadedCount;
+    private int failedCount;
+    private List<FileResult> results;
+
+    public BatchUploadResponse() {}
+
+    public BatchUploadResponse(String batchId, List<FileResult> results) {
+        this.batchId = batchId;
+        this.results = results;
+        this.uploadedCount = (int) results.stream().filter(FileResult::isSuccess).count();
+        this.failedCount = results.size() - uploadedCount;
+    }
+
+    // Getters and Setters
+    public String getBatchId() { return batchId; }
+    public void setBatchId(String batchId) { this.batchId = batchId; }
+
+    public int getUploadedCount() { return uploadedCount; }
+    public void setUploadedCount(int uploadedCount) { this.uploadedCount = uploadedCount; }
+
+    public int getFailedCount() { return failedCount; }
+    public void setFailedCount(int failedCount) { this.failedCount = failedCount; }
+
+    public List<FileResult> getResults() { return results; }
+    public void setResults(List<FileResult> results) { this.results = results; }
+
+    /**
+     * Outcome for a single part of the batch, in the order the parts arrived
+     */
+    public static class FileResult {
+        private String fileName;
+        private boolean success;
+        private String error;
+        private PhotoDto photo;
+
+        public FileResult() {}
+
+        public static FileResult uploaded(String fileName, PhotoDto photo) {
+            FileResult result = new FileResult();
+            result.fileName = fileName;
+            result.success = true;
+            result.photo = photo;
+            return result;
+        }
+
+        public static FileResult failed(String fileName, String error) {
+            FileResult result = new FileResult();
+            result.fileName = fileName;
+            result.success = false;
+            result.error = error;
+            return result;
+        }
+
+        public String getFileName() { return fileName; }
+        public void setFileName(String fileName) { this.fileName = fileName; }
+
+        public boolean isSuccess() { return success; }
+        public void setSuccess(boolean success) { this.success = success; }
+
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+
+        public PhotoDto getPhoto() { return photo; }
+        public void setPhoto(PhotoDto photo) { this.photo = photo; }
+    }
+}
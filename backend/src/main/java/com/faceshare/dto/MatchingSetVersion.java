@@ -0,0 +1,9 @@
+package com.faceshare.dto;
+
+/**
+ * How many face encodings are registered and the newest one's ID. Encodings
+ * are only ever added or deleted, so any change to the face matching set
+ * changes this.
+ */
+public record MatchingSetVersion(long count, Long maxId) {
+}
@@ -1,11 +1,13 @@
 package com.faceshare.dto;
 
+import com.faceshare.model.Photo;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.time.LocalDateTime;
 
 public class PhotoDto {
     private Long id;
     private String fileName;
-    private String filePath;
     private Long fileSize;
     private String mimeType;
     private Long userId;
@@ -14,15 +16,27 @@ public class PhotoDto {
     private Integer facesDetected;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    private String url;
+    private String thumbnailUrl;
+    private String previewUrl;
+
+    // Where the original and the derived variants are stored, only used to sign their URLs
+    @JsonIgnore
+    private String storageBackend;
+    @JsonIgnore
+    private String storageKey;
+    @JsonIgnore
+    private String thumbnailKey;
+    @JsonIgnore
+    private String previewKey;
 
     public PhotoDto() {}
 
-    public PhotoDto(Long id, String fileName, String filePath, Long fileSize, String mimeType,
+    public PhotoDto(Long id, String fileName, Long fileSize, String mimeType,
                     Long userId, String userFullName, String processingStatus, Integer facesDetected,
                     LocalDateTime createdAt, LocalDateTime updatedAt) {
         this.id = id;
         this.fileName = fileName;
-        this.filePath = filePath;
         this.fileSize = fileSize;
         this.mimeType = mimeType;
         this.userId = userId;
@@ -33,6 +47,20 @@ public class PhotoDto {
         this.updatedAt = updatedAt;
     }
 
+    // Used by the JPQL constructor expressions in PhotoRepository
+    public PhotoDto(Long id, String fileName, String storageBackend, String storageKey, Long fileSize,
+                    String mimeType, Long userId, String userFullName, Photo.ProcessingStatus processingStatus,
+                    Integer facesDetected, LocalDateTime createdAt, LocalDateTime updatedAt,
+                    String thumbnailKey, String previewKey) {
+        this(id, fileName, fileSize, mimeType, userId, userFullName,
+                processingStatus != null ? processingStatus.toString() : null,
+                facesDetected, createdAt, updatedAt);
+        this.storageBackend = storageBackend;
+        this.storageKey = storageKey;
+        this.thumbnailKey = thumbnailKey;
+        this.previewKey = previewKey;
+    }
+
     // Getters and Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -40,9 +68,6 @@ public class PhotoDto {
     public String getFileName() { return fileName; }
     public void setFileName(String fileName) { this.fileName = fileName; }
 
-    public String getFilePath() { return filePath; }
-    public void setFilePath(String filePath) { this.filePath = filePath; }
-
     public Long getFileSize() { return fileSize; }
     public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
 
@@ -66,4 +91,27 @@ public class PhotoDto {
 
     public LocalDateTime getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+
+    // Short-lived signed URL for viewing the photo without the JWT
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+
+    // Signed URLs of the 256px and 1024px variants; the original's when not derived yet
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
+
+    public String getPreviewUrl() { return previewUrl; }
+    public void setPreviewUrl(String previewUrl) { this.previewUrl = previewUrl; }
+
+    public String getStorageBackend() { return storageBackend; }
+    public void setStorageBackend(String storageBackend) { this.storageBackend = storageBackend; }
+
+    public String getStorageKey() { return storageKey; }
+    public void setStorageKey(String storageKey) { this.storageKey = storageKey; }
+
+    public String getThumbnailKey() { return thumbnailKey; }
+    public void setThumbnailKey(String thumbnailKey) { this.thumbnailKey = thumbnailKey; }
+
+    public String getPreviewKey() { return previewKey; }
+    public void setPreviewKey(String previewKey) { this.previewKey = previewKey; }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.faceshare.dto;
+
+/**
+ * A photo's perceptual hash, as loaded into the near-duplicate index
+ */
+public record PhotoHash(Long photoId, Long perceptualHash) {
+}
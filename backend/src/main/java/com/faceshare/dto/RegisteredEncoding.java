@@ -0,0 +1,8 @@
+package com.faceshare.dto;
+
+/**
+ * A registered face encoding (JSON) and its owner, as loaded into the face
+ * matching set
+ */
+public record RegisteredEncoding(Long userId, String encodingJson) {
+}
@@ -13,4 +13,8 @@ public class CustomExceptions {
     public static class Unauthorized extends RuntimeException {
         public Unauthorized(String msg) { super(msg); }
     }
+
+    public static class ServiceUnavailable extends RuntimeException {
+        public ServiceUnavailable(String msg) { super(msg); }
+    }
 }
@@ -1,10 +1,14 @@
 package com.faceshare.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import java.time.Instant;
 
 @Entity
 @Table(name = "face_encodings")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "face-encodings")
 public class FaceEncoding {
 
     @Id
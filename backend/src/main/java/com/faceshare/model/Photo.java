@@ -1,14 +1,28 @@
 package com.faceshare.model;
 
+import com.faceshare.storage.BlobRef;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "photos")
+@Table(name = "photos", indexes = {
+        @Index(name = "idx_photos_batch_id", columnList = "batch_id"),
+        // Keyset pagination of a user's photos (seek on created_at, id)
+        @Index(name = "idx_photos_user_created", columnList = "user_id, created_at, id"),
+        // Finds photos with identical content
+        @Index(name = "idx_photos_content_hash", columnList = "content_hash"),
+        // Orphan collection looks photos up by each key they use
+        @Index(name = "idx_photos_storage_key", columnList = "storage_backend, storage_key"),
+        @Index(name = "idx_photos_thumbnail_key", columnList = "storage_backend, thumbnail_key"),
+        @Index(name = "idx_photos_preview_key", columnList = "storage_backend, preview_key")
+})
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "photos")
 public class Photo {
 
     @Id
@@ -19,9 +33,14 @@ public class Photo {
     @Column(name = "file_name", nullable = false)
     private String fileName;
 
-    @NotBlank(message = "File path is required")
-    @Column(name = "file_path", nullable = false)
-    private String filePath;
+    // BlobStore holding the original (and its derivatives) and the original's key there
+    @NotBlank(message = "Storage backend is required")
+    @Column(name = "storage_backend", nullable = false, length = 20)
+    private String storageBackend;
+
+    @NotBlank(message = "Storage key is required")
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey;
 
     @Column(name = "file_size")
     private Long fileSize;
@@ -41,6 +60,28 @@ public class Photo {
     @Column(name = "faces_detected")
     private Integer facesDetected = 0;
 
+    // Set when the photo arrived through /upload-batch, used to track batch progress
+    @Column(name = "batch_id", length = 36)
+    private String batchId;
+
+    // SHA-256 of the original as uploaded (hex); strong ETag when serving it
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // 64-bit dHash (see PerceptualHash), set during processing; finds re-uploads of
+    // the same shot after recompression or resizing
+    @Column(name = "perceptual_hash")
+    private Long perceptualHash;
+
+    // Keys of the scaled-down variants written during processing, in the same store;
+    // null falls back to the original. Stores that scale on delivery repeat the
+    // original's key here.
+    @Column(name = "thumbnail_key")
+    private String thumbnailKey;
+
+    @Column(name = "preview_key")
+    private String previewKey;
+
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
@@ -57,15 +98,50 @@ public class Photo {
         FAILED
     }
 
+    /**
+     * Sizes a photo is served in. Derived variants fit in a maxSize x maxSize
+     * box; the gallery uses them so it never downloads originals for tiles.
+     */
+    public enum Variant {
+        THUMBNAIL(256),
+        PREVIEW(1024),
+        ORIGINAL(0);
+
+        private final int maxSize;
+
+        Variant(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        // Name used in URLs and derivative file names
+        public String key() {
+            return name().toLowerCase();
+        }
+
+        public static Variant fromKey(String key) {
+            for (Variant variant : values()) {
+                if (variant.key().equals(key)) {
+                    return variant;
+                }
+            }
+            return null;
+        }
+    }
+
     // Constructors
     public Photo() {
         this.createdAt = LocalDateTime.now();
     }
 
-    public Photo(String fileName, String filePath, Long fileSize, String mimeType, User user) {
+    public Photo(String fileName, String storageBackend, String storageKey, Long fileSize, String mimeType, User user) {
         this();
         this.fileName = fileName;
-        this.filePath = filePath;
+        this.storageBackend = storageBackend;
+        this.storageKey = storageKey;
         this.fileSize = fileSize;
         this.mimeType = mimeType;
         this.user = user;
@@ -100,12 +176,20 @@ public class Photo {
         this.fileName = fileName;
     }
 
-    public String getFilePath() {
-        return filePath;
+    public String getStorageBackend() {
+        return storageBackend;
     }
 
-    public void setFilePath(String filePath) {
-        this.filePath = filePath;
+    public void setStorageBackend(String storageBackend) {
+        this.storageBackend = storageBackend;
+    }
+
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public void setStorageKey(String storageKey) {
+        this.storageKey = storageKey;
     }
 
     public Long getFileSize() {
@@ -148,6 +232,59 @@ public class Photo {
         this.facesDetected = facesDetected;
     }
 
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(Long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+
+    public String getThumbnailKey() {
+        return thumbnailKey;
+    }
+
+    public void setThumbnailKey(String thumbnailKey) {
+        this.thumbnailKey = thumbnailKey;
+    }
+
+    public String getPreviewKey() {
+        return previewKey;
+    }
+
+    public void setPreviewKey(String previewKey) {
+        this.previewKey = previewKey;
+    }
+
+    /**
+     * Stored object of a variant, falling back to the original while
+     * derivatives are missing (not processed yet, or the image is small)
+     */
+    public BlobRef getVariantRef(Variant variant) {
+        String key = switch (variant) {
+            case THUMBNAIL -> thumbnailKey;
+            case PREVIEW -> previewKey;
+            case ORIGINAL -> storageKey;
+        };
+        return new BlobRef(storageBackend, key != null ? key : storageKey);
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
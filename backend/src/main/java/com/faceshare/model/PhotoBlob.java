@@ -0,0 +1,103 @@
+package com.faceshare.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * A stored original, shared by every photo with the same bytes. Photos point
+ * at it through their storage backend and key; refCount counts them, and the
+ * object is only deleted once nothing points at it.
+ */
+@Entity
+@Table(name = "photo_blobs", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_photo_blobs_location", columnNames = {"storage_backend", "storage_key"})
+})
+public class PhotoBlob implements Persistable<String> {
+
+    // SHA-256 of the content (hex)
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // BlobStore holding the content and its key there, as stored on the photos
+    @Column(name = "storage_backend", nullable = false, length = 20)
+    private String storageBackend;
+
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    // Result of face detection on this content; null until it has run
+    @Column(name = "faces_detected")
+    private Integer facesDetected;
+
+    // Detected encodings as a JSON array of arrays
+    @Lob
+    @Column(name = "face_encodings", columnDefinition = "TEXT")
+    private String faceEncodings;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    // Bumped with refCount; an unused row younger than the orphan grace period
+    // may belong to an upload whose photo is not saved yet
+    @Column(name = "last_referenced_at", nullable = false)
+    private LocalDateTime lastReferencedAt = createdAt;
+
+    // The ID is assigned (the hash), so save would otherwise merge: a losing
+    // concurrent insert would overwrite the winner's row instead of failing
+    @Transient
+    private boolean isNew;
+
+    public PhotoBlob() {}
+
+    public PhotoBlob(String contentHash, String storageBackend, String storageKey, long size) {
+        this.contentHash = contentHash;
+        this.storageBackend = storageBackend;
+        this.storageKey = storageKey;
+        this.size = size;
+        this.refCount = 1;
+        this.isNew = true;
+    }
+
+    @Override
+    public String getId() { return contentHash; }
+
+    @Override
+    public boolean isNew() { return isNew; }
+
+    @PostPersist
+    @PostLoad
+    void markNotNew() { isNew = false; }
+
+    public String getContentHash() { return contentHash; }
+    public String getStorageBackend() { return storageBackend; }
+    public String getStorageKey() { return storageKey; }
+    public long getSize() { return size; }
+
+    public int getRefCount() { return refCount; }
+    public void setRefCount(int refCount) { this.refCount = refCount; }
+
+    public Integer getFacesDetected() { return facesDetected; }
+    public void setFacesDetected(Integer facesDetected) { this.facesDetected = facesDetected; }
+
+    public String getFaceEncodings() { return faceEncodings; }
+    public void setFaceEncodings(String faceEncodings) { this.faceEncodings = faceEncodings; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+
+    public LocalDateTime getLastReferencedAt() { return lastReferencedAt; }
+
+    /** Take a reference for a new photo */
+    public void addReference() {
+        refCount++;
+        lastReferencedAt = LocalDateTime.now();
+    }
+}
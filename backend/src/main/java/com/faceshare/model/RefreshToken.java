@@ -0,0 +1,67 @@
+package com.faceshare.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * A refresh token, stored as the SHA-256 of the opaque value handed to the
+ * client. Tokens descended from one login share a familyId; each is used
+ * once, and a second use of any of them (after a short grace period) revokes
+ * the family.
+ */
+@Entity
+@Table(name = "refresh_tokens", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_refresh_tokens_hash", columnNames = "token_hash")
+}, indexes = {
+        @Index(name = "idx_refresh_tokens_family", columnList = "family_id"),
+        @Index(name = "idx_refresh_tokens_expires_at", columnList = "expires_at")
+})
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    // SHA-256 of the token (hex)
+    @Column(name = "token_hash", nullable = false, length = 64)
+    private String tokenHash;
+
+    @Column(name = "family_id", nullable = false, length = 36)
+    private String familyId;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+
+    // Set when the token is exchanged for its successor
+    @Column(name = "used_at")
+    private Instant usedAt;
+
+    // Set on logout or when reuse is detected, for every token of the family
+    @Column(name = "revoked_at")
+    private Instant revokedAt;
+
+    public RefreshToken() {}
+
+    public RefreshToken(User user, String tokenHash, String familyId, Instant expiresAt) {
+        this.user = user;
+        this.tokenHash = tokenHash;
+        this.familyId = familyId;
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getId() { return id; }
+    public User getUser() { return user; }
+    public String getTokenHash() { return tokenHash; }
+    public String getFamilyId() { return familyId; }
+    public Instant getExpiresAt() { return expiresAt; }
+    public Instant getCreatedAt() { return createdAt; }
+    public Instant getUsedAt() { return usedAt; }
+    public Instant getRevokedAt() { return revokedAt; }
+}
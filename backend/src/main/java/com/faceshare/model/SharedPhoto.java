@@ -4,11 +4,21 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "shared_photos")
+@Table(name = "shared_photos", uniqueConstraints = {
+        // One share per recipient, so reprocessing a photo never duplicates its shares
+        @UniqueConstraint(name = "uk_shared_photos_photo_recipient", columnNames = {"photo_id", "recipient_user_id"})
+}, indexes = {
+        // Serves the per-view access check (recipient first, unlike the unique key)
+        @Index(name = "idx_shared_photos_recipient_photo", columnList = "recipient_user_id, photo_id"),
+        // Keyset pagination of a recipient's shared feed (seek on created_at, id)
+        @Index(name = "idx_shared_photos_recipient_created", columnList = "recipient_user_id, created_at, id")
+})
 public class SharedPhoto {
 
+    // Pooled sequence instead of IDENTITY so Hibernate can batch the fan-out inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "shared_photos_seq")
+    @SequenceGenerator(name = "shared_photos_seq", sequenceName = "shared_photos_seq", allocationSize = 50)
     private Long id;
 
     // the original photo
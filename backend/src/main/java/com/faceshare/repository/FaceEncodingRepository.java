@@ -1,5 +1,7 @@
 package com.faceshare.repository;
 
+import com.faceshare.dto.MatchingSetVersion;
+import com.faceshare.dto.RegisteredEncoding;
 import com.faceshare.model.FaceEncoding;
 import com.faceshare.model.Photo;
 import com.faceshare.model.User;
@@ -11,18 +13,23 @@ import java.util.Optional;
 
 public interface FaceEncodingRepository extends JpaRepository<FaceEncoding, Long> {
     // Find all encodings for a user (supports multiple faces)
-    List<FaceEncoding> findByUser(User user);
+    List<FaceEncoding> findByUserId(Long userId);
 
     // Find primary encoding for a user
     Optional<FaceEncoding> findByUserAndIsPrimaryTrue(User user);
 
     // Check if user has any encodings
-    boolean existsByUser(User user);
+    boolean existsByUserId(Long userId);
 
     // Find encodings by photo
     List<FaceEncoding> findByPhoto(Photo photo);
 
-    // Get all encodings for face matching
-    @Query("SELECT fe FROM FaceEncoding fe WHERE fe.qualityScore IS NULL OR fe.qualityScore >= :minQuality")
-    List<FaceEncoding> findAllWithMinQuality(Double minQuality);
+    // The face matching set (see FaceEncodingIndex): owner and encoding only, no entities
+    @Query("SELECT new com.faceshare.dto.RegisteredEncoding(fe.user.id, fe.encodingJson) FROM FaceEncoding fe " +
+           "WHERE fe.qualityScore IS NULL OR fe.qualityScore >= :minQuality")
+    List<RegisteredEncoding> findMatchingSet(Double minQuality);
+
+    // Checked before every match, so the in-memory set follows registrations on any node
+    @Query("SELECT new com.faceshare.dto.MatchingSetVersion(COUNT(*), MAX(fe.id)) FROM FaceEncoding fe")
+    MatchingSetVersion findMatchingSetVersion();
 }
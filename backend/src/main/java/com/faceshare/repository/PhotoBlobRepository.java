@@ -0,0 +1,52 @@
+package com.faceshare.repository;
+
+import com.faceshare.model.PhotoBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PhotoBlobRepository extends JpaRepository<PhotoBlob, String> {
+
+    // Reference count changes lock the row, so an upload of the same content
+    // waits for a concurrent release to finish deleting (or keeping) the file
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM PhotoBlob b WHERE b.contentHash = :contentHash")
+    Optional<PhotoBlob> findByContentHashForUpdate(String contentHash);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM PhotoBlob b WHERE b.storageBackend = :backend AND b.storageKey = :key")
+    Optional<PhotoBlob> findByStorageKeyForUpdate(String backend, String key);
+
+    // Detection results are a function of the content, so every photo of the blob can reuse them
+    @Transactional
+    @Modifying
+    @Query("UPDATE PhotoBlob b SET b.facesDetected = :facesDetected, b.faceEncodings = :faceEncodings " +
+           "WHERE b.contentHash = :contentHash")
+    int saveDetection(String contentHash, Integer facesDetected, String faceEncodings);
+
+    // Orphan collection: which of a batch of listed keys are blobs
+    @Query("SELECT b.storageKey FROM PhotoBlob b WHERE b.storageBackend = :backend AND b.storageKey IN :keys")
+    List<String> findUsedStorageKeys(String backend, Collection<String> keys);
+
+    // ...and which of those gained a reference recently enough that its photo may not be saved yet
+    @Query("SELECT b.storageKey FROM PhotoBlob b WHERE b.storageBackend = :backend AND b.storageKey IN :keys " +
+           "AND b.lastReferencedAt > :referencedAfter")
+    List<String> findRecentlyReferencedStorageKeys(String backend, Collection<String> keys,
+                                                   LocalDateTime referencedAfter);
+
+    // Upload layout migration
+    @Modifying
+    @Query("UPDATE PhotoBlob b SET b.storageKey = :newKey " +
+           "WHERE b.storageBackend = :backend AND b.storageKey = :oldKey")
+    int updateStorageKey(String backend, String oldKey, String newKey);
+}
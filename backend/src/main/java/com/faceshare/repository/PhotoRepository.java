@@ -1,19 +1,104 @@
 package com.faceshare.repository;
 
+import com.faceshare.dto.PhotoDto;
+import com.faceshare.dto.PhotoHash;
 import com.faceshare.model.Photo;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PhotoRepository extends JpaRepository<Photo, Long> {
+
+    // Select list for PhotoDto projections; callers must join the owner as "u"
+    String PHOTO_DTO_SELECT = "SELECT new com.faceshare.dto.PhotoDto(p.id, p.fileName, p.storageBackend, " +
+            "p.storageKey, p.fileSize, p.mimeType, u.id, u.fullName, p.processingStatus, p.facesDetected, " +
+            "p.createdAt, p.updatedAt, p.thumbnailKey, p.previewKey) ";
+
+    // Rows per round trip when streaming a whole list
+    String STREAM_FETCH_SIZE = "256";
+
     // Non-paginated methods for backward compatibility
     List<Photo> findByUserIdOrderByCreatedAtDesc(Long userId);
     List<Photo> findByProcessingStatusOrderByCreatedAtDesc(Photo.ProcessingStatus status);
 
+    // Ownership check without loading the photo
+    boolean existsByIdAndUserId(Long id, Long userId);
+
+    // Perceptual hashes of a user's photos, to build their near-duplicate index
+    @Query("SELECT new com.faceshare.dto.PhotoHash(p.id, p.perceptualHash) FROM Photo p " +
+           "WHERE p.user.id = :userId AND p.processingStatus = :status AND p.perceptualHash IS NOT NULL")
+    List<PhotoHash> findPerceptualHashes(Long userId, Photo.ProcessingStatus status);
+
+    // A processed photo with the same content, whose derivatives can be reused
+    Optional<Photo> findFirstByContentHashAndProcessingStatusAndIdNot(String contentHash,
+                                                                     Photo.ProcessingStatus status, Long id);
+
+    // Upload layout migration: repoint every photo at a moved object (original or derivative)
+    @Modifying
+    @Query("UPDATE Photo p SET p.storageKey = :newKey WHERE p.storageBackend = :backend AND p.storageKey = :oldKey")
+    int updateStorageKey(String backend, String oldKey, String newKey);
+
+    @Modifying
+    @Query("UPDATE Photo p SET p.thumbnailKey = :newKey " +
+           "WHERE p.storageBackend = :backend AND p.thumbnailKey = :oldKey")
+    int updateThumbnailKey(String backend, String oldKey, String newKey);
+
+    @Modifying
+    @Query("UPDATE Photo p SET p.previewKey = :newKey WHERE p.storageBackend = :backend AND p.previewKey = :oldKey")
+    int updatePreviewKey(String backend, String oldKey, String newKey);
+
+    // Orphan collection: which of a batch of listed keys photos still use
+    @Query("SELECT p.storageKey FROM Photo p WHERE p.storageBackend = :backend AND p.storageKey IN :keys")
+    List<String> findUsedStorageKeys(String backend, Collection<String> keys);
+
+    @Query("SELECT p.thumbnailKey FROM Photo p WHERE p.storageBackend = :backend AND p.thumbnailKey IN :keys")
+    List<String> findUsedThumbnailKeys(String backend, Collection<String> keys);
+
+    @Query("SELECT p.previewKey FROM Photo p WHERE p.storageBackend = :backend AND p.previewKey IN :keys")
+    List<String> findUsedPreviewKeys(String backend, Collection<String> keys);
+
+    // Batch upload progress
+    List<Photo> findByBatchIdAndUserIdOrderByIdAsc(String batchId, Long userId);
+
     // Paginated methods
     Page<Photo> findByUserIdOrderByCreatedAtDesc(Long userId, Pageable pageable);
     Page<Photo> findByProcessingStatusOrderByCreatedAtDesc(Photo.ProcessingStatus status, Pageable pageable);
-}
\ No newline at end of file
+
+    // Keyset pagination, newest first; both are served by idx_photos_user_created (user_id, created_at, id)
+    @Query("SELECT p FROM Photo p JOIN FETCH p.user WHERE p.user.id = :userId " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Photo> findFeedFirstPage(Long userId, Limit limit);
+
+    // The createdAt <= bound gives the index a start key, so a deep page seeks
+    // straight to the cursor instead of filtering every newer row
+    @Query("SELECT p FROM Photo p JOIN FETCH p.user WHERE p.user.id = :userId " +
+           "AND p.createdAt <= :createdAt AND (p.createdAt < :createdAt OR p.id < :id) " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Photo> findFeedAfter(Long userId, LocalDateTime createdAt, Long id, Limit limit);
+
+    // DTO projections for the photo lists: one statement each, no entity or lazy user loading.
+    // The full list is streamed in fetch-size chunks, so it must be consumed inside a transaction.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(PHOTO_DTO_SELECT + "FROM Photo p JOIN p.user u WHERE p.user.id = :userId " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    Stream<PhotoDto> streamDtosByUserId(Long userId);
+
+    @Query(value = PHOTO_DTO_SELECT + "FROM Photo p JOIN p.user u WHERE p.user.id = :userId " +
+                   "ORDER BY p.createdAt DESC, p.id DESC",
+           countQuery = "SELECT count(p) FROM Photo p WHERE p.user.id = :userId")
+    Page<PhotoDto> findDtosByUserId(Long userId, Pageable pageable);
+}
@@ -0,0 +1,44 @@
+package com.faceshare.repository;
+
+import com.faceshare.model.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    // One unique-index lookup; the user comes with it for the new access token
+    @Query("SELECT t FROM RefreshToken t JOIN FETCH t.user WHERE t.tokenHash = :tokenHash")
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    // Claims the token for one rotation: 0 when a concurrent refresh or a
+    // revocation got there first
+    @Modifying
+    @Query("UPDATE RefreshToken t SET t.usedAt = :now " +
+           "WHERE t.id = :id AND t.usedAt IS NULL AND t.revokedAt IS NULL")
+    int markUsed(Long id, Instant now);
+
+    // Read from the database, not the persistence context, so it sees a
+    // concurrent rotation or revocation that markUsed lost to
+    @Query("SELECT COUNT(t) > 0 FROM RefreshToken t " +
+           "WHERE t.id = :id AND t.revokedAt IS NULL AND t.usedAt >= :usedSince")
+    boolean isSpentSince(Long id, Instant usedSince);
+
+    @Modifying
+    @Query("UPDATE RefreshToken t SET t.revokedAt = :now WHERE t.familyId = :familyId AND t.revokedAt IS NULL")
+    int revokeFamily(String familyId, Instant now);
+
+    // Expiry cleanup, a bounded batch per statement so no delete holds many row locks
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM refresh_tokens WHERE id IN " +
+                   "(SELECT id FROM refresh_tokens WHERE expires_at < :now ORDER BY expires_at LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteExpired(Instant now, int batchSize);
+}
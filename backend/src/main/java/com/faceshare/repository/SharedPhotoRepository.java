@@ -1,12 +1,20 @@
 package com.faceshare.repository;
 
+import com.faceshare.dto.PhotoDto;
 import com.faceshare.model.SharedPhoto;
 import com.faceshare.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface SharedPhotoRepository extends JpaRepository<SharedPhoto, Long> {
     // Non-paginated for backward compatibility
@@ -14,4 +22,35 @@ public interface SharedPhotoRepository extends JpaRepository<SharedPhoto, Long>
 
     // Paginated
     Page<SharedPhoto> findByRecipientOrderByCreatedAtDesc(User recipient, Pageable pageable);
+
+    // Access check for a single photo, answered from the (recipient_user_id, photo_id) index
+    boolean existsByRecipientIdAndPhotoId(Long recipientId, Long photoId);
+
+    // Recipients a photo is already shared with
+    @Query("SELECT sp.recipient.id FROM SharedPhoto sp WHERE sp.photo.id = :photoId")
+    List<Long> findRecipientIdsByPhotoId(Long photoId);
+
+    // Keyset pagination by share time, newest first; served by idx_shared_photos_recipient_created
+    @Query("SELECT sp FROM SharedPhoto sp JOIN FETCH sp.photo p JOIN FETCH p.user " +
+           "WHERE sp.recipient.id = :recipientId " +
+           "ORDER BY sp.createdAt DESC, sp.id DESC")
+    List<SharedPhoto> findFeedFirstPage(Long recipientId, Limit limit);
+
+    // Bounded by createdAt <= so the index seeks to the cursor (see PhotoRepository.findFeedAfter)
+    @Query("SELECT sp FROM SharedPhoto sp JOIN FETCH sp.photo p JOIN FETCH p.user " +
+           "WHERE sp.recipient.id = :recipientId " +
+           "AND sp.createdAt <= :createdAt AND (sp.createdAt < :createdAt OR sp.id < :id) " +
+           "ORDER BY sp.createdAt DESC, sp.id DESC")
+    List<SharedPhoto> findFeedAfter(Long recipientId, Instant createdAt, Long id, Limit limit);
+
+    // DTO projections of the photos shared with a recipient, most recently shared first
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = PhotoRepository.STREAM_FETCH_SIZE))
+    @Query(PhotoRepository.PHOTO_DTO_SELECT + "FROM SharedPhoto sp JOIN sp.photo p JOIN p.user u " +
+           "WHERE sp.recipient.id = :recipientId ORDER BY sp.createdAt DESC, sp.id DESC")
+    Stream<PhotoDto> streamPhotoDtosByRecipientId(Long recipientId);
+
+    @Query(value = PhotoRepository.PHOTO_DTO_SELECT + "FROM SharedPhoto sp JOIN sp.photo p JOIN p.user u " +
+                   "WHERE sp.recipient.id = :recipientId ORDER BY sp.createdAt DESC, sp.id DESC",
+           countQuery = "SELECT count(sp) FROM SharedPhoto sp WHERE sp.recipient.id = :recipientId")
+    Page<PhotoDto> findPhotoDtosByRecipientId(Long recipientId, Pageable pageable);
 }
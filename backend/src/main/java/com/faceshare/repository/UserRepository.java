@@ -1,12 +1,38 @@
 package com.faceshare.repository;
 
 import com.faceshare.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
-    Optional<User> findByEmail(String email);
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
     boolean existsByEmail(String email);
-}
\ No newline at end of file
+
+    // Which of the given IDs still exist, without loading the users
+    @Query("SELECT u.id FROM User u WHERE u.id IN :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    // Feed version for ETags on the photo feeds. users.feed_version is not mapped on
+    // User, so the cached entities never carry it; it is only touched by these two
+    // native queries. The bump declares its own query space: a JPQL bulk update (or
+    // a native one without spaces) would evict the whole users cache region on
+    // every upload and share.
+    @Query(value = "SELECT feed_version FROM users WHERE id = :id", nativeQuery = true)
+    Optional<Long> findFeedVersionById(Long id);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE users SET feed_version = feed_version + 1 WHERE id IN (:ids)", nativeQuery = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "users_feed_version"))
+    int incrementFeedVersions(Collection<Long> ids);
+}
@@ -0,0 +1,10 @@
+package com.faceshare.repository;
+
+import com.faceshare.model.User;
+
+import java.util.Optional;
+
+public interface UserRepositoryCustom {
+    // Served from the natural-ID and entity caches when both are warm
+    Optional<User> findByEmail(String email);
+}
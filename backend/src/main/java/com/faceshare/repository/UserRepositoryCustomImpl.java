@@ -0,0 +1,32 @@
+package com.faceshare.repository;
+
+import com.faceshare.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * Looks users up by their natural ID (email) instead of a JPQL query, so
+ * Hibernate resolves email -> id through the users-by-email cache region and
+ * the entity through the users region. A derived query would always hit the
+ * database; query results are not shared between sessions.
+ */
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // SUPPORTS binds a session for the call without starting a transaction, so
+    // routing stays with the caller (primary unless inside a read-only transaction)
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Optional<User> findByEmail(String email) {
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .loadOptional(email);
+    }
+}
@@ -0,0 +1,30 @@
+package com.faceshare.security;
+
+import com.faceshare.model.User;
+import com.faceshare.service.VerifiedToken;
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+import java.io.Serializable;
+
+/**
+ * The principal of a request authenticated with an access token, built from
+ * the token's claims without loading the user. Controllers take it with
+ * {@code @AuthenticationPrincipal} and pass the ID on to the services.
+ * Its name is the email, so Authentication.getName() is unchanged.
+ */
+public record AuthenticatedUser(Long id, String email, String fullName)
+        implements AuthenticatedPrincipal, Serializable {
+
+    public static AuthenticatedUser of(VerifiedToken token) {
+        return new AuthenticatedUser(token.userId(), token.subject(), token.fullName());
+    }
+
+    public static AuthenticatedUser of(User user) {
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getFullName());
+    }
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
@@ -1,36 +1,67 @@
 package com.faceshare.security;
 
 import com.faceshare.config.JwtConfig;
+import com.faceshare.model.User;
 import com.faceshare.service.JwtService;
+import com.faceshare.service.RevokedTokens;
 import com.faceshare.service.UserService;
+import com.faceshare.service.VerifiedToken;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * Authenticates requests carrying a bearer access token. The principal is an
+ * AuthenticatedUser built from the token's claims, so the users table is not
+ * read; only tokens issued before the claims existed fall back to loading the
+ * user by email. Users listed in security.admin-emails also get ROLE_ADMIN,
+ * which the actuator endpoints other than health require.
+ */
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
+    private static final List<GrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+    private static final List<GrantedAuthority> ADMIN_AUTHORITIES = List.of(
+            new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"));
+
     private final JwtService jwtService;
+    private final RevokedTokens revokedTokens;
     private final UserService userService;
     private final JwtConfig jwtConfig;
+    private final Set<String> adminEmails;
 
-    public JwtAuthenticationFilter(JwtService jwtService, UserService userService, JwtConfig jwtConfig) {
+    public JwtAuthenticationFilter(JwtService jwtService, RevokedTokens revokedTokens, UserService userService,
+                                   JwtConfig jwtConfig,
+                                   @Value("${security.admin-emails:}") String adminEmails) {
         this.jwtService = jwtService;
+        this.revokedTokens = revokedTokens;
         this.userService = userService;
         this.jwtConfig = jwtConfig;
+        this.adminEmails = Arrays.stream(adminEmails.split(","))
+                .map(email -> email.trim().toLowerCase(Locale.ROOT))
+                .filter(email -> !email.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
     }
 
     @Override
@@ -45,24 +76,26 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         try {
             final String jwt = authHeader.substring(7);
-            final String userEmail = jwtService.extractUsername(jwt);
-
-            if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userService.loadUserByUsername(userEmail);
+            // Verified once, by signature and expiry; the claims are cached until the token expires
+            Optional<VerifiedToken> token = jwtService.verify(jwt);
 
-                if (jwtService.isTokenValid(jwt, userEmail)) {
-                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails,
-                            null,
-                            userDetails.getAuthorities()
-                    );
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
+            if (token.isEmpty()) {
+                logger.debug("Rejected invalid or expired JWT");
+            } else if (revokedTokens.isRevoked(token.get())) {
+                logger.debug("Rejected revoked JWT of user: {}", token.get().subject());
+            } else if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                AuthenticatedUser user = token.get().userId() != null
+                        ? AuthenticatedUser.of(token.get())
+                        : AuthenticatedUser.of((User) userService.loadUserByUsername(token.get().subject()));
+                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                        user,
+                        null,
+                        adminEmails.contains(user.email().toLowerCase(Locale.ROOT)) ? ADMIN_AUTHORITIES : AUTHORITIES
+                );
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
 
-                    logger.debug("Authenticated user: {}", userEmail);
-                } else {
-                    logger.warn("Invalid JWT token for user: {}", userEmail);
-                }
+                logger.debug("Authenticated user: {}", user.email());
             }
         } catch (Exception e) {
             logger.error("JWT authentication failed: {}", e.getMessage(), e);
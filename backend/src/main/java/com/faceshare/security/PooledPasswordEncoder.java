@@ -0,0 +1,154 @@
+package com.faceshare.security;
+
+import com.faceshare.exception.CustomExceptions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BCrypt on a dedicated, bounded pool instead of the request threads, so a
+ * burst of logins and registrations can use at most auth.bcrypt.threads cores
+ * and photo requests keep the rest.
+ *
+ * - callers wait for their hash on the pool; at most queue-capacity hashes
+ *   wait at once, and beyond that a call fails straight away with
+ *   ServiceUnavailable (answered with 503 and Retry-After)
+ * - the cost factor is auth.bcrypt.strength. upgradeEncoding reports hashes
+ *   of any other cost, so DaoAuthenticationProvider rehashes the password at
+ *   the current cost on the user's next successful login. Not while hashes
+ *   are queued: a login storm during a cost change would otherwise hash
+ *   every password twice, and the rehash can wait for a quieter login
+ */
+@Component
+public class PooledPasswordEncoder implements PasswordEncoder {
+
+    private final BCryptPasswordEncoder bcrypt;
+    private final int strength;
+    private final ThreadPoolExecutor pool;
+
+    private final Timer queueWait;
+    private final Timer encodeDuration;
+    private final Timer matchDuration;
+    private final Counter rejected;
+
+    public PooledPasswordEncoder(MeterRegistry meterRegistry,
+                                 @Value("${auth.bcrypt.strength:10}") int strength,
+                                 @Value("${auth.bcrypt.threads:0}") int threads,
+                                 @Value("${auth.bcrypt.queue-capacity:64}") int queueCapacity) {
+        this.bcrypt = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+
+        // Half the cores by default, so hashing can never take all of them
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bcrypt-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.queueWait = Timer.builder("auth.bcrypt.queue.wait")
+                .description("Time password hashes waited for a BCrypt pool thread")
+                .register(meterRegistry);
+        this.encodeDuration = Timer.builder("auth.bcrypt.duration").tag("operation", "encode")
+                .description("Time to hash a password")
+                .register(meterRegistry);
+        this.matchDuration = Timer.builder("auth.bcrypt.duration").tag("operation", "matches")
+                .description("Time to check a password against its hash")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.bcrypt.rejected")
+                .description("Password hashes refused because the BCrypt pool queue was full")
+                .register(meterRegistry);
+        Gauge.builder("auth.bcrypt.queue.size", pool, executor -> executor.getQueue().size())
+                .description("Password hashes waiting for a BCrypt pool thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.bcrypt.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("BCrypt pool threads hashing right now")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @throws CustomExceptions.ServiceUnavailable if the BCrypt pool queue is full
+     */
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(encodeDuration, () -> bcrypt.encode(rawPassword));
+    }
+
+    /**
+     * @throws CustomExceptions.ServiceUnavailable if the BCrypt pool queue is full
+     */
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(matchDuration, () -> bcrypt.matches(rawPassword, encodedPassword));
+    }
+
+    // $2a$10$... - true for a lower or a higher cost than configured
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (!pool.getQueue().isEmpty()) {
+            return false;
+        }
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(6) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(encodedPassword.substring(4, 6)) != strength;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private <T> T run(Timer duration, Callable<T> work) {
+        long submitted = System.nanoTime();
+        Future<T> result;
+        try {
+            result = pool.submit(() -> {
+                queueWait.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                return duration.recordCallable(work);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new CustomExceptions.ServiceUnavailable("Too many password checks in progress");
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a password hash", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+}
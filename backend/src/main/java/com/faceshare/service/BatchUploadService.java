@@ -0,0 +1,222 @@
+package com.faceshare.service;
+
+import com.faceshare.dto.BatchUploadResponse;
+import com.faceshare.dto.BatchUploadResponse.FileResult;
+import com.faceshare.dto.PhotoDto;
+import com.faceshare.model.Photo;
+import com.faceshare.model.User;
+import com.faceshare.repository.UserRepository;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.UploadContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Batch photo upload - reads multipart parts straight off the request stream
+ * so a large album is never buffered as a whole. Each part is stored as soon
+ * as it arrives; the photo rows for the whole batch are written in one
+ * transaction at the end. If the request fails before that, or the rows
+ * cannot be written, the stored parts are released again.
+ */
+@Service
+public class BatchUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchUploadService.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PhotoService photoService;
+
+    // Limit applies per part, not to the whole request
+    @Value("${file.max-size:10485760}")
+    private long maxPartSize;
+
+    @Value("${file.batch.max-files:50}")
+    private long maxFiles;
+
+    public BatchUploadResponse uploadBatch(HttpServletRequest request, Long userId) throws IOException {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        String batchId = UUID.randomUUID().toString();
+
+        // No request-wide limit; the part limit is enforced by PartSizeLimitStream because
+        // FileUpload's own fileSizeMax closes the whole request stream on the first oversized part
+        FileUpload upload = new FileUpload();
+        upload.setSizeMax(-1);
+        upload.setFileCountMax(maxFiles);
+
+        // Results are kept in arrival order; stored photos get their DTO filled in after the save
+        List<FileResult> results = new ArrayList<>();
+        List<FileResult> pendingResults = new ArrayList<>();
+        List<Photo> storedPhotos = new ArrayList<>();
+
+        try {
+            FileItemIterator items = upload.getItemIterator(new ServletUploadContext(request));
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                if (item.isFormField() || !StringUtils.hasText(item.getName())) {
+                    continue;
+                }
+
+                String originalFileName = StringUtils.cleanPath(item.getName());
+                try (InputStream partStream = item.openStream()) {
+                    PartSizeLimitStream countingStream = new PartSizeLimitStream(partStream, maxPartSize);
+                    StoredFile stored = fileStorageService.storeStream(countingStream, originalFileName);
+
+                    Photo photo = new Photo(
+                            originalFileName,
+                            stored.backend(),
+                            stored.key(),
+                            countingStream.getByteCount(),
+                            item.getContentType(),
+                            user
+                    );
+                    photo.setContentHash(stored.contentHash());
+                    photo.setBatchId(batchId);
+                    storedPhotos.add(photo);
+
+                    FileResult result = FileResult.uploaded(originalFileName, null);
+                    results.add(result);
+                    pendingResults.add(result);
+                } catch (PartTooLargeException e) {
+                    logger.warn("Batch {}: part {} rejected: {}", batchId, originalFileName, e.getMessage());
+                    results.add(FileResult.failed(originalFileName, e.getMessage()));
+                } catch (IOException e) {
+                    logger.error("Batch {}: failed to store part {}", batchId, originalFileName, e);
+                    results.add(FileResult.failed(originalFileName, "Upload failed: " + e.getMessage()));
+                }
+            }
+        } catch (FileUploadException e) {
+            // Malformed stream or too many parts: keep what was already stored, report the rest
+            logger.warn("Batch {} stopped early: {}", batchId, e.getMessage());
+            results.add(FileResult.failed(null, "Batch stopped early: " + e.getMessage()));
+        } catch (IOException | RuntimeException e) {
+            // The request itself failed (e.g. the client went away), so no rows will be written
+            photoService.releaseStoredFiles(storedPhotos);
+            throw e;
+        }
+
+        List<PhotoDto> savedPhotos = photoService.saveBatchAndEnqueue(storedPhotos);
+        Iterator<PhotoDto> savedIterator = savedPhotos.iterator();
+        for (FileResult result : pendingResults) {
+            result.setPhoto(savedIterator.next());
+        }
+
+        logger.info("Batch {} for user {}: {} stored, {} failed",
+                batchId, user.getId(), storedPhotos.size(), results.size() - storedPhotos.size());
+
+        return new BatchUploadResponse(batchId, results);
+    }
+
+    /**
+     * Counts the bytes of a part and fails once it grows past the per-part limit.
+     * Closing it afterwards skips the rest of the part, so the next one can still be read.
+     */
+    private static class PartSizeLimitStream extends FilterInputStream {
+
+        private final long maxSize;
+        private long byteCount;
+
+        PartSizeLimitStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        long getByteCount() {
+            return byteCount;
+        }
+
+        private void count(int n) throws PartTooLargeException {
+            byteCount += n;
+            if (byteCount > maxSize) {
+                throw new PartTooLargeException(
+                        "File size exceeds maximum allowed size of " + maxSize + " bytes");
+            }
+        }
+    }
+
+    private static class PartTooLargeException extends IOException {
+        PartTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Adapts the Jakarta servlet request to commons-fileupload, whose servlet
+     * helpers still target the javax API
+     */
+    private static class ServletUploadContext implements UploadContext {
+
+        private final HttpServletRequest request;
+
+        ServletUploadContext(HttpServletRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return request.getCharacterEncoding();
+        }
+
+        @Override
+        public String getContentType() {
+            return request.getContentType();
+        }
+
+        @Override
+        @Deprecated
+        public int getContentLength() {
+            return request.getContentLength();
+        }
+
+        @Override
+        public long contentLength() {
+            return request.getContentLengthLong();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return request.getInputStream();
+        }
+    }
+}
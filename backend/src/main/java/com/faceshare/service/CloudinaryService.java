@@ -7,7 +7,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -18,8 +20,11 @@ import java.util.Map;
 public class CloudinaryService {
 
     private final Cloudinary cloudinary;
+    private final int uploadChunkSize;
 
-    public CloudinaryService(@Value("${cloudinary.url:}") String cloudinaryUrl) {
+    public CloudinaryService(@Value("${cloudinary.url:}") String cloudinaryUrl,
+                             @Value("${cloudinary.upload-chunk-size:5242880}") int uploadChunkSize) {
+        this.uploadChunkSize = uploadChunkSize;
         if (cloudinaryUrl != null && !cloudinaryUrl.isEmpty()) {
             // Production: Use Cloudinary URL from environment
             this.cloudinary = new Cloudinary(cloudinaryUrl);
@@ -43,25 +48,44 @@ public class CloudinaryService {
      * @param folder Cloudinary folder (e.g., "faceshare/photos")
      * @return Cloudinary URL of uploaded image
      */
-    @SuppressWarnings("unchecked")
     public String uploadImage(MultipartFile file, String folder) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return uploadImage(inputStream, folder);
+        }
+    }
+
+    /**
+     * Upload image from a stream (batch uploads read parts without a MultipartFile)
+     * Sent as a chunked upload, so at most one chunk (cloudinary.upload-chunk-size)
+     * is held in memory whatever the file size. The stream is consumed but not closed.
+     */
+    @SuppressWarnings("unchecked")
+    public String uploadImage(InputStream inputStream, String folder) throws IOException {
         if (!isEnabled()) {
             throw new IllegalStateException("Cloudinary is not configured. Set CLOUDINARY_URL environment variable.");
         }
 
-        Map<String, Object> uploadResult = cloudinary.uploader().upload(file.getBytes(),
+        // uploadLarge closes the stream it reads, which belongs to the caller
+        InputStream unclosable = new FilterInputStream(inputStream) {
+            @Override
+            public void close() {
+            }
+        };
+        Map<String, Object> uploadResult = cloudinary.uploader().uploadLarge(unclosable,
                 ObjectUtils.asMap(
                         "folder", folder,
                         "resource_type", "image",
                         "quality", "auto:good",
                         "format", "jpg" // Convert all to JPG for consistency
-                ));
+                ),
+                uploadChunkSize);
 
         return (String) uploadResult.get("secure_url");
     }
 
     /**
      * Upload image from File (for AI service processing)
+     * Files are streamed from disk in chunks, like streams
      */
     @SuppressWarnings("unchecked")
     public String uploadImage(File file, String folder) throws IOException {
@@ -69,17 +93,49 @@ public class CloudinaryService {
             throw new IllegalStateException("Cloudinary is not configured. Set CLOUDINARY_URL environment variable.");
         }
 
-        Map<String, Object> uploadResult = cloudinary.uploader().upload(file,
+        Map<String, Object> uploadResult = cloudinary.uploader().uploadLarge(file,
                 ObjectUtils.asMap(
                         "folder", folder,
                         "resource_type", "image",
                         "quality", "auto:good",
                         "format", "jpg"
-                ));
+                ),
+                uploadChunkSize);
+
+        return (String) uploadResult.get("secure_url");
+    }
+
+    /**
+     * Upload image from File under a chosen public ID (see CloudinaryBlobStore)
+     */
+    @SuppressWarnings("unchecked")
+    public String uploadImageAs(File file, String publicId) throws IOException {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Cloudinary is not configured. Set CLOUDINARY_URL environment variable.");
+        }
+
+        Map<String, Object> uploadResult = cloudinary.uploader().uploadLarge(file,
+                ObjectUtils.asMap(
+                        "public_id", publicId,
+                        "resource_type", "image",
+                        "quality", "auto:good",
+                        "format", "jpg"
+                ),
+                uploadChunkSize);
 
         return (String) uploadResult.get("secure_url");
     }
 
+    /**
+     * Delivery URL of an uploaded image (as JPEG, which is how it was stored)
+     */
+    public String imageUrl(String publicId) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Cloudinary is not configured. Set CLOUDINARY_URL environment variable.");
+        }
+        return cloudinary.url().secure(true).format("jpg").generate(publicId);
+    }
+
     /**
      * Delete image from Cloudinary by public ID
      *
@@ -93,6 +149,35 @@ public class CloudinaryService {
         cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap());
     }
 
+    /**
+     * URL of a stored image scaled down to fit in a maxSize x maxSize box. Cloudinary
+     * renders the transformation on first request and caches it, so nothing is uploaded.
+     *
+     * @param url Cloudinary URL of the original
+     * @return transformed URL, or null if url is not a Cloudinary upload URL
+     */
+    public String scaledImageUrl(String url, int maxSize) {
+        if (url == null || !url.contains("cloudinary.com") || !url.contains("/upload/")) {
+            return null;
+        }
+        return url.replaceFirst("/upload/", "/upload/c_limit,w_" + maxSize + ",h_" + maxSize + "/");
+    }
+
+    /**
+     * URL of a stored image scaled into a width x height box, either fitting inside it
+     * (c_limit) or filling it and cropping around the centre (c_lfill). Neither enlarges.
+     *
+     * @param url Cloudinary URL of the original
+     * @return transformed URL, or null if url is not a Cloudinary upload URL
+     */
+    public String resizedImageUrl(String url, int width, int height, boolean fill) {
+        if (url == null || !url.contains("cloudinary.com") || !url.contains("/upload/")) {
+            return null;
+        }
+        String crop = fill ? "c_lfill" : "c_limit";
+        return url.replaceFirst("/upload/", "/upload/" + crop + ",w_" + width + ",h_" + height + "/");
+    }
+
     /**
      * Extract Cloudinary public ID from URL
      * URL format: https://res.cloudinary.com/{cloud_name}/image/upload/v{version}/{public_id}.jpg
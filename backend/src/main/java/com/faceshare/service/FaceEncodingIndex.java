@@ -0,0 +1,81 @@
+package com.faceshare.service;
+
+import com.faceshare.dto.MatchingSetVersion;
+import com.faceshare.dto.RegisteredEncoding;
+import com.faceshare.repository.FaceEncodingRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The registered face encodings every processed photo is matched against,
+ * kept in memory already parsed. The set is loaded with one projection query
+ * (no entities, so nothing depends on the second-level cache holding every
+ * row). Before each use the set's version (see MatchingSetVersion) is read,
+ * one aggregate over the primary key, and the set is reloaded when it has
+ * changed, so an encoding registered on any node is matched from its commit.
+ */
+@Component
+public class FaceEncodingIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(FaceEncodingIndex.class);
+
+    // Encodings below this quality score are not matched against
+    private static final double MIN_QUALITY = 0.5;
+
+    /** A registered face: its owner and 128-dimension encoding */
+    public record RegisteredFace(Long userId, List<Double> encoding) {}
+
+    private record Loaded(MatchingSetVersion version, List<RegisteredFace> faces) {}
+
+    private final FaceEncodingRepository faceEncodingRepository;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Loaded loaded;
+
+    public FaceEncodingIndex(FaceEncodingRepository faceEncodingRepository) {
+        this.faceEncodingRepository = faceEncodingRepository;
+    }
+
+    /**
+     * Every registered face of sufficient quality, loaded on first use and
+     * again whenever an encoding has been added or deleted since
+     */
+    public List<RegisteredFace> registeredFaces() {
+        // Read before the set: a registration committed in between makes the next call reload
+        MatchingSetVersion version = faceEncodingRepository.findMatchingSetVersion();
+        Loaded current = loaded;
+        if (current != null && current.version().equals(version)) {
+            return current.faces();
+        }
+        synchronized (this) {
+            current = loaded;
+            if (current != null && current.version().equals(version)) {
+                return current.faces();
+            }
+            List<RegisteredFace> faces = load();
+            loaded = new Loaded(version, faces);
+            return faces;
+        }
+    }
+
+    private List<RegisteredFace> load() {
+        List<RegisteredEncoding> rows = faceEncodingRepository.findMatchingSet(MIN_QUALITY);
+        List<RegisteredFace> faces = new ArrayList<>(rows.size());
+        for (RegisteredEncoding row : rows) {
+            try {
+                faces.add(new RegisteredFace(row.userId(),
+                        objectMapper.readValue(row.encodingJson(), new TypeReference<List<Double>>() {})));
+            } catch (Exception e) {
+                logger.error("Skipping unreadable face encoding of user {}: {}", row.userId(), e.getMessage());
+            }
+        }
+        logger.debug("Loaded {} registered faces for matching", faces.size());
+        return List.copyOf(faces);
+    }
+}
@@ -1,8 +1,10 @@
 package com.faceshare.service;
 
 import com.faceshare.model.FaceEncoding;
-import com.faceshare.model.User;
+import com.faceshare.model.PhotoBlob;
 import com.faceshare.repository.FaceEncodingRepository;
+import com.faceshare.repository.PhotoBlobRepository;
+import com.faceshare.repository.UserRepository;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
@@ -29,6 +31,15 @@ public class FaceRecognitionService {
     @Autowired
     private FaceEncodingRepository faceEncodingRepository;
 
+    @Autowired
+    private FaceEncodingIndex faceEncodingIndex;
+
+    @Autowired
+    private PhotoBlobRepository photoBlobRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
     @Value("${ai.service.url:http://localhost:5000}")
     private String aiServiceUrl;
 
@@ -61,6 +72,40 @@ public class FaceRecognitionService {
         }
     }
 
+    /**
+     * Detect faces in a stored photo. Detection depends only on the content, so
+     * the result is kept on the photo's blob and identical uploads reuse it
+     * without calling the AI service.
+     *
+     * @param contentHash SHA-256 of the photo; null always detects
+     */
+    public Map<String, Object> detectFaces(File imageFile, String contentHash) {
+        if (contentHash != null) {
+            Optional<PhotoBlob> blob = photoBlobRepository.findById(contentHash);
+            if (blob.isPresent() && blob.get().getFacesDetected() != null) {
+                logger.info("Reusing face detection of identical content {}", contentHash);
+                return Map.of(
+                        "success", true,
+                        "faces_detected", blob.get().getFacesDetected(),
+                        "face_encodings", parseEncodings(blob.get().getFaceEncodings()));
+            }
+        }
+
+        Map<String, Object> result = detectFaces(imageFile);
+        if (contentHash != null && Boolean.TRUE.equals(result.get("success"))) {
+            try {
+                Object facesDetected = result.get("faces_detected");
+                Object encodings = result.get("face_encodings");
+                photoBlobRepository.saveDetection(contentHash,
+                        facesDetected instanceof Integer ? (Integer) facesDetected : 0,
+                        objectMapper.writeValueAsString(encodings != null ? encodings : List.of()));
+            } catch (Exception e) {
+                logger.warn("Could not keep face detection of {}: {}", contentHash, e.getMessage());
+            }
+        }
+        return result;
+    }
+
     /**
      * Match detected face encodings against all registered users
      * Returns list of matched User IDs
@@ -72,23 +117,22 @@ public class FaceRecognitionService {
 
         Set<Long> matchedUserIds = new HashSet<>();
 
-        // Get all registered face encodings with minimum quality
-        List<FaceEncoding> registeredEncodings = faceEncodingRepository.findAllWithMinQuality(0.5);
+        // Get all registered face encodings with minimum quality, already parsed
+        List<FaceEncodingIndex.RegisteredFace> registeredFaces = faceEncodingIndex.registeredFaces();
 
         logger.info("Matching {} detected faces against {} registered encodings",
-                detectedEncodings.size(), registeredEncodings.size());
+                detectedEncodings.size(), registeredFaces.size());
 
         // Compare each detected encoding against all registered encodings
         for (List<Double> detectedEncoding : detectedEncodings) {
-            for (FaceEncoding registeredEncoding : registeredEncodings) {
+            for (FaceEncodingIndex.RegisteredFace registeredFace : registeredFaces) {
                 try {
-                    List<Double> storedEncoding = parseEncoding(registeredEncoding.getEncodingJson());
-                    double distance = calculateEuclideanDistance(detectedEncoding, storedEncoding);
+                    double distance = calculateEuclideanDistance(detectedEncoding, registeredFace.encoding());
 
                     if (distance < matchTolerance) {
-                        matchedUserIds.add(registeredEncoding.getUser().getId());
+                        matchedUserIds.add(registeredFace.userId());
                         logger.info("Face match found! User ID: {}, Distance: {}",
-                                registeredEncoding.getUser().getId(), distance);
+                                registeredFace.userId(), distance);
                     }
                 } catch (Exception e) {
                     logger.error("Error comparing encodings: {}", e.getMessage());
@@ -100,12 +144,12 @@ public class FaceRecognitionService {
     }
 
     /**
-     * Save face encoding for a user
+     * Save face encoding for a user. The user is attached as a reference, not loaded.
      */
-    public FaceEncoding saveFaceEncoding(User user, List<Double> encoding, boolean isPrimary) {
+    public FaceEncoding saveFaceEncoding(Long userId, List<Double> encoding, boolean isPrimary) {
         try {
             String encodingJson = objectMapper.writeValueAsString(encoding);
-            FaceEncoding faceEncoding = new FaceEncoding(user, encodingJson);
+            FaceEncoding faceEncoding = new FaceEncoding(userRepository.getReferenceById(userId), encodingJson);
             faceEncoding.setPrimary(isPrimary);
             faceEncoding.setQualityScore(1.0); // Default quality, can be improved
 
@@ -116,15 +160,11 @@ public class FaceRecognitionService {
         }
     }
 
-    /**
-     * Parse JSON encoding string to List of Doubles
-     */
-    private List<Double> parseEncoding(String encodingJson) {
+    private List<List<Double>> parseEncodings(String encodingsJson) {
         try {
-            return objectMapper.readValue(encodingJson, new TypeReference<List<Double>>() {});
+            return objectMapper.readValue(encodingsJson, new TypeReference<List<List<Double>>>() {});
         } catch (Exception e) {
-            logger.error("Error parsing encoding JSON: {}", e.getMessage());
-            throw new RuntimeException("Failed to parse encoding", e);
+            throw new RuntimeException("Failed to parse stored encodings", e);
         }
     }
 
@@ -149,14 +189,14 @@ public class FaceRecognitionService {
     /**
      * Get all face encodings for a user
      */
-    public List<FaceEncoding> getUserEncodings(User user) {
-        return faceEncodingRepository.findByUser(user);
+    public List<FaceEncoding> getUserEncodings(Long userId) {
+        return faceEncodingRepository.findByUserId(userId);
     }
 
     /**
      * Check if user has registered face encodings
      */
-    public boolean hasRegisteredFace(User user) {
-        return faceEncodingRepository.existsByUser(user);
+    public boolean hasRegisteredFace(Long userId) {
+        return faceEncodingRepository.existsByUserId(userId);
     }
 }
@@ -0,0 +1,63 @@
+package com.faceshare.service;
+
+import com.faceshare.exception.CustomExceptions;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a feed ordered by (created_at DESC, id DESC): the sort key of
+ * the last row a client has seen. Clients only ever get the encoded form,
+ * so the format can change without breaking them beyond one page.
+ */
+record FeedCursor(String createdAt, long id) {
+
+    static FeedCursor of(LocalDateTime createdAt, long id) {
+        return new FeedCursor(createdAt.toString(), id);
+    }
+
+    static FeedCursor of(Instant createdAt, long id) {
+        return new FeedCursor(createdAt.toString(), id);
+    }
+
+    /**
+     * @return the decoded cursor, or null when none was given (first page)
+     * @throws CustomExceptions.BadRequest if the token was not issued by us
+     */
+    static FeedCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new FeedCursor(raw.substring(0, separator), Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new CustomExceptions.BadRequest("Invalid cursor");
+        }
+    }
+
+    String encode() {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    LocalDateTime createdAtAsLocalDateTime() {
+        try {
+            return LocalDateTime.parse(createdAt);
+        } catch (DateTimeParseException e) {
+            throw new CustomExceptions.BadRequest("Invalid cursor");
+        }
+    }
+
+    Instant createdAtAsInstant() {
+        try {
+            return Instant.parse(createdAt);
+        } catch (DateTimeParseException e) {
+            throw new CustomExceptions.BadRequest("Invalid cursor");
+        }
+    }
+}
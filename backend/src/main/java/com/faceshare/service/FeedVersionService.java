@@ -0,0 +1,59 @@
+package com.faceshare.service;
+
+import com.faceshare.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Per-user feed version used to build ETags for the photo feeds.
+ *
+ * The counter lives in users.feed_version and is bumped, after the change has
+ * committed, whenever something in the user's own or shared feed changes.
+ * Reads go through a cache keyed by user ID, so a conditional GET that ends
+ * in 304 costs one in-memory lookup. Bumps invalidate this node's entries; the
+ * TTL bounds how long another node can keep serving an old version.
+ */
+@Service
+public class FeedVersionService {
+
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Cache<Long, Long> versions;
+
+    public FeedVersionService(UserRepository userRepository,
+                              TransactionTemplate transactionTemplate,
+                              @Value("${feed-version-cache.max-size:100000}") long maxSize,
+                              @Value("${feed-version-cache.ttl:30000}") long ttlMs) {
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+    public long currentVersion(Long userId) {
+        // Read-write transaction so the load goes to the primary, never a lagging replica
+        return versions.get(userId, id -> transactionTemplate.execute(status ->
+                userRepository.findFeedVersionById(id).orElse(0L)));
+    }
+
+    public void bump(Long userId) {
+        bump(List.of(userId));
+    }
+
+    public void bump(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        userRepository.incrementFeedVersions(userIds);
+        versions.invalidateAll(userIds);
+    }
+}
@@ -1,24 +1,56 @@
 package com.faceshare.service;
 
+import com.faceshare.model.Photo;
+import com.faceshare.model.PhotoBlob;
+import com.faceshare.repository.PhotoBlobRepository;
+import com.faceshare.storage.BlobStore;
+import com.faceshare.storage.BlobStores;
+import com.faceshare.storage.LocalBlobStore;
+import com.faceshare.storage.LocalCopy;
+import com.faceshare.storage.RemoteBlobCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
- * File Storage Service - supports both local and Cloudinary storage
+ * File Storage Service - keeps photo files in a BlobStore (see BlobStores)
  * - Development: Uses local filesystem (./uploads/)
- * - Production: Uses Cloudinary (if CLOUDINARY_URL env var is set)
+ * - Production: Uses Cloudinary (if CLOUDINARY_URL env var is set) or an
+ *   S3-compatible bucket (storage.backend=s3)
+ *
+ * Uploads are spooled to a temporary file through one fixed-size buffer while
+ * they are hashed, so heap use per upload does not depend on the file size,
+ * then handed to the primary store under a key fanned out over two directory
+ * levels (see LocalBlobStore.fanOutKey).
+ *
+ * With file.deduplicate on (the default), uploads are content-addressed: each
+ * distinct content is stored once, keyed by its SHA-256, and shared by every
+ * photo with those bytes through a reference-counted PhotoBlob row. Storing
+ * an upload takes a reference before its photo row exists, so callers give it
+ * back with deleteFile if the row is never written.
  */
 @Service
 public class FileStorageService {
@@ -28,116 +60,305 @@ public class FileStorageService {
     @Value("${file.upload-dir:./uploads}")
     private String uploadDir;
 
-    private final CloudinaryService cloudinaryService;
+    @Value("${file.deduplicate:true}")
+    private boolean deduplicate;
+
+    @Value("${file.write-buffer-size:65536}")
+    private int writeBufferSize;
+
+    @Value("${file.fsync:true}")
+    private boolean fsync;
+
+    private final BlobStores blobStores;
+    private final RemoteBlobCache remoteBlobCache;
+    private final PhotoBlobRepository photoBlobRepository;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public FileStorageService(CloudinaryService cloudinaryService) {
-        this.cloudinaryService = cloudinaryService;
+    public FileStorageService(BlobStores blobStores,
+                              RemoteBlobCache remoteBlobCache,
+                              PhotoBlobRepository photoBlobRepository,
+                              TransactionTemplate transactionTemplate) {
+        this.blobStores = blobStores;
+        this.remoteBlobCache = remoteBlobCache;
+        this.photoBlobRepository = photoBlobRepository;
+        this.transactionTemplate = transactionTemplate;
     }
 
     /**
-     * Store file - uses Cloudinary if configured, otherwise local storage
+     * Store file in the primary store
      *
      * @param file MultipartFile to store
-     * @return Cloudinary URL or local filename
+     * @return where it was stored, with the content hash
      */
-    public String storeFile(MultipartFile file) throws IOException {
-        // Use Cloudinary if configured
-        if (cloudinaryService.isEnabled()) {
-            logger.info("Uploading file to Cloudinary: {}", file.getOriginalFilename());
-            String cloudinaryUrl = cloudinaryService.uploadImage(file, "faceshare/photos");
-            logger.info("File uploaded to Cloudinary: {}", cloudinaryUrl);
-            return cloudinaryUrl;
+    public StoredFile storeFile(MultipartFile file) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return storeStream(inputStream, file.getOriginalFilename());
         }
+    }
+
+    /**
+     * Store a file from a raw stream - used by batch uploads, where each part is
+     * read straight off the request instead of being buffered as a MultipartFile.
+     * The content is hashed as it is copied, so there is no second read.
+     *
+     * @param inputStream part content, consumed but not closed
+     * @param originalFileName client-supplied file name (used for the extension)
+     * @return where it was stored, with the content hash
+     */
+    public StoredFile storeStream(InputStream inputStream, String originalFileName) throws IOException {
+        BlobStore store = blobStores.primary();
+        MessageDigest digest = newSha256();
+        Path temp = Files.createTempFile(uploadPath(), "upload-", ".tmp");
+        try {
+            long size = writeFile(new DigestInputStream(inputStream, digest), temp, store);
+            String contentHash = HexFormat.of().formatHex(digest.digest());
+            String extension = fileExtension(originalFileName);
 
-        // Fallback to local storage for development
-        logger.info("Cloudinary not configured, using local storage");
-        return storeFileLocally(file);
+            if (deduplicate) {
+                return storeDeduplicated(temp, contentHash, LocalBlobStore.fanOutKey(contentHash + extension), size);
+            }
+
+            String key = LocalBlobStore.fanOutKey(UUID.randomUUID() + extension);
+            store.put(key, temp);
+            logger.info("File stored in the {} store: {}", store.name(), key);
+            return new StoredFile(store.name(), key, contentHash);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
     }
 
     /**
-     * Store file locally (development mode)
+     * Either take a reference on the blob that already has this content (the
+     * spooled copy is dropped) or turn the copy into a new blob.
+     *
+     * A new blob's object is put before its row is inserted, outside any
+     * transaction: an S3 multipart or Cloudinary upload can take seconds, and
+     * holding a connection and the row lock for it would stall every other
+     * upload of the same content. The key is derived from the hash, so a
+     * concurrent put of the same content writes the same bytes; whichever
+     * insert loses takes a reference on the winner's blob instead.
      */
-    private String storeFileLocally(MultipartFile file) throws IOException {
-        // Create upload directory if it doesn't exist
+    private StoredFile storeDeduplicated(Path temp, String contentHash, String key, long size) throws IOException {
+        // Duplicates are usually found here and never uploaded again
+        StoredFile existing = transactionTemplate.execute(status -> referenceBlob(contentHash));
+        if (existing != null) {
+            return existing;
+        }
+
+        BlobStore store = blobStores.primary();
+        store.put(key, temp);
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertBlob(store, contentHash, key, size));
+                logger.info("File stored in the {} store: {}", store.name(), key);
+                return new StoredFile(store.name(), key, contentHash);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent upload of the same content created the blob first
+                StoredFile winner = transactionTemplate.execute(status -> referenceBlob(contentHash));
+                if (winner != null) {
+                    if (!winner.backend().equals(store.name()) || !winner.key().equals(key)) {
+                        deleteStoredObject(store.name(), key);
+                    }
+                    return winner;
+                }
+                // ...and it was released again before we could reference it
+                if (attempt > 0) {
+                    throw new IOException("Could not record the blob for " + contentHash, e);
+                }
+            }
+        }
+    }
+
+    // Runs in a transaction; null if there is no blob with this content
+    private StoredFile referenceBlob(String contentHash) {
+        Optional<PhotoBlob> existing = photoBlobRepository.findByContentHashForUpdate(contentHash);
+        if (existing.isEmpty()) {
+            return null;
+        }
+        PhotoBlob blob = existing.get();
+        blob.addReference();
+        logger.info("Duplicate upload, reusing blob {} ({} references)", contentHash, blob.getRefCount());
+        return new StoredFile(blob.getStorageBackend(), blob.getStorageKey(), contentHash);
+    }
+
+    // Runs in a transaction, after the object was put
+    private void insertBlob(BlobStore store, String contentHash, String key, long size) {
+        photoBlobRepository.saveAndFlush(new PhotoBlob(contentHash, store.name(), key, size));
+        try {
+            // The last reference of an earlier blob with this content may have been
+            // released (deleting the object at the same key) between our put and
+            // this insert; checked while our new row is locked
+            store.size(key);
+        } catch (NoSuchFileException e) {
+            throw new UncheckedIOException(new IOException(
+                    "Stored object " + key + " was deleted by a concurrent release, upload again", e));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copy a stream into a new file through a fixed-size buffer. With file.fsync,
+     * files that become local objects are flushed to disk first; spools for a
+     * remote store are not worth syncing.
+     *
+     * @return number of bytes written
+     */
+    private long writeFile(InputStream inputStream, Path target, BlobStore destination) throws IOException {
+        byte[] buffer = new byte[writeBufferSize];
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+                size += read;
+            }
+            if (fsync && destination instanceof LocalBlobStore) {
+                channel.force(true);
+            }
+        }
+        return size;
+    }
+
+    // Create upload directory if it doesn't exist; it also holds the spooled uploads
+    private Path uploadPath() throws IOException {
         Path uploadPath = Paths.get(uploadDir);
         if (!Files.exists(uploadPath)) {
             Files.createDirectories(uploadPath);
         }
+        return uploadPath;
+    }
 
-        // Generate unique filename
-        String originalFileName = StringUtils.cleanPath(file.getOriginalFilename());
-        String fileExtension = "";
-        if (originalFileName.contains(".")) {
-            fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
-        }
+    private static String fileExtension(String originalFileName) {
+        String cleanFileName = StringUtils.cleanPath(originalFileName != null ? originalFileName : "");
+        return cleanFileName.contains(".") ? cleanFileName.substring(cleanFileName.lastIndexOf(".")) : "";
+    }
 
-        String fileName = UUID.randomUUID().toString() + fileExtension;
+    /**
+     * Store a derivative of a photo (e.g. a thumbnail) next to the original, as
+     * {original key without extension}-{suffix}.jpg in the original's store
+     *
+     * @param suffix distinguishes the derivative, e.g. the variant name
+     * @param inputStream JPEG content, consumed but not closed
+     * @return key of the derivative
+     */
+    public String storeDerivative(String backend, String originalKey, String suffix, InputStream inputStream)
+            throws IOException {
+        BlobStore store = blobStores.get(backend);
+        String key = derivativeKey(originalKey, suffix);
 
-        // Store file
-        Path targetLocation = uploadPath.resolve(fileName);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+        // Spooled and put whole: a shared blob's derivative may be being served
+        Path temp = Files.createTempFile(uploadPath(), "derivative-", ".tmp");
+        try {
+            writeFile(inputStream, temp, store);
+            store.put(key, temp);
+            remoteBlobCache.invalidate(backend, key);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return key;
+    }
 
-        logger.info("File stored locally: {}", fileName);
+    private static String derivativeKey(String originalKey, String suffix) {
+        return StringUtils.stripFilenameExtension(originalKey) + "-" + suffix + ".jpg";
+    }
 
-        // Return local path for database storage
-        return uploadDir + "/" + fileName;
+    /**
+     * The store an object is kept in
+     *
+     * @throws IllegalStateException if that store is not configured
+     */
+    public BlobStore store(String backend) {
+        return blobStores.get(backend);
     }
 
     /**
-     * Load file as resource (only for local storage)
-     * For Cloudinary URLs, this method is not used - frontend accesses URLs directly
+     * A stored object as a local file; objects of remote stores come through
+     * the local disk tier (see RemoteBlobCache). Close it when done.
      */
-    public Path loadFileAsResource(String filePathOrUrl) {
-        // If it's a Cloudinary URL, we don't serve it from backend
-        if (filePathOrUrl != null && filePathOrUrl.startsWith("http")) {
-            throw new UnsupportedOperationException(
-                "Cloudinary URLs should be accessed directly by frontend, not through backend"
-            );
+    public LocalCopy localCopy(String backend, String key) throws IOException {
+        BlobStore store = blobStores.get(backend);
+        Optional<Path> localFile = store.localFile(key);
+        if (localFile.isPresent()) {
+            return new LocalCopy(localFile.get(), false);
         }
+        return remoteBlobCache.localCopy(store, key);
+    }
 
-        // Local file path
-        Path filePath = Paths.get(filePathOrUrl).normalize();
-        if (Files.exists(filePath) && Files.isReadable(filePath)) {
-            return filePath;
-        } else {
-            throw new RuntimeException("File not found: " + filePathOrUrl);
-        }
+    /**
+     * A link to the local disk tier's copy of a remote object, if it has one.
+     * Close it when done.
+     */
+    public Optional<LocalCopy> cachedCopy(String backend, String key) throws IOException {
+        return remoteBlobCache.cachedCopy(backend, key);
     }
 
     /**
-     * Delete file - handles both Cloudinary and local storage
+     * Delete a stored original, or give back one whose photo row was never
+     * written. A shared blob only loses a reference; its object (and
+     * derivatives) are deleted with the last one.
+     *
+     * @return true if an object was deleted
      */
-    public boolean deleteFile(String filePathOrUrl) {
-        try {
-            // Check if it's a Cloudinary URL
-            if (cloudinaryService.isEnabled() && filePathOrUrl != null && filePathOrUrl.contains("cloudinary.com")) {
-                String publicId = cloudinaryService.extractPublicId(filePathOrUrl);
-                if (publicId != null) {
-                    cloudinaryService.deleteImage(publicId);
-                    logger.info("Deleted file from Cloudinary: {}", publicId);
-                    return true;
+    public boolean deleteFile(String backend, String key) {
+        Boolean released = transactionTemplate.execute(status -> releaseBlob(backend, key));
+        return released != null ? released : deleteStoredObject(backend, key);
+    }
+
+    // Runs in a transaction; null if the object is not a blob (uploaded without deduplication)
+    private Boolean releaseBlob(String backend, String key) {
+        Optional<PhotoBlob> found = photoBlobRepository.findByStorageKeyForUpdate(backend, key);
+        if (found.isEmpty()) {
+            return null;
+        }
+
+        PhotoBlob blob = found.get();
+        if (blob.getRefCount() > 1) {
+            blob.setRefCount(blob.getRefCount() - 1);
+            logger.info("Released blob {} ({} references left)", blob.getContentHash(), blob.getRefCount());
+            return false;
+        }
+
+        // Deleted while the row is still locked, so a new upload of this content
+        // cannot take a reference on an object that is about to disappear
+        photoBlobRepository.delete(blob);
+        if (!blobStores.get(backend).scalesOnDelivery()) {
+            for (Photo.Variant variant : Photo.Variant.values()) {
+                if (variant != Photo.Variant.ORIGINAL) {
+                    deleteStoredObject(backend, derivativeKey(key, variant.key()));
                 }
             }
+        }
+        return deleteStoredObject(backend, key);
+    }
 
-            // Local file deletion
-            Path filePath = Paths.get(filePathOrUrl).normalize();
-            boolean deleted = Files.deleteIfExists(filePath);
+    private boolean deleteStoredObject(String backend, String key) {
+        try {
+            boolean deleted = blobStores.get(backend).delete(key);
+            remoteBlobCache.invalidate(backend, key);
             if (deleted) {
-                logger.info("Deleted local file: {}", filePathOrUrl);
+                logger.info("Deleted {} from the {} store", key, backend);
             }
             return deleted;
-
-        } catch (IOException e) {
-            logger.error("Error deleting file: {}", filePathOrUrl, e);
+        } catch (IOException | IllegalStateException e) {
+            logger.error("Error deleting {} from the {} store", key, backend, e);
             return false;
         }
     }
 
-    /**
-     * Check if using cloud storage
-     */
-    public boolean isUsingCloudStorage() {
-        return cloudinaryService.isEnabled();
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
@@ -0,0 +1,79 @@
+package com.faceshare.service;
+
+import com.faceshare.model.Photo;
+import com.faceshare.storage.LocalCopy;
+import com.faceshare.util.PerceptualHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Creates the scaled-down variants of a photo (see Photo.Variant) and records
+ * their keys on it, along with its perceptual hash.
+ *
+ * The original is decoded once (see ImageResizer.decode) and every variant is
+ * scaled from that one image, largest first, then stored next to it. Photos in
+ * a store that scales on delivery (Cloudinary) get no stored variants.
+ */
+@Service
+public class ImageDerivativeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeService.class);
+
+    private final FileStorageService fileStorageService;
+    private final ImageResizer imageResizer;
+
+    public ImageDerivativeService(FileStorageService fileStorageService, ImageResizer imageResizer) {
+        this.fileStorageService = fileStorageService;
+        this.imageResizer = imageResizer;
+    }
+
+    /**
+     * Set the thumbnail and preview keys of a stored photo. The photo is not
+     * saved. Variants the original already fits are left null, so they are
+     * served from the original. Photos that are decoded here also get their
+     * perceptual hash, computed from the thumbnail.
+     */
+    public void createDerivatives(Photo photo) throws IOException {
+        if (fileStorageService.store(photo.getStorageBackend()).scalesOnDelivery()) {
+            // The store scales the original itself when a variant is requested
+            photo.setThumbnailKey(photo.getStorageKey());
+            photo.setPreviewKey(photo.getStorageKey());
+            return;
+        }
+
+        int previewSize = Photo.Variant.PREVIEW.getMaxSize();
+        BufferedImage decoded;
+        try (LocalCopy original = fileStorageService.localCopy(photo.getStorageBackend(), photo.getStorageKey())) {
+            decoded = imageResizer.decode(original.path(), previewSize, previewSize, ImageResizer.Fit.CONTAIN);
+        }
+        if (decoded == null) {
+            logger.warn("No image reader for photo ID {}, serving the original for every variant", photo.getId());
+            return;
+        }
+
+        // Each variant is scaled from the previous, larger one
+        BufferedImage preview = imageResizer.resize(decoded, previewSize, previewSize, ImageResizer.Fit.CONTAIN);
+        if (preview != decoded) {
+            photo.setPreviewKey(store(photo, Photo.Variant.PREVIEW, preview));
+        }
+        int thumbnailSize = Photo.Variant.THUMBNAIL.getMaxSize();
+        BufferedImage thumbnail = imageResizer.resize(preview, thumbnailSize, thumbnailSize, ImageResizer.Fit.CONTAIN);
+        if (thumbnail != preview) {
+            photo.setThumbnailKey(store(photo, Photo.Variant.THUMBNAIL, thumbnail));
+        }
+        photo.setPerceptualHash(PerceptualHash.dHash(thumbnail));
+    }
+
+    private String store(Photo photo, Photo.Variant variant, BufferedImage image) throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        imageResizer.writeJpeg(image, jpeg);
+        return fileStorageService.storeDerivative(photo.getStorageBackend(), photo.getStorageKey(), variant.key(),
+                new ByteArrayInputStream(jpeg.toByteArray()));
+    }
+}
@@ -0,0 +1,169 @@
+package com.faceshare.service;
+
+import com.faceshare.util.ExifOrientation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Decoding, scaling and JPEG encoding shared by the fixed derivatives
+ * (ImageDerivativeService) and on-demand renders (PhotoRenderService).
+ */
+@Component
+public class ImageResizer {
+
+    /**
+     * How a w x h box is filled: CONTAIN fits the whole image inside it,
+     * COVER fills it and crops the overflow around the centre. Neither enlarges.
+     */
+    public enum Fit {
+        CONTAIN,
+        COVER;
+
+        public String key() {
+            return name().toLowerCase();
+        }
+
+        public static Fit fromKey(String key) {
+            for (Fit fit : values()) {
+                if (fit.key().equals(key)) {
+                    return fit;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Decode at no less than twice the output size, then scale down smoothly;
+    // subsampling alone would alias
+    private static final int DECODE_OVERSAMPLING = 2;
+
+    private final float jpegQuality;
+
+    public ImageResizer(@Value("${photo-derivatives.jpeg-quality:0.85}") float jpegQuality) {
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Decode an image that will be scaled into a width x height box. Large
+     * images are subsampled while decoding, so a 12MP original never needs a
+     * full-resolution raster. The result is upright: a JPEG's EXIF
+     * orientation is applied, since derivatives are written without it.
+     * Returns null if no reader supports the format.
+     */
+    public BufferedImage decode(Path source, int width, int height, Fit fit) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                int orientation = ExifOrientation.read(reader);
+                // The box is upright, the stored image may not be
+                boolean swapped = ExifOrientation.swapsAxes(orientation);
+                int imageWidth = swapped ? reader.getHeight(0) : reader.getWidth(0);
+                int imageHeight = swapped ? reader.getWidth(0) : reader.getHeight(0);
+                double scale = scaleFor(imageWidth, imageHeight, width, height, fit);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = (int) (1 / (scale * DECODE_OVERSAMPLING));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return ExifOrientation.apply(reader.read(0, param), orientation);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scale into a width x height box. Returns the image itself if it needs
+     * neither scaling nor cropping.
+     */
+    public BufferedImage resize(BufferedImage image, int width, int height, Fit fit) {
+        double scale = scaleFor(image.getWidth(), image.getHeight(), width, height, fit);
+        BufferedImage scaled = scale >= 1 ? image : scaleTo(image,
+                Math.max(1, (int) Math.round(image.getWidth() * scale)),
+                Math.max(1, (int) Math.round(image.getHeight() * scale)));
+
+        if (fit == Fit.COVER && (scaled.getWidth() > width || scaled.getHeight() > height)) {
+            int cropWidth = Math.min(width, scaled.getWidth());
+            int cropHeight = Math.min(height, scaled.getHeight());
+            return copy(scaled.getSubimage((scaled.getWidth() - cropWidth) / 2,
+                    (scaled.getHeight() - cropHeight) / 2, cropWidth, cropHeight));
+        }
+        return scaled;
+    }
+
+    public void writeJpeg(BufferedImage image, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(rgb(image), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // Never above 1: images are not enlarged
+    private static double scaleFor(int imageWidth, int imageHeight, int width, int height, Fit fit) {
+        double scaleX = (double) width / imageWidth;
+        double scaleY = (double) height / imageHeight;
+        double scale = fit == Fit.COVER ? Math.max(scaleX, scaleY) : Math.min(scaleX, scaleY);
+        return Math.min(1, scale);
+    }
+
+    // Halves at most per step so bilinear filtering still sees every source pixel
+    private static BufferedImage scaleTo(BufferedImage image, int targetWidth, int targetHeight) {
+        BufferedImage current = image;
+        do {
+            int stepWidth = Math.max(targetWidth, current.getWidth() / 2);
+            int stepHeight = Math.max(targetHeight, current.getHeight() / 2);
+            current = draw(current, stepWidth, stepHeight);
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    // JPEG has no alpha; transparency becomes white
+    private static BufferedImage rgb(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_INT_RGB ? image : draw(image, image.getWidth(), image.getHeight());
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        return draw(image, image.getWidth(), image.getHeight());
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+}
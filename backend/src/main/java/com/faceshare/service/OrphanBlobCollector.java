@@ -0,0 +1,404 @@
+package com.faceshare.service;
+
+import com.faceshare.model.PhotoBlob;
+import com.faceshare.repository.PhotoBlobRepository;
+import com.faceshare.repository.PhotoRepository;
+import com.faceshare.storage.BlobStore;
+import com.faceshare.storage.LocalBlobStore;
+import com.faceshare.storage.ObjectListing;
+import com.faceshare.storage.StoredObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes stored objects no photo or blob uses any more: files of uploads that
+ * failed before their row was saved, derivatives replaced by a reprocess, and
+ * spooled uploads abandoned by a crash. A blob row only keeps its object while
+ * a photo uses it or it gained a reference within the grace period; a row left
+ * dangling by a failed upload is deleted together with its object.
+ *
+ * Each listable store is walked a page at a time with a cursor, one page per
+ * storage.gc.interval, so a pass over millions of objects is spread out and
+ * each page costs the database a few indexed IN queries. Objects younger than
+ * storage.gc.grace-period are left alone, which covers uploads whose row is
+ * not written yet. Orphans are deleted at no more than
+ * storage.gc.max-deletes-per-second, each second's worth checked again first.
+ * The pacing sleeps, so the collector runs on a thread of its own rather than
+ * the shared scheduler that also sends SSE heartbeats and checks replicas.
+ *
+ * With storage.gc.dry-run (the default) nothing is deleted; each pass only
+ * builds the report served at /actuator/storagegc and logged when it ends.
+ */
+@Component
+@Endpoint(id = "storagegc")
+@ConditionalOnProperty(name = "storage.gc.enabled", havingValue = "true", matchIfMissing = true)
+public class OrphanBlobCollector {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrphanBlobCollector.class);
+
+    private static final int SAMPLE_SIZE = 20;
+
+    private final List<BlobStore> stores;
+    private final PhotoRepository photoRepository;
+    private final PhotoBlobRepository photoBlobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean dryRun;
+    private final Duration gracePeriod;
+    private final int batchSize;
+    private final int maxDeletesPerSecond;
+    private final long deletePauseMs;
+
+    private final long initialDelayMs;
+    private final long intervalMs;
+    private ScheduledExecutorService executor;
+
+    // Snapshots for the report; the walk itself is only touched by the collecting thread
+    private final Map<String, Pass> lastPasses = new ConcurrentHashMap<>();
+    private volatile Pass currentPass;
+    private volatile Walk current;
+    private int storeIndex;
+
+    public OrphanBlobCollector(List<BlobStore> stores,
+                               PhotoRepository photoRepository,
+                               PhotoBlobRepository photoBlobRepository,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${storage.gc.dry-run:true}") boolean dryRun,
+                               @Value("${storage.gc.grace-period:86400000}") long gracePeriodMs,
+                               @Value("${storage.gc.batch-size:500}") int batchSize,
+                               @Value("${storage.gc.max-deletes-per-second:20}") int maxDeletesPerSecond,
+                               @Value("${storage.gc.initial-delay:300000}") long initialDelayMs,
+                               @Value("${storage.gc.interval:10000}") long intervalMs) {
+        this.stores = stores.stream().filter(BlobStore::supportsListing).toList();
+        this.photoRepository = photoRepository;
+        this.photoBlobRepository = photoBlobRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.dryRun = dryRun;
+        this.gracePeriod = Duration.ofMillis(gracePeriodMs);
+        this.batchSize = batchSize;
+        this.maxDeletesPerSecond = Math.max(1, maxDeletesPerSecond);
+        this.deletePauseMs = 1000L / this.maxDeletesPerSecond;
+        this.initialDelayMs = initialDelayMs;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Process one page of the store being walked every storage.gc.interval;
+     * when its listing ends, the pass is reported and the next store is started
+     */
+    @PostConstruct
+    void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "orphan-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::scheduledBatch, initialDelayMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void scheduledBatch() {
+        try {
+            collectBatch();
+        } catch (RuntimeException e) {
+            // Keeps the schedule alive; an exception would cancel it
+            logger.error("Orphan collection failed", e);
+        }
+    }
+
+    // false if the page failed
+    private synchronized boolean collectBatch() {
+        if (stores.isEmpty()) {
+            return true;
+        }
+        if (current == null) {
+            current = new Walk(stores.get(storeIndex), dryRun);
+        }
+
+        Walk pass = current;
+        try {
+            processPage(pass);
+        } catch (IOException | RuntimeException e) {
+            // The cursor is unchanged, so the page is retried on the next run
+            logger.warn("Orphan collection of the {} store failed at {}: {}", pass.backend, pass.cursor, e.getMessage());
+            return false;
+        }
+
+        if (pass.finished != null) {
+            lastPasses.put(pass.backend, pass.snapshot());
+            logger.info("Orphan collection of the {} store finished: {}", pass.backend, pass.summary());
+            current = null;
+            currentPass = null;
+            storeIndex = (storeIndex + 1) % stores.size();
+        }
+        return true;
+    }
+
+    /**
+     * Walk every listable store to the end at once, for tests and one-off runs;
+     * stops at the first page that fails
+     *
+     * @return the finished passes by store name
+     */
+    public Map<String, Pass> collectAll() {
+        for (int i = 0; i < stores.size(); i++) {
+            do {
+                if (!collectBatch()) {
+                    return Map.copyOf(lastPasses);
+                }
+            } while (current != null);
+        }
+        return Map.copyOf(lastPasses);
+    }
+
+    @ReadOperation
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("dryRun", dryRun);
+        report.put("gracePeriod", gracePeriod.toString());
+        Pass pass = currentPass;
+        if (pass != null) {
+            report.put("current", pass);
+        }
+        report.put("lastPasses", Map.copyOf(lastPasses));
+        return report;
+    }
+
+    private void processPage(Walk pass) throws IOException {
+        ObjectListing page = pass.store.list(pass.cursor, batchSize);
+        Instant cutoff = Instant.now().minus(gracePeriod);
+
+        List<StoredObject> candidates = new ArrayList<>();
+        for (StoredObject object : page.objects()) {
+            pass.scanned++;
+            if (object.lastModified().isAfter(cutoff)) {
+                pass.young++;
+            } else {
+                candidates.add(object);
+            }
+        }
+
+        List<Orphan> orphans = unused(pass.backend, candidates);
+        pass.referenced += candidates.size() - orphans.size();
+        if (!pass.dryRun) {
+            orphans = delete(pass, orphans);
+        }
+        for (Orphan orphan : orphans) {
+            pass.orphans++;
+            pass.orphanBytes += orphan.object().size();
+            if (orphan.blob()) {
+                pass.danglingBlobs++;
+            }
+            if (pass.sample.size() < SAMPLE_SIZE) {
+                pass.sample.add(orphan.object().key());
+            }
+        }
+
+        pass.cursor = page.nextCursor();
+        if (pass.cursor == null) {
+            pass.finished = Instant.now();
+        }
+        currentPass = pass.snapshot();
+    }
+
+    /**
+     * The objects no photo or live blob of the store uses, under their key or
+     * under the other layout's name for it (a row may lag a move by
+     * UploadLayoutMigration). Blob rows no photo uses that gained no reference
+     * within the grace period do not count; their objects are orphans too.
+     */
+    private List<Orphan> unused(String backend, List<StoredObject> objects) {
+        if (objects.isEmpty()) {
+            return List.of();
+        }
+        Set<String> keys = new HashSet<>();
+        for (StoredObject object : objects) {
+            keys.addAll(aliases(object.key()));
+        }
+
+        Set<String> used = new HashSet<>(photoRepository.findUsedStorageKeys(backend, keys));
+        used.addAll(photoRepository.findUsedThumbnailKeys(backend, keys));
+        used.addAll(photoRepository.findUsedPreviewKeys(backend, keys));
+        used.addAll(photoBlobRepository.findRecentlyReferencedStorageKeys(backend, keys, referencedAfter()));
+        Set<String> blobs = new HashSet<>(photoBlobRepository.findUsedStorageKeys(backend, keys));
+
+        List<Orphan> orphans = new ArrayList<>();
+        for (StoredObject object : objects) {
+            Collection<String> aliases = aliases(object.key());
+            // A dangling row under the other layout's name is left until the migration moves it
+            boolean inUse = aliases.stream().anyMatch(
+                    alias -> used.contains(alias) || (!alias.equals(object.key()) && blobs.contains(alias)));
+            if (!inUse) {
+                orphans.add(new Orphan(object, blobs.contains(object.key())));
+            }
+        }
+        return orphans;
+    }
+
+    private LocalDateTime referencedAfter() {
+        return LocalDateTime.now().minus(gracePeriod);
+    }
+
+    private static Collection<String> aliases(String key) {
+        String fileName = key.substring(key.lastIndexOf('/') + 1);
+        return Set.copyOf(List.of(key, fileName, LocalBlobStore.fanOutKey(fileName)));
+    }
+
+    /**
+     * Delete orphans in rate-sized chunks, each looked up again just before it
+     * is deleted so a key reused since the page was checked survives
+     *
+     * @return the orphans that were still unused
+     */
+    private List<Orphan> delete(Walk pass, List<Orphan> orphans) {
+        List<Orphan> confirmed = new ArrayList<>();
+        for (int from = 0; from < orphans.size(); from += maxDeletesPerSecond) {
+            List<StoredObject> chunk = orphans.subList(from, Math.min(orphans.size(), from + maxDeletesPerSecond))
+                    .stream().map(Orphan::object).toList();
+            List<Orphan> stillUnused = unused(pass.backend, chunk);
+            pass.referenced += chunk.size() - stillUnused.size();
+
+            for (Orphan orphan : stillUnused) {
+                String key = orphan.object().key();
+                try {
+                    Boolean deleted = orphan.blob()
+                            ? transactionTemplate.execute(status -> deleteDanglingBlob(pass, key))
+                            : Boolean.valueOf(pass.store.delete(key));
+                    if (deleted == null) {
+                        // Referenced again since the recheck
+                        pass.referenced++;
+                        continue;
+                    }
+                    confirmed.add(orphan);
+                    if (deleted) {
+                        pass.deleted++;
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    confirmed.add(orphan);
+                    pass.failed++;
+                    logger.warn("Could not delete orphan {} from the {} store: {}",
+                            key, pass.backend, e.getMessage());
+                }
+
+                currentPass = pass.snapshot();
+                try {
+                    Thread.sleep(deletePauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return confirmed;
+                }
+            }
+        }
+        return confirmed;
+    }
+
+    /**
+     * Runs in a transaction. The row is locked and checked once more, and the
+     * object is deleted before the row lock is released (as when the last
+     * reference is released), so an upload of the same content either takes
+     * a reference first, keeping both, or puts a new object after this one is gone.
+     *
+     * @return whether the object was deleted, or null if the blob is in use again
+     */
+    private Boolean deleteDanglingBlob(Walk pass, String key) {
+        Optional<PhotoBlob> found = photoBlobRepository.findByStorageKeyForUpdate(pass.backend, key);
+        if (found.isEmpty()) {
+            // Released since the recheck; the release deleted the object
+            return false;
+        }
+        PhotoBlob blob = found.get();
+        if (blob.getLastReferencedAt().isAfter(referencedAfter())
+                || !photoRepository.findUsedStorageKeys(pass.backend, aliases(key)).isEmpty()) {
+            return null;
+        }
+
+        photoBlobRepository.delete(blob);
+        photoBlobRepository.flush();
+        logger.info("Deleting dangling blob {} ({} references, no photos)", blob.getContentHash(), blob.getRefCount());
+        try {
+            return pass.store.delete(key);
+        } catch (IOException e) {
+            // Rolls the row deletion back, so the next pass tries again
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // An unused object, and whether a (dangling) blob row names it
+    private record Orphan(StoredObject object, boolean blob) {}
+
+    /**
+     * Progress and findings of one walk over a store, as of when it was taken
+     */
+    public record Pass(String backend, boolean dryRun, Instant started, Instant finished, String cursor,
+                       long scanned, long young, long referenced, long orphans, long orphanBytes,
+                       long danglingBlobs, long deleted, long failed, List<String> sample) {
+    }
+
+    // A walk in progress; only the collecting thread touches it
+    private static final class Walk {
+        private final BlobStore store;
+        private final String backend;
+        private final boolean dryRun;
+        private final Instant started = Instant.now();
+        private Instant finished;
+        private String cursor;
+        private long scanned;
+        private long young;
+        private long referenced;
+        private long orphans;
+        private long orphanBytes;
+        private long deleted;
+        private long failed;
+        private long danglingBlobs;
+        private final List<String> sample = new ArrayList<>();
+
+        Walk(BlobStore store, boolean dryRun) {
+            this.store = store;
+            this.backend = store.name();
+            this.dryRun = dryRun;
+        }
+
+        Pass snapshot() {
+            return new Pass(backend, dryRun, started, finished, cursor, scanned, young, referenced,
+                    orphans, orphanBytes, danglingBlobs, deleted, failed, List.copyOf(sample));
+        }
+
+        String summary() {
+            return String.format("%d objects scanned, %d within the grace period, %d in use, "
+                            + "%d orphans (%d bytes, %d with a dangling blob row)%s",
+                    scanned, young, referenced, orphans, orphanBytes, danglingBlobs,
+                    dryRun ? ", none deleted (dry run)" : ", " + deleted + " deleted, " + failed + " failed");
+        }
+    }
+}
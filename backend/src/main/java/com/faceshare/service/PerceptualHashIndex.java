@@ -0,0 +1,95 @@
+package com.faceshare.service;
+
+import com.faceshare.dto.PhotoHash;
+import com.faceshare.model.Photo;
+import com.faceshare.repository.PhotoRepository;
+import com.faceshare.util.BkTree;
+import com.faceshare.util.PerceptualHash;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Per-user BK-trees of the perceptual hashes of processed photos, for finding
+ * a near-duplicate of a new upload among the same user's photos. A user's tree
+ * is loaded from the database on first use and then kept up to date as their
+ * photos complete; the TTL bounds how long another node's completions stay
+ * invisible here (which only costs a missed reuse).
+ *
+ * Hashes of featureless images (see PerceptualHash.isDistinctive) are neither
+ * indexed nor looked up, since any two such images would match.
+ */
+@Component
+public class PerceptualHashIndex {
+
+    private final PhotoRepository photoRepository;
+    private final int maxDistance;
+    private final int minSetBits;
+    private final Cache<Long, BkTree<Long>> trees;
+
+    public PerceptualHashIndex(PhotoRepository photoRepository,
+                               @Value("${perceptual-hash.max-distance:4}") int maxDistance,
+                               @Value("${perceptual-hash.min-set-bits:8}") int minSetBits,
+                               @Value("${perceptual-hash.index-max-users:10000}") long maxUsers,
+                               @Value("${perceptual-hash.index-ttl:3600000}") long ttlMs) {
+        this.photoRepository = photoRepository;
+        this.maxDistance = maxDistance;
+        this.minSetBits = minSetBits;
+        this.trees = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+    /**
+     * The owner's processed photo closest to this one's hash, if it is within
+     * perceptual-hash.max-distance bits
+     *
+     * @return the near-duplicate's ID
+     */
+    public Optional<Long> findNearDuplicate(Photo photo) {
+        if (!isDistinctive(photo) || maxDistance < 0) {
+            return Optional.empty();
+        }
+        List<BkTree.Match<Long>> matches = tree(photo.getUser().getId()).search(photo.getPerceptualHash(), maxDistance);
+        return matches.stream()
+                .map(BkTree.Match::value)
+                .filter(photoId -> !photoId.equals(photo.getId()))
+                .findFirst();
+    }
+
+    /**
+     * Add a photo that finished processing, if its owner's tree is loaded
+     * (otherwise the next load picks it up from the database)
+     */
+    public void add(Photo photo) {
+        if (!isDistinctive(photo)) {
+            return;
+        }
+        BkTree<Long> tree = trees.getIfPresent(photo.getUser().getId());
+        if (tree != null) {
+            tree.add(photo.getPerceptualHash(), photo.getId());
+        }
+    }
+
+    private boolean isDistinctive(Photo photo) {
+        return photo.getPerceptualHash() != null && PerceptualHash.isDistinctive(photo.getPerceptualHash(), minSetBits);
+    }
+
+    private BkTree<Long> tree(Long userId) {
+        return trees.get(userId, id -> {
+            BkTree<Long> tree = new BkTree<>();
+            for (PhotoHash photoHash : photoRepository.findPerceptualHashes(id, Photo.ProcessingStatus.COMPLETED)) {
+                if (PerceptualHash.isDistinctive(photoHash.perceptualHash(), minSetBits)) {
+                    tree.add(photoHash.perceptualHash(), photoHash.photoId());
+                }
+            }
+            return tree;
+        });
+    }
+}
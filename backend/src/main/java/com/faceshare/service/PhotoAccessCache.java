@@ -0,0 +1,42 @@
+package com.faceshare.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded cache of photo access decisions, keyed by (user, photo).
+ * Every image view runs the access check, so repeat views of the same
+ * photo are answered from memory. Entries are invalidated when a share is
+ * created or revoked; the TTL bounds staleness for anything else.
+ */
+@Component
+public class PhotoAccessCache {
+
+    private final Cache<AccessKey, Boolean> cache;
+
+    public PhotoAccessCache(@Value("${photo-access-cache.max-size:100000}") long maxSize,
+                            @Value("${photo-access-cache.ttl:600000}") long ttlMs) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+    public boolean canAccess(Long userId, Long photoId, BooleanSupplier loader) {
+        return cache.get(new AccessKey(userId, photoId), key -> loader.getAsBoolean());
+    }
+
+    /**
+     * Drop the cached decision after a share between this user and photo was created or revoked
+     */
+    public void invalidate(Long userId, Long photoId) {
+        cache.invalidate(new AccessKey(userId, photoId));
+    }
+
+    private record AccessKey(Long userId, Long photoId) {}
+}
@@ -0,0 +1,274 @@
+package com.faceshare.service;
+
+import com.faceshare.exception.CustomExceptions;
+import com.faceshare.model.Photo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-Sent Events registry for photo processing and sharing updates.
+ *
+ * Keeps one channel per connected user on this node. Each channel holds the
+ * user's open emitters and a small replay buffer so a client reconnecting with
+ * Last-Event-ID gets what it missed. Memory is bounded by a global subscriber
+ * cap, a per-user emitter cap, the replay buffer size, and by dropping
+ * channels that have had no subscribers for the retention period.
+ */
+@Service
+public class PhotoEventService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhotoEventService.class);
+
+    public static final String EVENT_PHOTO_STATUS = "photo-status";
+    public static final String EVENT_PHOTO_SHARED = "photo-shared";
+    public static final String EVENT_RESYNC = "resync";
+
+    @Value("${events.max-subscribers:20000}")
+    private int maxSubscribers;
+
+    @Value("${events.max-subscribers-per-user:5}")
+    private int maxSubscribersPerUser;
+
+    @Value("${events.replay-size:32}")
+    private int replaySize;
+
+    @Value("${events.timeout:1800000}")
+    private long emitterTimeoutMs;
+
+    @Value("${events.retention:300000}")
+    private long retentionMs;
+
+    private final ConcurrentHashMap<Long, UserChannel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    // Seeded from the clock so IDs keep increasing across restarts and stale Last-Event-IDs resync
+    private final AtomicLong eventSequence = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    /**
+     * Open an event stream for a user, replaying anything buffered after lastEventId
+     *
+     * @throws CustomExceptions.ServiceUnavailable when this node is at its subscriber limit
+     */
+    public SseEmitter subscribe(Long userId, String lastEventId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new CustomExceptions.ServiceUnavailable("Too many event subscribers");
+        }
+
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        SseEmitter[] evicted = new SseEmitter[1];
+        // Attach inside compute so the heartbeat cannot drop the channel in between
+        UserChannel channel = channels.compute(userId, (id, existing) -> {
+            UserChannel c = existing != null ? existing : new UserChannel(eventSequence.get());
+            evicted[0] = c.attach(emitter, maxSubscribersPerUser);
+            return c;
+        });
+        if (evicted[0] != null) {
+            // Already out of the channel, so its own completion callback will not count it again
+            subscriberCount.decrementAndGet();
+            evicted[0].complete();
+        }
+
+        Runnable detach = () -> {
+            if (channel.detach(emitter)) {
+                subscriberCount.decrementAndGet();
+            }
+        };
+        emitter.onCompletion(detach);
+        emitter.onTimeout(detach);
+        emitter.onError(e -> detach.run());
+
+        replay(emitter, channel, parseEventId(lastEventId));
+        return emitter;
+    }
+
+    /**
+     * Notify the photo owner of a processing status change
+     */
+    public void publishStatus(Photo photo) {
+        publish(photo.getUser().getId(), EVENT_PHOTO_STATUS, Map.of(
+                "photoId", photo.getId(),
+                "status", photo.getProcessingStatus().toString(),
+                "facesDetected", photo.getFacesDetected() != null ? photo.getFacesDetected() : 0
+        ));
+    }
+
+    /**
+     * Notify a recipient that a photo was shared with them
+     */
+    public void publishShared(Long recipientId, Long photoId) {
+        publish(recipientId, EVENT_PHOTO_SHARED, Map.of("photoId", photoId));
+    }
+
+    /**
+     * Keep idle connections open through proxies and drop channels nobody came back for
+     */
+    @Scheduled(fixedDelayString = "${events.heartbeat-interval:25000}")
+    public void heartbeat() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        for (Long userId : channels.keySet()) {
+            UserChannel channel = channels.computeIfPresent(userId,
+                    (id, c) -> c.isIdleSince(cutoff) ? null : c);
+            if (channel == null) {
+                continue;
+            }
+            for (SseEmitter emitter : channel.emitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    private void publish(Long userId, String eventName, Object data) {
+        UserChannel channel = channels.get(userId);
+        if (channel == null) {
+            // Nobody connected (or recently connected) on this node
+            return;
+        }
+
+        BufferedEvent event = new BufferedEvent(eventSequence.incrementAndGet(), eventName, data);
+        channel.buffer(event, replaySize);
+
+        for (SseEmitter emitter : channel.emitters) {
+            send(emitter, event);
+        }
+    }
+
+    private void replay(SseEmitter emitter, UserChannel channel, Long lastEventId) {
+        if (lastEventId == null) {
+            return;
+        }
+
+        List<BufferedEvent> missed = new ArrayList<>();
+        if (!channel.collectAfter(lastEventId, missed)) {
+            // Buffer no longer covers the client's position - it has to refetch
+            try {
+                emitter.send(SseEmitter.event().name(EVENT_RESYNC).data(Map.of("reason", "history unavailable")));
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+            }
+            return;
+        }
+
+        for (BufferedEvent event : missed) {
+            send(emitter, event);
+        }
+    }
+
+    private void send(SseEmitter emitter, BufferedEvent event) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(event.id))
+                    .name(event.name)
+                    .data(event.data));
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("Dropping event subscriber: {}", e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+
+    private Long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static class BufferedEvent {
+        final long id;
+        final String name;
+        final Object data;
+
+        BufferedEvent(long id, String name, Object data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private static class UserChannel {
+
+        final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private final ArrayDeque<BufferedEvent> replay = new ArrayDeque<>();
+        // Highest event ID this channel cannot replay; starts at the sequence value at creation
+        private long evictedUpTo;
+        private volatile long lastDetachedAt = System.currentTimeMillis();
+
+        UserChannel(long createdAtSequence) {
+            this.evictedUpTo = createdAtSequence;
+        }
+
+        /**
+         * @return the emitter removed to stay within maxPerUser, for the caller
+         *         to complete, or null
+         */
+        synchronized SseEmitter attach(SseEmitter emitter, int maxPerUser) {
+            emitters.add(emitter);
+            if (emitters.size() > maxPerUser) {
+                // Oldest connection is most likely a dead client that never closed;
+                // removed now, as a dead client's completion callback can take long
+                return emitters.remove(0);
+            }
+            return null;
+        }
+
+        boolean detach(SseEmitter emitter) {
+            boolean removed = emitters.remove(emitter);
+            if (removed && emitters.isEmpty()) {
+                lastDetachedAt = System.currentTimeMillis();
+            }
+            return removed;
+        }
+
+        synchronized void buffer(BufferedEvent event, int maxSize) {
+            replay.addLast(event);
+            while (replay.size() > maxSize) {
+                evictedUpTo = replay.removeFirst().id;
+            }
+        }
+
+        /**
+         * @return false if events after lastEventId have already been evicted
+         */
+        synchronized boolean collectAfter(long lastEventId, List<BufferedEvent> out) {
+            if (lastEventId < evictedUpTo) {
+                return false;
+            }
+            for (BufferedEvent event : replay) {
+                if (event.id > lastEventId) {
+                    out.add(event);
+                }
+            }
+            return true;
+        }
+
+        boolean isIdleSince(long cutoff) {
+            return emitters.isEmpty() && lastDetachedAt < cutoff;
+        }
+    }
+}
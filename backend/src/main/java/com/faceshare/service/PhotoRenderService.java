@@ -0,0 +1,299 @@
+package com.faceshare.service;
+
+import com.faceshare.exception.CustomExceptions;
+import com.faceshare.model.Photo;
+import com.faceshare.storage.BlobStore;
+import com.faceshare.storage.LocalCopy;
+import com.faceshare.util.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders photos at client-chosen sizes (/api/photos/view?w=&h=&fit=) and keeps
+ * the results in a size-bounded disk cache.
+ *
+ * - cache entries are keyed by the original's content hash and the render
+ *   parameters, so a photo renders once per size however it is requested
+ * - concurrent requests for the same uncached render wait for one render
+ * - decodes are capped by a semaphore; a request that cannot get a permit in
+ *   time is rejected with ServiceUnavailable rather than queued indefinitely
+ * - the index of the cache is a Caffeine cache weighed by file size; evicting an
+ *   entry deletes its file. Caffeine's eviction is frequency-aware LRU, so a
+ *   burst of one-off sizes does not flush the sizes every client uses.
+ * - readers get a hard link to the render (see LocalCopy.link), so an eviction
+ *   while one is being sent does not delete it mid-response
+ */
+@Service
+public class PhotoRenderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhotoRenderService.class);
+
+    private static final String RENDER_SUFFIX = ".jpg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * A render request. Missing dimensions are filled in with the maximum,
+     * so (w=300) and (w=300, h=max) share a cache entry.
+     */
+    public record Spec(int width, int height, ImageResizer.Fit fit) {
+
+        public String key() {
+            return "w" + width + "-h" + height + "-" + fit.key();
+        }
+    }
+
+    private final FileStorageService fileStorageService;
+    private final ImageResizer imageResizer;
+
+    private final Path cacheDir;
+    private final int maxDimension;
+    private final long acquireTimeoutMs;
+    private final Semaphore renderPermits;
+    private final Cache<String, Path> renders;
+    private final SingleFlight<String, Path> inFlight = new SingleFlight<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter rejected;
+    private final Timer renderTimer;
+
+    public PhotoRenderService(FileStorageService fileStorageService,
+                              ImageResizer imageResizer,
+                              MeterRegistry meterRegistry,
+                              @Value("${image-resize.cache-dir:./cache/renders}") String cacheDir,
+                              @Value("${image-resize.cache-max-size:536870912}") long cacheMaxSize,
+                              @Value("${image-resize.max-dimension:2048}") int maxDimension,
+                              @Value("${image-resize.max-concurrent-renders:2}") int maxConcurrentRenders,
+                              @Value("${image-resize.acquire-timeout:5000}") long acquireTimeoutMs) {
+        this.fileStorageService = fileStorageService;
+        this.imageResizer = imageResizer;
+        this.cacheDir = Paths.get(cacheDir).toAbsolutePath().normalize();
+        this.maxDimension = maxDimension;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.renderPermits = new Semaphore(maxConcurrentRenders, true);
+
+        this.hits = Counter.builder("photo.render.cache.requests").tag("result", "hit")
+                .description("On-demand photo renders served from the disk cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("photo.render.cache.requests").tag("result", "miss")
+                .description("On-demand photo renders not in the disk cache")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("photo.render.cache.evictions")
+                .description("Rendered photos deleted to keep the disk cache within its size")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("photo.render.rejected")
+                .description("Renders refused because no decode permit became free in time")
+                .register(meterRegistry);
+        this.renderTimer = Timer.builder("photo.render.duration")
+                .description("Time to decode, scale and encode an on-demand render")
+                .register(meterRegistry);
+
+        this.renders = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxSize)
+                .weigher((String key, Path file) -> (int) Math.min(Integer.MAX_VALUE, sizeOf(file)))
+                .evictionListener((String key, Path file, RemovalCause cause) -> {
+                    deleteQuietly(file);
+                    evictions.increment();
+                })
+                .build();
+
+        Gauge.builder("photo.render.cache.size", renders,
+                        cache -> cache.policy().eviction().orElseThrow().weightedSize().orElse(0))
+                .description("Bytes of rendered photos in the disk cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("photo.render.cache.hit.ratio", this, PhotoRenderService::hitRatio)
+                .description("Share of on-demand render requests served from the disk cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Re-index renders left by the previous run, so a restart keeps its cache
+     * (and its size limit). Half-written files and links left by readers
+     * are removed.
+     */
+    @PostConstruct
+    void loadExistingRenders() {
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    deleteQuietly(file);
+                } else if (name.endsWith(RENDER_SUFFIX)) {
+                    renders.put(name.substring(0, name.length() - RENDER_SUFFIX.length()), file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not index rendered photos in {}: {}", cacheDir, e.getMessage());
+        }
+        logger.info("Indexed {} rendered photos in {}", renders.estimatedSize(), cacheDir);
+    }
+
+    /**
+     * Validate render parameters. Returns null if they are invalid: unknown fit,
+     * a dimension outside 1..max, or cover without both dimensions.
+     */
+    public Spec spec(Integer width, Integer height, String fit) {
+        ImageResizer.Fit parsedFit = ImageResizer.Fit.fromKey(fit);
+        if (parsedFit == null || !validDimension(width) || !validDimension(height)) {
+            return null;
+        }
+        if (parsedFit == ImageResizer.Fit.COVER && (width == null || height == null)) {
+            return null;
+        }
+        return new Spec(width != null ? width : maxDimension, height != null ? height : maxDimension, parsedFit);
+    }
+
+    /**
+     * Identifies a render of a photo. Renders are deterministic, so this also
+     * serves as its ETag.
+     */
+    public String cacheKey(Photo photo, Spec spec) {
+        String source = photo.getContentHash() != null ? photo.getContentHash() : "photo" + photo.getId();
+        return source + "-" + spec.key();
+    }
+
+    /**
+     * URL of the rendition for a photo in a store that scales on delivery
+     * (Cloudinary), which renders and caches it itself; null for other stores.
+     */
+    public String renderedUrl(Photo photo, Spec spec) {
+        BlobStore store = fileStorageService.store(photo.getStorageBackend());
+        if (!store.scalesOnDelivery()) {
+            return null;
+        }
+        return store.publicUrl(photo.getStorageKey(), spec.width(), spec.height(),
+                spec.fit() == ImageResizer.Fit.COVER).orElse(null);
+    }
+
+    /**
+     * The rendered JPEG, rendered first if it is not cached. The copy is a
+     * link of the caller's own, so the cache can evict the render while it is
+     * being sent; close it when done.
+     *
+     * @throws CustomExceptions.ServiceUnavailable if too many renders are running
+     */
+    public LocalCopy render(Photo photo, Spec spec) throws IOException {
+        String key = cacheKey(photo, spec);
+        Path cached = renders.getIfPresent(key);
+        LocalCopy copy = cached != null ? LocalCopy.link(cached) : null;
+        if (copy != null) {
+            hits.increment();
+            return copy;
+        }
+        misses.increment();
+
+        // A fresh render is only evicted before it is linked under heavy churn; once more then
+        for (int attempt = 0; attempt < 2; attempt++) {
+            copy = LocalCopy.link(renderOnce(photo, spec, key));
+            if (copy != null) {
+                return copy;
+            }
+        }
+        throw new NoSuchFileException("Render " + key + " was evicted before it could be read");
+    }
+
+    // Concurrent requests for the same render wait for one
+    private Path renderOnce(Photo photo, Spec spec, String key) throws IOException {
+        try {
+            return inFlight.execute(key, () -> {
+                // Finished by another request between the lookup and now
+                Path done = renders.getIfPresent(key);
+                if (done != null && Files.exists(done)) {
+                    return done;
+                }
+                return renderToCache(photo, spec, key);
+            });
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Rendering photo ID " + photo.getId() + " failed", e);
+        }
+    }
+
+    private Path renderToCache(Photo photo, Spec spec, String key) throws IOException, InterruptedException {
+        if (!renderPermits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+            rejected.increment();
+            throw new CustomExceptions.ServiceUnavailable("Too many photo renders in progress");
+        }
+
+        Path target = cacheDir.resolve(key + RENDER_SUFFIX);
+        Path temp = cacheDir.resolve(key + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(cacheDir);
+            Timer.Sample sample = Timer.start();
+            BufferedImage decoded;
+            try (LocalCopy source = fileStorageService.localCopy(photo.getStorageBackend(), photo.getStorageKey())) {
+                decoded = imageResizer.decode(source.path(), spec.width(), spec.height(), spec.fit());
+            }
+            if (decoded == null) {
+                throw new IOException("No image reader for photo ID " + photo.getId());
+            }
+            BufferedImage resized = imageResizer.resize(decoded, spec.width(), spec.height(), spec.fit());
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                imageResizer.writeJpeg(resized, out);
+            }
+            // Readers never see a partly written file
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            sample.stop(renderTimer);
+        } finally {
+            renderPermits.release();
+            deleteQuietly(temp);
+        }
+
+        renders.put(key, target);
+        return target;
+    }
+
+    private boolean validDimension(Integer dimension) {
+        return dimension == null || (dimension >= 1 && dimension <= maxDimension);
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    // A file deleted behind the cache's back weighs nothing; render() replaces it
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.faceshare.service;
 
+import com.faceshare.dto.CursorPage;
 import com.faceshare.dto.PhotoDto;
 import com.faceshare.model.Photo;
 import com.faceshare.model.SharedPhoto;
@@ -7,27 +8,47 @@ import com.faceshare.model.User;
 import com.faceshare.repository.PhotoRepository;
 import com.faceshare.repository.SharedPhotoRepository;
 import com.faceshare.repository.UserRepository;
+import com.faceshare.security.AuthenticatedUser;
+import com.faceshare.storage.BlobRef;
+import com.faceshare.storage.LocalCopy;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class PhotoService {
 
     private static final Logger logger = LoggerFactory.getLogger(PhotoService.class);
 
+    private static final int MAX_FEED_PAGE_SIZE = 100;
+
     @Autowired
     private PhotoRepository photoRepository;
 
@@ -43,22 +64,63 @@ public class PhotoService {
     @Autowired
     private SharedPhotoRepository sharedPhotoRepository;
 
-    public PhotoDto uploadPhoto(MultipartFile file, String userEmail) throws Exception {
-        User user = userRepository.findByEmail(userEmail)
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    @Autowired
+    private PhotoEventService photoEventService;
+
+    @Autowired
+    private PerceptualHashIndex perceptualHashIndex;
+
+    @Autowired
+    private PhotoAccessCache photoAccessCache;
+
+    @Autowired
+    private PhotoUrlSigner photoUrlSigner;
+
+    @Autowired
+    private FeedVersionService feedVersionService;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWrites;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private TaskExecutor taskExecutor;
+
+    public PhotoDto uploadPhoto(MultipartFile file, AuthenticatedUser uploader) throws Exception {
+        // By primary key, from the second-level cache when warm; the photo needs the entity
+        User user = userRepository.findById(uploader.id())
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        String fileName = fileStorageService.storeFile(file);
-        String filePath = "./uploads/" + fileName;
+        StoredFile stored = fileStorageService.storeFile(file);
 
         Photo photo = new Photo(
                 file.getOriginalFilename(),
-                filePath,
+                stored.backend(),
+                stored.key(),
                 file.getSize(),
                 file.getContentType(),
                 user
         );
+        photo.setContentHash(stored.contentHash());
 
-        Photo savedPhoto = photoRepository.save(photo);
+        Photo savedPhoto;
+        try {
+            savedPhoto = photoRepository.save(photo);
+        } catch (RuntimeException e) {
+            // No photo points at the stored file, so give back its blob reference
+            fileStorageService.deleteFile(stored.backend(), stored.key());
+            throw e;
+        }
+        feedVersionService.bump(user.getId());
 
         // Process face detection and automatic sharing asynchronously
         // Returns immediately while processing happens in background
@@ -67,6 +129,62 @@ public class PhotoService {
         return convertToDto(savedPhoto);
     }
 
+    /**
+     * Persist every photo of a batch upload in a single transaction, then hand the
+     * whole batch to the background executor once the rows are committed
+     */
+    public List<PhotoDto> saveBatchAndEnqueue(List<Photo> photos) {
+        if (photos.isEmpty()) {
+            return List.of();
+        }
+
+        List<Photo> savedPhotos;
+        try {
+            savedPhotos = transactionTemplate.execute(status -> photoRepository.saveAll(photos));
+        } catch (RuntimeException e) {
+            releaseStoredFiles(photos);
+            throw e;
+        }
+        User owner = savedPhotos.get(0).getUser();
+        feedVersionService.bump(owner.getId());
+
+        // Snapshot the DTOs before processing starts mutating the entities
+        List<PhotoDto> dtos = savedPhotos.stream()
+                .map(this::convertToDto)
+                .collect(Collectors.toList());
+
+        for (Photo photo : savedPhotos) {
+            taskExecutor.execute(() -> processPhotoAndShare(photo));
+        }
+        logger.info("Enqueued {} photos of batch {} for processing",
+                savedPhotos.size(), savedPhotos.get(0).getBatchId());
+
+        return dtos;
+    }
+
+    /**
+     * Give back the stored files of photos whose rows were never written: each
+     * loses its blob reference, and objects nothing else uses are deleted
+     */
+    public void releaseStoredFiles(List<Photo> unsaved) {
+        for (Photo photo : unsaved) {
+            fileStorageService.deleteFile(photo.getStorageBackend(), photo.getStorageKey());
+        }
+        if (!unsaved.isEmpty()) {
+            logger.info("Released {} stored files of photos that were not saved", unsaved.size());
+        }
+    }
+
+    /**
+     * Get the photos of a batch upload so clients can follow its processing progress
+     */
+    public List<PhotoDto> getBatchPhotos(String batchId, Long userId) {
+        return photoRepository.findByBatchIdAndUserIdOrderByIdAsc(batchId, userId)
+                .stream()
+                .map(this::convertToDto)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Process photo for face detection and automatically share with detected users
      * This method runs asynchronously to avoid blocking the upload request
@@ -74,21 +192,34 @@ public class PhotoService {
     @Async
     public void processPhotoAndShare(Photo photo) {
         try {
-            photo.setProcessingStatus(Photo.ProcessingStatus.PROCESSING);
-            photoRepository.save(photo);
+            updateStatus(photo, Photo.ProcessingStatus.PROCESSING);
+
+            // Persisted with the final status update below
+            createDerivatives(photo);
+
+            // A re-upload of a shot the user already processed (recompressed, resized,
+            // sent back through a messenger) has the same faces. Only a match in which
+            // faces were found is trusted with its recipients; otherwise detect as usual.
+            Optional<Photo> nearDuplicate = perceptualHashIndex.findNearDuplicate(photo)
+                    .flatMap(photoRepository::findById)
+                    .filter(duplicate -> duplicate.getFacesDetected() != null && duplicate.getFacesDetected() > 0);
+            if (nearDuplicate.isPresent()) {
+                reuseProcessing(photo, nearDuplicate.get());
+                return;
+            }
 
             logger.info("Starting face detection for photo ID: {}", photo.getId());
 
-            // Detect faces and extract encodings
-            Map<String, Object> detectionResult = faceRecognitionService.detectFaces(
-                    new File(photo.getFilePath())
-            );
+            // Detect faces and extract encodings (a remote original is downloaded for this)
+            Map<String, Object> detectionResult;
+            try (LocalCopy original = fileStorageService.localCopy(photo.getStorageBackend(), photo.getStorageKey())) {
+                detectionResult = faceRecognitionService.detectFaces(original.path().toFile(), photo.getContentHash());
+            }
 
             Boolean success = (Boolean) detectionResult.get("success");
             if (success == null || !success) {
                 logger.error("Face detection failed for photo ID: {}", photo.getId());
-                photo.setProcessingStatus(Photo.ProcessingStatus.FAILED);
-                photoRepository.save(photo);
+                updateStatus(photo, Photo.ProcessingStatus.FAILED);
                 return;
             }
 
@@ -114,19 +245,68 @@ public class PhotoService {
                 sharePhotoWithUsers(photo, matchedUserIds);
             }
 
-            photo.setProcessingStatus(Photo.ProcessingStatus.COMPLETED);
-            photoRepository.save(photo);
+            updateStatus(photo, Photo.ProcessingStatus.COMPLETED);
+            perceptualHashIndex.add(photo);
             logger.info("Photo processing completed for photo ID: {}", photo.getId());
 
         } catch (Exception e) {
             logger.error("Error processing photo ID {}: {}", photo.getId(), e.getMessage(), e);
-            photo.setProcessingStatus(Photo.ProcessingStatus.FAILED);
-            photoRepository.save(photo);
+            updateStatus(photo, Photo.ProcessingStatus.FAILED);
         }
     }
 
+    // Take the face count and matches of a near-duplicate instead of calling the AI service
+    private void reuseProcessing(Photo photo, Photo nearDuplicate) {
+        logger.info("Photo ID {} is a near-duplicate of photo ID {}, reusing its face detection",
+                photo.getId(), nearDuplicate.getId());
+        photo.setFacesDetected(nearDuplicate.getFacesDetected());
+        sharePhotoWithUsers(photo, sharedPhotoRepository.findRecipientIdsByPhotoId(nearDuplicate.getId()));
+
+        updateStatus(photo, Photo.ProcessingStatus.COMPLETED);
+        perceptualHashIndex.add(photo);
+    }
+
+    // A photo without derivatives is still usable (variants fall back to the
+    // original), so a failure here must not fail the whole processing.
+    // Photos sharing a blob share its derivatives, so those are made once.
+    private void createDerivatives(Photo photo) {
+        if (photo.getContentHash() != null) {
+            Optional<Photo> processed = photoRepository.findFirstByContentHashAndProcessingStatusAndIdNot(
+                    photo.getContentHash(), Photo.ProcessingStatus.COMPLETED, photo.getId());
+            if (processed.isPresent() && processed.get().getVariantRef(Photo.Variant.ORIGINAL)
+                    .equals(photo.getVariantRef(Photo.Variant.ORIGINAL))) {
+                photo.setThumbnailKey(processed.get().getThumbnailKey());
+                photo.setPreviewKey(processed.get().getPreviewKey());
+                photo.setPerceptualHash(processed.get().getPerceptualHash());
+                return;
+            }
+        }
+        try {
+            imageDerivativeService.createDerivatives(photo);
+        } catch (Exception e) {
+            logger.warn("Could not create derivatives for photo ID {}: {}", photo.getId(), e.getMessage());
+        }
+    }
+
+    // Persist a processing status change and tell the owner's event stream and the
+    // feeds showing the photo (the owner's and, once shared, the recipients') about it
+    private void updateStatus(Photo photo, Photo.ProcessingStatus status) {
+        photo.setProcessingStatus(status);
+        photoRepository.save(photo);
+
+        List<Long> affectedUserIds = new ArrayList<>(sharedPhotoRepository.findRecipientIdsByPhotoId(photo.getId()));
+        affectedUserIds.add(photo.getUser().getId());
+        feedVersionService.bump(affectedUserIds);
+        readYourWrites.recordWrite(affectedUserIds);
+
+        photoEventService.publishStatus(photo);
+    }
+
     /**
      * Share photo with a list of users
+     * Recipients are resolved with one query and attached as references, and the
+     * shares are inserted as a single JDBC batch. Users the photo is already shared
+     * with are skipped, so reprocessing a photo is idempotent.
      */
     private void sharePhotoWithUsers(Photo photo, List<Long> userIds) {
         if (userIds == null || userIds.isEmpty()) {
@@ -136,78 +316,120 @@ public class PhotoService {
 
         // Don't share with the photo owner
         Long ownerId = photo.getUser().getId();
-        userIds = userIds.stream()
+        Set<Long> candidateIds = userIds.stream()
                 .filter(userId -> !userId.equals(ownerId))
-                .collect(Collectors.toList());
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (candidateIds.isEmpty()) {
+            return;
+        }
 
-        List<SharedPhoto> sharedPhotos = new ArrayList<>();
-        for (Long userId : userIds) {
-            try {
-                User recipient = userRepository.findById(userId).orElse(null);
-                if (recipient != null) {
-                    SharedPhoto sharedPhoto = new SharedPhoto();
-                    sharedPhoto.setPhoto(photo);
-                    sharedPhoto.setRecipient(recipient);
-                    sharedPhoto.setDelivered(true);
-                    sharedPhotos.add(sharedPhoto);
-                    logger.info("Sharing photo ID {} with user ID {}", photo.getId(), userId);
-                }
-            } catch (Exception e) {
-                logger.error("Error sharing photo with user {}: {}", userId, e.getMessage());
+        List<SharedPhoto> sharedPhotos = transactionTemplate.execute(status -> {
+            Set<Long> recipientIds = new LinkedHashSet<>(userRepository.findExistingIds(candidateIds));
+            recipientIds.removeAll(sharedPhotoRepository.findRecipientIdsByPhotoId(photo.getId()));
+
+            List<SharedPhoto> newShares = new ArrayList<>(recipientIds.size());
+            for (Long recipientId : recipientIds) {
+                SharedPhoto sharedPhoto = new SharedPhoto();
+                sharedPhoto.setPhoto(photo);
+                sharedPhoto.setRecipient(userRepository.getReferenceById(recipientId));
+                sharedPhoto.setDelivered(true);
+                newShares.add(sharedPhoto);
             }
-        }
+            return sharedPhotoRepository.saveAll(newShares);
+        });
 
         if (!sharedPhotos.isEmpty()) {
-            sharedPhotoRepository.saveAll(sharedPhotos);
             logger.info("Successfully shared photo ID {} with {} users",
                     photo.getId(), sharedPhotos.size());
+
+            List<Long> recipientIds = sharedPhotos.stream()
+                    .map(sharedPhoto -> sharedPhoto.getRecipient().getId())
+                    .collect(Collectors.toList());
+            feedVersionService.bump(recipientIds);
+            // A recipient following the "shared" event must not read the photo from a lagging replica
+            readYourWrites.recordWrite(recipientIds);
+            for (Long recipientId : recipientIds) {
+                photoAccessCache.invalidate(recipientId, photo.getId());
+                photoEventService.publishShared(recipientId, photo.getId());
+            }
         }
     }
 
-    public List<PhotoDto> getUserPhotos(String userEmail) {
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        return photoRepository.findByUserIdOrderByCreatedAtDesc(user.getId())
-                .stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    /**
+     * Write all of the user's photos to out as a JSON array. Rows are streamed
+     * from a single DTO projection query and serialized one at a time, so
+     * memory use does not grow with the size of the user's history.
+     */
+    public void writeUserPhotos(Long userId, OutputStream out) {
+        writeJsonArray(out, () -> photoRepository.streamDtosByUserId(userId));
     }
 
     /**
      * Get user photos with pagination
      */
-    public Page<PhotoDto> getUserPhotos(String userEmail, int page, int size) {
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public Page<PhotoDto> getUserPhotos(Long userId, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        return photoRepository.findByUserIdOrderByCreatedAtDesc(user.getId(), pageable)
-                .map(this::convertToDto);
+        return photoRepository.findDtosByUserId(userId, pageable)
+                .map(this::withSignedUrl);
     }
 
-    public List<PhotoDto> getSharedPhotos(String userEmail) {
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        return sharedPhotoRepository.findByRecipientOrderByCreatedAtDesc(user)
-                .stream()
-                .map(SharedPhoto::getPhoto)
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    /**
+     * Write all photos shared with the user to out as a JSON array, most recently shared first
+     */
+    public void writeSharedPhotos(Long userId, OutputStream out) {
+        writeJsonArray(out, () -> sharedPhotoRepository.streamPhotoDtosByRecipientId(userId));
     }
 
     /**
      * Get shared photos with pagination
      */
-    public Page<PhotoDto> getSharedPhotos(String userEmail, int page, int size) {
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public Page<PhotoDto> getSharedPhotos(Long userId, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        return sharedPhotoRepository.findByRecipientOrderByCreatedAtDesc(user, pageable)
-                .map(SharedPhoto::getPhoto)
-                .map(this::convertToDto);
+        return sharedPhotoRepository.findPhotoDtosByRecipientId(userId, pageable)
+                .map(this::withSignedUrl);
+    }
+
+    /**
+     * Get the user's photos one page at a time, newest first, using a keyset
+     * cursor. Unlike the offset version there is no count query, and every page
+     * is a seek on (user_id, created_at, id), so deep pages cost the same as the first.
+     */
+    public CursorPage<PhotoDto> getUserPhotoFeed(Long userId, String cursor, int size) {
+        FeedCursor after = FeedCursor.decode(cursor);
+        Limit limit = Limit.of(clampPageSize(size) + 1);
+        List<Photo> rows = after == null
+                ? photoRepository.findFeedFirstPage(userId, limit)
+                : photoRepository.findFeedAfter(userId, after.createdAtAsLocalDateTime(), after.id(), limit);
+
+        return toCursorPage(rows, clampPageSize(size), this::convertToDto,
+                photo -> FeedCursor.of(photo.getCreatedAt(), photo.getId()));
+    }
+
+    /**
+     * Get photos shared with the user one page at a time, most recently shared first
+     */
+    public CursorPage<PhotoDto> getSharedPhotoFeed(Long userId, String cursor, int size) {
+        FeedCursor after = FeedCursor.decode(cursor);
+        Limit limit = Limit.of(clampPageSize(size) + 1);
+        List<SharedPhoto> rows = after == null
+                ? sharedPhotoRepository.findFeedFirstPage(userId, limit)
+                : sharedPhotoRepository.findFeedAfter(userId, after.createdAtAsInstant(), after.id(), limit);
+
+        return toCursorPage(rows, clampPageSize(size), share -> convertToDto(share.getPhoto()),
+                share -> FeedCursor.of(share.getCreatedAt(), share.getId()));
+    }
+
+    private int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_FEED_PAGE_SIZE));
+    }
+
+    // Rows were fetched with one extra to tell whether another page exists
+    private <T> CursorPage<PhotoDto> toCursorPage(List<T> rows, int size, Function<T, PhotoDto> toDto,
+                                                  Function<T, FeedCursor> toCursor) {
+        boolean hasMore = rows.size() > size;
+        List<T> page = hasMore ? rows.subList(0, size) : rows;
+        String nextCursor = hasMore ? toCursor.apply(page.get(page.size() - 1)).encode() : null;
+        return new CursorPage<>(page.stream().map(toDto).collect(Collectors.toList()), nextCursor, hasMore);
     }
 
     public Photo getPhotoById(Long photoId) {
@@ -217,28 +439,16 @@ public class PhotoService {
 
     /**
      * Check if user can access a photo (owner or recipient of shared photo)
+     * Uses two indexed existence checks instead of loading the photo and the
+     * user's shared inbox, and caches the decision per (user, photo).
      */
-    public boolean canUserAccessPhoto(Long photoId, String userEmail) {
+    public boolean canUserAccessPhoto(Long photoId, Long userId) {
         try {
-            User user = userRepository.findByEmail(userEmail)
-                    .orElseThrow(() -> new RuntimeException("User not found"));
-
-            Photo photo = photoRepository.findById(photoId)
-                    .orElse(null);
-
-            if (photo == null) {
-                return false;
-            }
-
-            // User is the owner
-            if (photo.getUser().getId().equals(user.getId())) {
-                return true;
-            }
-
-            // Check if photo is shared with user
-            return sharedPhotoRepository.findByRecipientOrderByCreatedAtDesc(user)
-                    .stream()
-                    .anyMatch(sp -> sp.getPhoto().getId().equals(photoId));
+            // Loaded in a read-write transaction so it runs on the primary: a decision
+            // read from a lagging replica would stay cached for the whole TTL
+            return photoAccessCache.canAccess(userId, photoId, () -> transactionTemplate.execute(status ->
+                    photoRepository.existsByIdAndUserId(photoId, userId)
+                            || sharedPhotoRepository.existsByRecipientIdAndPhotoId(userId, photoId)));
 
         } catch (Exception e) {
             logger.error("Error checking photo access: {}", e.getMessage());
@@ -247,18 +457,58 @@ public class PhotoService {
     }
 
     private PhotoDto convertToDto(Photo photo) {
-        return new PhotoDto(
+        PhotoDto dto = new PhotoDto(
                 photo.getId(),
                 photo.getFileName(),
-                photo.getFilePath(),
+                photo.getStorageBackend(),
+                photo.getStorageKey(),
                 photo.getFileSize(),
                 photo.getMimeType(),
                 photo.getUser().getId(),
                 photo.getUser().getFullName(),
-                photo.getProcessingStatus().toString(),
+                photo.getProcessingStatus(),
                 photo.getFacesDetected(),
                 photo.getCreatedAt(),
-                photo.getUpdatedAt()
+                photo.getUpdatedAt(),
+                photo.getThumbnailKey(),
+                photo.getPreviewKey()
         );
+        return withSignedUrl(dto);
+    }
+
+    private PhotoDto withSignedUrl(PhotoDto dto) {
+        dto.setUrl(photoUrlSigner.sign(dto.getId(), Photo.Variant.ORIGINAL.key(),
+                new BlobRef(dto.getStorageBackend(), dto.getStorageKey()).toString()));
+        dto.setPreviewUrl(signVariant(dto, Photo.Variant.PREVIEW, dto.getPreviewKey()));
+        dto.setThumbnailUrl(signVariant(dto, Photo.Variant.THUMBNAIL, dto.getThumbnailKey()));
+        return dto;
+    }
+
+    // Variants without a derivative share the original's URL, so clients fetch it once
+    private String signVariant(PhotoDto dto, Photo.Variant variant, String key) {
+        return key != null
+                ? photoUrlSigner.sign(dto.getId(), variant.key(), new BlobRef(dto.getStorageBackend(), key).toString())
+                : dto.getUrl();
+    }
+
+    // The stream holds a JDBC cursor, so it is read inside a read-only transaction and closed with it
+    private void writeJsonArray(OutputStream out, Supplier<Stream<PhotoDto>> query) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+
+        readOnly.executeWithoutResult(status -> {
+            try (Stream<PhotoDto> photos = query.get();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                Iterator<PhotoDto> iterator = photos.iterator();
+                while (iterator.hasNext()) {
+                    generator.writeObject(withSignedUrl(iterator.next()));
+                }
+                generator.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.faceshare.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Signs short-lived photo URLs so image views can be served without the JWT
+ * filter, the access check or a photo lookup.
+ *
+ * A signed URL carries the photo ID, the variant, the storage key and an
+ * expiry, authenticated with HMAC-SHA256. Expiries are rounded up to a fixed
+ * bucket so the same photo keeps the same URL for a while, which lets browser
+ * and CDN caches reuse it.
+ *
+ * The key is photo-url.secret if set, otherwise derived from jwt.secret with
+ * HKDF-SHA256 under its own label, so no HMAC key is shared with the JWTs.
+ */
+@Service
+public class PhotoUrlSigner {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] KEY_LABEL = "faceshare photo-url signing v1".getBytes(StandardCharsets.UTF_8);
+    public static final String SIGNED_PATH = "/api/photos/signed";
+
+    private final SecretKeySpec signingKey;
+    private final long ttlSeconds;
+    private final long bucketSeconds;
+
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    public PhotoUrlSigner(@Value("${photo-url.secret:}") String secret,
+                          @Value("${jwt.secret}") String jwtSecret,
+                          @Value("${photo-url.ttl:3600}") long ttlSeconds) {
+        this.signingKey = new SecretKeySpec(secret.isBlank()
+                ? deriveKey(jwtSecret.getBytes(StandardCharsets.UTF_8))
+                : secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.bucketSeconds = Math.max(1, ttlSeconds / 4);
+    }
+
+    /**
+     * Build a signed, relative URL for one variant of a photo
+     */
+    public String sign(Long photoId, String variant, String storageKey) {
+        long expiresAt = currentExpiry();
+
+        return UriComponentsBuilder.fromPath(SIGNED_PATH)
+                .pathSegment(String.valueOf(photoId), variant)
+                .queryParam("key", storageKey)
+                .queryParam("exp", expiresAt)
+                .queryParam("sig", signature(photoId, variant, storageKey, expiresAt))
+                .encode()
+                .build()
+                .toUriString();
+    }
+
+    /**
+     * Expiry that URLs signed right now get. It only changes once per bucket, so
+     * responses embedding signed URLs can fold it into their ETag.
+     */
+    public long currentExpiry() {
+        long now = System.currentTimeMillis() / 1000;
+        return ((now + ttlSeconds) / bucketSeconds + 1) * bucketSeconds;
+    }
+
+    /**
+     * Check a signed URL's parameters; the comparison runs in constant time
+     */
+    public boolean verify(Long photoId, String variant, String storageKey, long expiresAt, String signature) {
+        if (expiresAt < System.currentTimeMillis() / 1000 || signature == null) {
+            return false;
+        }
+
+        byte[] expected = signature(photoId, variant, storageKey, expiresAt).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Seconds until a signed URL expires, for Cache-Control max-age
+     */
+    public long secondsUntil(long expiresAt) {
+        return Math.max(0, expiresAt - System.currentTimeMillis() / 1000);
+    }
+
+    private String signature(Long photoId, String variant, String storageKey, long expiresAt) {
+        String payload = photoId + "\n" + variant + "\n" + storageKey + "\n" + expiresAt;
+        byte[] hmac = macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hmac);
+    }
+
+    // HKDF (RFC 5869) with no salt, one 32-byte block of output
+    private static byte[] deriveKey(byte[] inputKey) {
+        try {
+            Mac extract = Mac.getInstance(HMAC_ALGORITHM);
+            extract.init(new SecretKeySpec(new byte[extract.getMacLength()], HMAC_ALGORITHM));
+            byte[] pseudoRandomKey = extract.doFinal(inputKey);
+
+            Mac expand = Mac.getInstance(HMAC_ALGORITHM);
+            expand.init(new SecretKeySpec(pseudoRandomKey, HMAC_ALGORITHM));
+            expand.update(KEY_LABEL);
+            return expand.doFinal(new byte[] {1});
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(signingKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.faceshare.service;
+
+import com.faceshare.security.AuthenticatedUser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Remembers which users saw their data change recently, so their reads can
+ * stay on the primary until replicas have had time to catch up. Keyed by user
+ * ID. Used by the read-replica routing.
+ *
+ * - every read-write transaction that commits counts as a write by the
+ *   authenticated user of the request (Spring Boot registers this listener
+ *   with the transaction manager), so uploads, face registration and any
+ *   later write path are covered without each one recording itself
+ * - writes that change what other users see, or that happen before there is
+ *   an authenticated user (background processing and sharing, registration,
+ *   refresh tokens), record the users concerned with recordWrite
+ */
+@Component
+public class ReadYourWritesTracker implements TransactionExecutionListener {
+
+    private final Cache<Long, Boolean> recentWriters;
+
+    public ReadYourWritesTracker(@Value("${read-replicas.sticky-window:10000}") long stickyWindowMs,
+                                 @Value("${read-replicas.sticky-max-users:100000}") long maxUsers) {
+        this.recentWriters = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(Duration.ofMillis(stickyWindowMs))
+                .build();
+    }
+
+    public void recordWrite(Long userId) {
+        if (userId != null) {
+            recentWriters.put(userId, Boolean.TRUE);
+        }
+    }
+
+    public void recordWrite(Collection<Long> userIds) {
+        userIds.forEach(this::recordWrite);
+    }
+
+    public boolean wroteRecently(Long userId) {
+        return userId != null && recentWriters.getIfPresent(userId) != null;
+    }
+
+    /** Whether the request's authenticated user wrote recently */
+    public boolean currentUserWroteRecently() {
+        return wroteRecently(currentUserId());
+    }
+
+    @Override
+    public void afterCommit(TransactionExecution transaction, @Nullable Throwable commitFailure) {
+        if (commitFailure == null && !transaction.isReadOnly()) {
+            recordWrite(currentUserId());
+        }
+    }
+
+    private static Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user
+                ? user.id()
+                : null;
+    }
+}
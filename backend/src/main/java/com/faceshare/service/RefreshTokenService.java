@@ -0,0 +1,188 @@
+package com.faceshare.service;
+
+import com.faceshare.model.RefreshToken;
+import com.faceshare.model.User;
+import com.faceshare.repository.RefreshTokenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Long-lived, single-use refresh tokens, so access tokens can be short-lived
+ * without sending clients back through a BCrypt login when one expires.
+ *
+ * - a token is 32 random bytes (base64url); only its SHA-256 is stored, and a
+ *   refresh is one lookup on the unique hash index with the user joined in
+ * - each refresh marks the presented token used and issues its successor in
+ *   the same family. Presenting a used or revoked token again means it was
+ *   copied, so the whole family is revoked and both holders must log in again
+ * - except within jwt.refresh.reuse-grace of its first use: a client whose
+ *   refresh response was lost, or that sent two refreshes at once, presents
+ *   the same token again, and gets another successor instead of being logged
+ *   out. Hashes of successors are all that is stored, so the first one cannot
+ *   be handed out again
+ * - used tokens stay until they expire so reuse is still detected; expired
+ *   rows are deleted in batches of jwt.refresh.cleanup-batch-size
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final ReadYourWritesTracker readYourWrites;
+    private final Duration lifetime;
+    private final Duration reuseGrace;
+    private final int cleanupBatchSize;
+
+    private final Counter rotated;
+    private final Counter retried;
+    private final Counter reused;
+    private final Counter invalid;
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               ReadYourWritesTracker readYourWrites,
+                               MeterRegistry meterRegistry,
+                               @Value("${jwt.refresh.expiration:2592000000}") long expirationMs,
+                               @Value("${jwt.refresh.reuse-grace:30000}") long reuseGraceMs,
+                               @Value("${jwt.refresh.cleanup-batch-size:1000}") int cleanupBatchSize) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.readYourWrites = readYourWrites;
+        this.lifetime = Duration.ofMillis(expirationMs);
+        this.reuseGrace = Duration.ofMillis(reuseGraceMs);
+        this.cleanupBatchSize = Math.max(1, cleanupBatchSize);
+
+        // retried: a spent token presented again within the grace period
+        // reused: a used or revoked token presented again, which revokes its family
+        this.rotated = refreshCounter(meterRegistry, "rotated");
+        this.retried = refreshCounter(meterRegistry, "retried");
+        this.reused = refreshCounter(meterRegistry, "reused");
+        this.invalid = refreshCounter(meterRegistry, "invalid");
+    }
+
+    /** A refresh token's successor and the user it belongs to */
+    public record Rotation(User user, String refreshToken) {}
+
+    /**
+     * Start a new family for a login or registration
+     *
+     * @return the token to hand to the client
+     */
+    @Transactional
+    public String issue(User user) {
+        return issue(user, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Exchange a refresh token for its successor
+     *
+     * @return empty if the token is unknown, expired, revoked, or was used
+     *         before the grace period (in which case its family is revoked)
+     */
+    @Transactional
+    public Optional<Rotation> rotate(String token) {
+        Optional<RefreshToken> found = refreshTokenRepository.findByTokenHash(sha256(token));
+        Instant now = Instant.now();
+        if (found.isEmpty() || !found.get().getExpiresAt().isAfter(now)) {
+            invalid.increment();
+            return Optional.empty();
+        }
+
+        RefreshToken current = found.get();
+        if (current.getUsedAt() == null && current.getRevokedAt() == null
+                && refreshTokenRepository.markUsed(current.getId(), now) == 1) {
+            rotated.increment();
+            return Optional.of(new Rotation(current.getUser(), issue(current.getUser(), current.getFamilyId())));
+        }
+
+        // Also covers losing markUsed to a concurrent refresh with the same token
+        if (refreshTokenRepository.isSpentSince(current.getId(), now.minus(reuseGrace))) {
+            retried.increment();
+            logger.debug("Refresh token of user {} presented again within the grace period",
+                    current.getUser().getId());
+            return Optional.of(new Rotation(current.getUser(), issue(current.getUser(), current.getFamilyId())));
+        }
+
+        int revoked = refreshTokenRepository.revokeFamily(current.getFamilyId(), now);
+        reused.increment();
+        logger.warn("Refresh token reused for user {}; revoked {} tokens of its family",
+                current.getUser().getId(), revoked);
+        return Optional.empty();
+    }
+
+    /**
+     * Revoke the token's whole family (logout). Unknown tokens are ignored.
+     */
+    @Transactional
+    public void revoke(String token) {
+        refreshTokenRepository.findByTokenHash(sha256(token))
+                .ifPresent(found -> refreshTokenRepository.revokeFamily(found.getFamilyId(), Instant.now()));
+    }
+
+    /**
+     * Delete expired tokens a batch at a time, each batch its own transaction
+     *
+     * @return the number deleted
+     */
+    @Scheduled(initialDelayString = "${jwt.refresh.cleanup-initial-delay:60000}",
+               fixedDelayString = "${jwt.refresh.cleanup-interval:3600000}")
+    public int deleteExpired() {
+        Instant now = Instant.now();
+        int total = 0;
+        int deleted;
+        do {
+            deleted = refreshTokenRepository.deleteExpired(now, cleanupBatchSize);
+            total += deleted;
+        } while (deleted == cleanupBatchSize);
+
+        if (total > 0) {
+            logger.info("Deleted {} expired refresh tokens", total);
+        }
+        return total;
+    }
+
+    private String issue(User user, String familyId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        refreshTokenRepository.save(new RefreshToken(user, sha256(token), familyId, Instant.now().plus(lifetime)));
+        // Login and refresh are not authenticated requests, so the tracker does not see this write
+        readYourWrites.recordWrite(user.getId());
+        return token;
+    }
+
+    private static Counter refreshCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("auth.refresh")
+                .tag("result", result)
+                .description("Refresh token exchanges by result")
+                .register(meterRegistry);
+    }
+
+    private static String sha256(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
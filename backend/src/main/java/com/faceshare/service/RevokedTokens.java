@@ -0,0 +1,60 @@
+package com.faceshare.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Denylist of access tokens revoked before they expire (on logout), checked
+ * on every authenticated request in place of the user lookup the filter used
+ * to do. Keyed by the token's jti, and each entry only lives until the token
+ * it revokes expires, so the list stays as small as the number of tokens
+ * logged out within one token lifetime.
+ *
+ * The list is per node: behind a load balancer a logged-out token keeps
+ * working on the other nodes until it expires.
+ */
+@Component
+public class RevokedTokens {
+
+    private final Cache<String, Instant> revoked;
+
+    public RevokedTokens(@Value("${jwt.revoked-max-size:100000}") long maxSize) {
+        this.revoked = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Instant>() {
+                    @Override
+                    public long expireAfterCreate(String id, Instant expiresAt, long currentTime) {
+                        return Math.max(0, Duration.between(Instant.now(), expiresAt).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String id, Instant expiresAt, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String id, Instant expiresAt, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    public void revoke(VerifiedToken token) {
+        if (token.id() != null) {
+            revoked.put(token.id(), token.expiresAt());
+        }
+    }
+
+    public boolean isRevoked(VerifiedToken token) {
+        return token.id() != null && revoked.getIfPresent(token.id()) != null;
+    }
+}
@@ -0,0 +1,12 @@
+package com.faceshare.service;
+
+/**
+ * Where FileStorageService put an upload, and the SHA-256 of the uploaded
+ * bytes as lowercase hex
+ *
+ * @param backend name of the BlobStore holding it
+ * @param key its key in that store
+ * @param contentHash hash of the bytes as received (Cloudinary may re-encode them)
+ */
+public record StoredFile(String backend, String key, String contentHash) {
+}
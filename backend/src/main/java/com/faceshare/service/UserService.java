@@ -6,25 +6,30 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @Transactional
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ReadYourWritesTracker readYourWrites;
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                       ReadYourWritesTracker readYourWrites) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.readYourWrites = readYourWrites;
     }
 
     @Override
@@ -33,6 +38,11 @@ public class UserService implements UserDetailsService {
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + email));
     }
 
+    /**
+     * @throws com.faceshare.exception.CustomExceptions.ServiceUnavailable if the BCrypt pool is saturated
+     */
+    // No transaction around the hash, so no connection is held while it waits for the BCrypt pool
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public User createUser(String email, String password, String fullName) {
         logger.info("Creating new user with email: {}", email);
 
@@ -44,10 +54,24 @@ public class UserService implements UserDetailsService {
 
         User savedUser = userRepository.save(user);
         logger.info("User created successfully with ID: {}", savedUser.getId());
+        // Registration is not authenticated, so the new user's first reads are pinned here
+        readYourWrites.recordWrite(savedUser.getId());
 
         return savedUser;
     }
 
+    /**
+     * Store a password rehashed at the current BCrypt cost; called by
+     * DaoAuthenticationProvider after a successful login
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = findByEmail(userDetails.getUsername());
+        user.setPassword(newPassword);
+        logger.info("Rehashed password of user ID {} at the current BCrypt cost", user.getId());
+        return userRepository.save(user);
+    }
+
     public User findByEmail(String email) {
         return userRepository.findByEmail(email)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + email));
@@ -0,0 +1,22 @@
+package com.faceshare.service;
+
+import java.time.Instant;
+
+/**
+ * The claims of an access token whose signature and expiry JwtService has
+ * checked
+ *
+ * @param id the token's jti, used to revoke it
+ * @param subject the user's email
+ * @param userId the uid claim; null for tokens issued before it was added
+ * @param fullName the name claim; null for tokens issued before it was added
+ * @param issuedAt when the token was issued
+ * @param expiresAt when it stops being accepted
+ */
+public record VerifiedToken(String id, String subject, Long userId, String fullName,
+                            Instant issuedAt, Instant expiresAt) {
+
+    public boolean isExpired(Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+}
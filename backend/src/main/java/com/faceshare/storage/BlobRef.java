@@ -0,0 +1,26 @@
+package com.faceshare.storage;
+
+/**
+ * A stored object: the name of its BlobStore and its key there. The string
+ * form "backend:key" is what signed photo URLs carry.
+ */
+public record BlobRef(String backend, String key) {
+
+    private static final char SEPARATOR = ':';
+
+    /**
+     * @return the reference, or null if value is not of the form "backend:key"
+     */
+    public static BlobRef parse(String value) {
+        int separator = value == null ? -1 : value.indexOf(SEPARATOR);
+        if (separator <= 0 || separator == value.length() - 1) {
+            return null;
+        }
+        return new BlobRef(value.substring(0, separator), value.substring(separator + 1));
+    }
+
+    @Override
+    public String toString() {
+        return backend + SEPARATOR + key;
+    }
+}
@@ -0,0 +1,99 @@
+package com.faceshare.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A place photo files are kept. Photos and blobs record the store's name and
+ * an object key instead of a path or URL, so a photo can be served, processed
+ * and deleted without knowing which backend holds it.
+ *
+ * Keys are relative, '/'-separated names chosen by FileStorageService (e.g.
+ * "3f/a2/3fa2....jpg") and are the same in every store, so moving a tier is a
+ * copy plus an update of the backend column. Stored objects are never rewritten.
+ */
+public interface BlobStore {
+
+    /**
+     * Name recorded with each key, e.g. "local"
+     */
+    String name();
+
+    /**
+     * Store a file under key. The store may move source instead of copying it;
+     * callers delete it afterwards if it still exists.
+     */
+    void put(String key, Path source) throws IOException;
+
+    /**
+     * Read part of an object
+     *
+     * @param length number of bytes, or -1 for the rest of the object
+     * @throws java.nio.file.NoSuchFileException if there is no such object
+     */
+    InputStream open(String key, long offset, long length) throws IOException;
+
+    default InputStream open(String key) throws IOException {
+        return open(key, 0, -1);
+    }
+
+    /**
+     * Size of an object in bytes
+     *
+     * @throws java.nio.file.NoSuchFileException if there is no such object
+     */
+    long size(String key) throws IOException;
+
+    /**
+     * @return true if an object was deleted
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Whether list is supported
+     */
+    default boolean supportsListing() {
+        return false;
+    }
+
+    /**
+     * A page of the store's objects in key order, for walking the whole store
+     * a little at a time (see OrphanBlobCollector). Objects written while a
+     * walk is under way may or may not be seen.
+     *
+     * @param cursor null for the first page, then the previous page's nextCursor
+     * @param limit maximum number of objects in the page
+     * @throws UnsupportedOperationException unless supportsListing
+     */
+    default ObjectListing list(String cursor, int limit) throws IOException {
+        throw new UnsupportedOperationException("The " + name() + " store cannot be listed");
+    }
+
+    /**
+     * The object as a file on this machine, for stores that keep one; lets it
+     * be decoded in place and sent with sendfile
+     */
+    default Optional<Path> localFile(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * URL clients can fetch the object from directly, scaled to fit in (or,
+     * with fill, cover) width x height if the store scalesOnDelivery; 0 x 0 is
+     * the original. Objects of stores that return one are redirected to
+     * instead of proxied.
+     */
+    default Optional<String> publicUrl(String key, int width, int height, boolean fill) {
+        return Optional.empty();
+    }
+
+    /**
+     * Whether publicUrl scales images itself, in which case photos here get
+     * no stored derivatives
+     */
+    default boolean scalesOnDelivery() {
+        return false;
+    }
+}
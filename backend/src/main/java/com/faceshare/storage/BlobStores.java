@@ -0,0 +1,53 @@
+package com.faceshare.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The configured BlobStores by name. New uploads go to the primary one
+ * (storage.backend, or Cloudinary when it is configured and local disk
+ * otherwise); existing objects are read from whichever store their row names.
+ */
+@Component
+public class BlobStores {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobStores.class);
+
+    private final Map<String, BlobStore> stores;
+    private final BlobStore primary;
+
+    public BlobStores(List<BlobStore> stores, @Value("${storage.backend:}") String backend) {
+        this.stores = stores.stream().collect(Collectors.toMap(BlobStore::name, Function.identity()));
+        String primaryName = StringUtils.hasText(backend) ? backend
+                : this.stores.containsKey(CloudinaryBlobStore.NAME) ? CloudinaryBlobStore.NAME : LocalBlobStore.NAME;
+        this.primary = this.stores.get(primaryName);
+        if (primary == null) {
+            throw new IllegalStateException("storage.backend " + primaryName + " is not configured; available: "
+                    + this.stores.keySet());
+        }
+        logger.info("Storing new uploads in the {} store (available: {})", primaryName, this.stores.keySet());
+    }
+
+    public BlobStore primary() {
+        return primary;
+    }
+
+    /**
+     * @throws IllegalStateException if no store of that name is configured
+     */
+    public BlobStore get(String name) {
+        BlobStore store = stores.get(name);
+        if (store == null) {
+            throw new IllegalStateException("No " + name + " store is configured");
+        }
+        return store;
+    }
+}
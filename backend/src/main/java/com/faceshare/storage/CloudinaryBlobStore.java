@@ -0,0 +1,107 @@
+package com.faceshare.storage;
+
+import com.faceshare.service.CloudinaryService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Objects as Cloudinary images, with public ID "faceshare/photos/" plus the
+ * key without its extension. Cloudinary scales images on delivery, so photos
+ * here are served by redirect and need no stored derivatives.
+ *
+ * Not listable: public IDs drop the key's extension, so a listed image could
+ * not be matched exactly to the rows that use it.
+ * Only created when CLOUDINARY_URL is set.
+ */
+@Component
+@ConditionalOnExpression("'${cloudinary.url:}' != ''")
+public class CloudinaryBlobStore implements BlobStore {
+
+    public static final String NAME = "cloudinary";
+
+    private static final String FOLDER = "faceshare/photos";
+
+    private final CloudinaryService cloudinaryService;
+
+    public CloudinaryBlobStore(CloudinaryService cloudinaryService) {
+        this.cloudinaryService = cloudinaryService;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        cloudinaryService.uploadImageAs(source.toFile(), publicId(key));
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        HttpURLConnection connection = connect(key, "GET");
+        if (offset > 0 || length >= 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-" + (length >= 0 ? offset + length - 1 : ""));
+        }
+        checkFound(connection, key);
+        return connection.getInputStream();
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        HttpURLConnection connection = connect(key, "HEAD");
+        try {
+            checkFound(connection, key);
+            return connection.getContentLengthLong();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        cloudinaryService.deleteImage(publicId(key));
+        return true;
+    }
+
+    @Override
+    public Optional<String> publicUrl(String key, int width, int height, boolean fill) {
+        String url = cloudinaryService.imageUrl(publicId(key));
+        if (width == 0 && height == 0) {
+            return Optional.of(url);
+        }
+        return Optional.ofNullable(cloudinaryService.resizedImageUrl(url, width, height, fill));
+    }
+
+    @Override
+    public boolean scalesOnDelivery() {
+        return true;
+    }
+
+    private static String publicId(String key) {
+        return FOLDER + "/" + StringUtils.stripFilenameExtension(key);
+    }
+
+    private HttpURLConnection connect(String key, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(cloudinaryService.imageUrl(publicId(key)))
+                .toURL().openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static void checkFound(HttpURLConnection connection, String key) throws IOException {
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+            connection.disconnect();
+            throw new NoSuchFileException(key);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.faceshare.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Objects as files under file.upload-dir, at their key. Files are moved into
+ * place with an atomic rename; with file.fsync the directory is synced too, so
+ * a stored file survives a crash once put returns.
+ */
+@Component
+public class LocalBlobStore implements BlobStore {
+
+    public static final String NAME = "local";
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalBlobStore.class);
+
+    private final Path root;
+    private final boolean fsync;
+
+    public LocalBlobStore(@Value("${file.upload-dir:./uploads}") String uploadDir,
+                          @Value("${file.fsync:true}") boolean fsync) {
+        this.root = Paths.get(uploadDir).normalize();
+        this.fsync = fsync;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    /**
+     * Two levels of directories named after the first four characters of the
+     * file name, e.g. "3f/a2/3fa2....jpg"; names are hashes or UUIDs, so the
+     * files spread evenly and no directory grows past a few thousand entries
+     */
+    public static String fanOutKey(String fileName) {
+        if (fileName.length() < 5) {
+            return fileName;
+        }
+        return fileName.substring(0, 2) + "/" + fileName.substring(2, 4) + "/" + fileName;
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        moveIntoPlace(source, root.resolve(key));
+    }
+
+    /**
+     * Atomic rename into the target's directory (created on demand)
+     */
+    public void moveIntoPlace(Path source, Path target) throws IOException {
+        Path directory = target.getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (fsync && directory != null) {
+            fsyncDirectory(directory);
+        }
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        InputStream in = Channels.newInputStream(channel);
+        return length < 0 ? in : new BoundedInputStream(in, length);
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(resolve(key));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public boolean supportsListing() {
+        return true;
+    }
+
+    /**
+     * Walks the directory tree depth-first in name order; the cursor is the
+     * last key returned. Files in the root (e.g. spooled uploads) are included.
+     */
+    @Override
+    public ObjectListing list(String cursor, int limit) throws IOException {
+        List<StoredObject> objects = new ArrayList<>(limit);
+        if (Files.isDirectory(root)) {
+            collect(root, "", cursor != null ? cursor.split("/") : new String[0], 0, limit, objects);
+        }
+        String nextCursor = objects.size() == limit ? objects.get(limit - 1).key() : null;
+        return new ObjectListing(objects, nextCursor);
+    }
+
+    // Only entries sorting after the cursor's segment at this depth are read; an
+    // entry equal to it is the directory the cursor is in, or the cursor itself
+    private void collect(Path directory, String prefix, String[] after, int depth, int limit,
+                         List<StoredObject> objects) throws IOException {
+        List<Path> entries;
+        try (Stream<Path> list = Files.list(directory)) {
+            entries = list.sorted(Comparator.comparing(entry -> entry.getFileName().toString())).toList();
+        }
+
+        for (Path entry : entries) {
+            if (objects.size() == limit) {
+                return;
+            }
+            String name = entry.getFileName().toString();
+            int order = depth < after.length ? name.compareTo(after[depth]) : 1;
+            if (order < 0) {
+                continue;
+            }
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue; // Deleted since the directory was listed
+            }
+            if (attributes.isDirectory()) {
+                collect(entry, prefix + name + "/", order == 0 ? after : new String[0], depth + 1, limit, objects);
+            } else if (order > 0 && attributes.isRegularFile()) {
+                objects.add(new StoredObject(prefix + name, attributes.size(),
+                        attributes.lastModifiedTime().toInstant()));
+            }
+        }
+    }
+
+    @Override
+    public Optional<Path> localFile(String key) {
+        return Optional.of(resolve(key));
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * File of a key. Keys come from the database or signed URLs, never straight
+     * from a client. While the layout migration runs (see UploadLayoutMigration)
+     * a key may briefly name the other layout, so that is tried too.
+     */
+    public Path resolve(String key) {
+        Path file = root.resolve(key).normalize();
+        if (Files.exists(file)) {
+            return file;
+        }
+        String fileName = file.getFileName().toString();
+        Path otherLayout = key.equals(fileName) ? root.resolve(fanOutKey(fileName)) : root.resolve(fileName);
+        return Files.exists(otherLayout) ? otherLayout : file;
+    }
+
+    private static void fsyncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can open a directory for syncing (e.g. Windows)
+            logger.debug("Could not sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.faceshare.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * A stored object as a file on this machine, for code that needs a path
+ * (image decoding, the AI service upload). Objects of remote stores are
+ * downloaded to a temporary file, which close() deletes.
+ */
+public final class LocalCopy implements AutoCloseable {
+
+    private static final String LINK_SUFFIX = ".tmp";
+
+    private final Path path;
+    private final boolean temporary;
+
+    public LocalCopy(Path path, boolean temporary) {
+        this.path = path;
+        this.temporary = temporary;
+    }
+
+    /**
+     * A reader's own hard link to a file of a disk cache, so evicting the
+     * entry does not pull the file out from under the reader. The link sits
+     * next to the file (same filesystem) and ends in .tmp, which the caches
+     * clear on startup; where links are not supported the file is copied.
+     *
+     * @return the link, or null if the file is already gone
+     */
+    public static LocalCopy link(Path cached) throws IOException {
+        Path link = cached.resolveSibling(UUID.randomUUID() + LINK_SUFFIX);
+        try {
+            try {
+                Files.createLink(link, cached);
+            } catch (NoSuchFileException e) {
+                throw e;
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(cached, link, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return new LocalCopy(link, true);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /** Whether close() deletes the file */
+    public boolean temporary() {
+        return temporary;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (temporary) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.faceshare.storage;
+
+import java.util.List;
+
+/**
+ * One page of BlobStore.list
+ *
+ * @param objects objects in key order
+ * @param nextCursor pass to list for the next page; null after the last page
+ */
+public record ObjectListing(List<StoredObject> objects, String nextCursor) {
+}
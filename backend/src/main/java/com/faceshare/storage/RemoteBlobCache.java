@@ -0,0 +1,278 @@
+package com.faceshare.storage;
+
+import com.faceshare.util.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Local disk tier in front of remote stores (Cloudinary, S3), so decoding,
+ * face detection and reprocessing read a photo from disk instead of
+ * downloading it again each time.
+ *
+ * - files live at {storage.cache.dir}/{backend}/{key}; the index is a Caffeine
+ *   cache weighed by file size, whose W-TinyLFU policy only keeps a newly
+ *   fetched object over an existing one if it is asked for more often, so a
+ *   one-off scan does not flush the photos in regular use
+ * - concurrent misses for the same object share one download
+ * - besides storage.cache.max-size, the cache watches the disk it is on: once
+ *   usage passes disk-high-watermark percent, the coldest entries are evicted
+ *   until it is back under disk-low-watermark (or the cache is empty)
+ * - callers get a hard link to the cached file, so an eviction while it is
+ *   being read does not pull the file out from under them
+ *
+ * Stored objects are never rewritten, so entries are only invalidated when an
+ * object is deleted. With storage.cache.enabled=false every read downloads to
+ * a temporary file.
+ */
+@Component
+public class RemoteBlobCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteBlobCache.class);
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final boolean enabled;
+    private final Path cacheDir;
+    private final long maxSize;
+    private final int diskHighWatermark;
+    private final int diskLowWatermark;
+    private final Cache<String, Path> files;
+    private final SingleFlight<String, Path> inFlight = new SingleFlight<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public RemoteBlobCache(MeterRegistry meterRegistry,
+                           @Value("${storage.cache.enabled:true}") boolean enabled,
+                           @Value("${storage.cache.dir:./cache/blobs}") String cacheDir,
+                           @Value("${storage.cache.max-size:2147483648}") long maxSize,
+                           @Value("${storage.cache.disk-high-watermark:90}") int diskHighWatermark,
+                           @Value("${storage.cache.disk-low-watermark:80}") int diskLowWatermark) {
+        this.enabled = enabled;
+        this.cacheDir = Paths.get(cacheDir).toAbsolutePath().normalize();
+        this.maxSize = maxSize;
+        this.diskHighWatermark = diskHighWatermark;
+        this.diskLowWatermark = Math.min(diskLowWatermark, diskHighWatermark);
+
+        this.hits = Counter.builder("storage.cache.requests").tag("result", "hit")
+                .description("Reads of remote objects served from the local disk tier")
+                .register(meterRegistry);
+        this.misses = Counter.builder("storage.cache.requests").tag("result", "miss")
+                .description("Reads of remote objects that had to download them")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("storage.cache.evictions")
+                .description("Cached remote objects deleted to stay within the size or disk watermarks")
+                .register(meterRegistry);
+
+        this.files = Caffeine.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((String key, Path file) -> (int) Math.min(Integer.MAX_VALUE, sizeOf(file)))
+                .evictionListener((String key, Path file, RemovalCause cause) -> {
+                    deleteQuietly(file);
+                    evictions.increment();
+                })
+                .build();
+
+        Gauge.builder("storage.cache.size", files, cache -> eviction(cache).weightedSize().orElse(0))
+                .description("Bytes of remote objects in the local disk tier")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Re-index objects cached by the previous run; half-written files and
+     * links left by readers are removed
+     */
+    @PostConstruct
+    void loadExistingFiles() {
+        if (!enabled || !Files.isDirectory(cacheDir)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(cacheDir)) {
+            walk.filter(Files::isRegularFile).forEach(file -> {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    deleteQuietly(file);
+                } else {
+                    files.put(cacheDir.relativize(file).toString().replace('\\', '/'), file);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not index cached objects in {}: {}", cacheDir, e.getMessage());
+        }
+        logger.info("Indexed {} cached remote objects in {}", files.estimatedSize(), cacheDir);
+    }
+
+    /**
+     * A remote object as a local file, downloaded into the cache on a miss.
+     * Close the copy when done.
+     */
+    public LocalCopy localCopy(BlobStore store, String key) throws IOException {
+        if (!enabled) {
+            Path temp = Files.createTempFile("download-", TEMP_SUFFIX);
+            return new LocalCopy(download(store, key, temp), true);
+        }
+
+        String cacheKey = cacheKey(store.name(), key);
+        Path cached = files.getIfPresent(cacheKey);
+        if (cached != null && Files.exists(cached)) {
+            hits.increment();
+            return linkOrDownload(cached, store, key);
+        }
+        misses.increment();
+
+        try {
+            Path fetched = inFlight.execute(cacheKey, () -> {
+                Path done = files.getIfPresent(cacheKey);
+                if (done != null && Files.exists(done)) {
+                    return done;
+                }
+                return fetch(store, key, cacheKey);
+            });
+            return linkOrDownload(fetched, store, key);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Fetching " + key + " from the " + store.name() + " store failed", e);
+        }
+    }
+
+    /**
+     * A link to the cached file of an object, if it is cached; never
+     * downloads. Counts as a use of the entry. Close the copy when done.
+     */
+    public Optional<LocalCopy> cachedCopy(String backend, String key) throws IOException {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Path cached = files.getIfPresent(cacheKey(backend, key));
+        return cached != null ? Optional.ofNullable(LocalCopy.link(cached)) : Optional.empty();
+    }
+
+    /**
+     * Drop an object's cached file, e.g. after the object was deleted
+     */
+    public void invalidate(String backend, String key) {
+        if (enabled) {
+            Path cached = files.asMap().remove(cacheKey(backend, key));
+            if (cached != null) {
+                deleteQuietly(cached);
+            }
+        }
+    }
+
+    private Path fetch(BlobStore store, String key, String cacheKey) throws IOException {
+        // Room is made first, so the new entry is not what the watermarks evict
+        enforceDiskWatermarks();
+        Path target = cacheDir.resolve(cacheKey).normalize();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            download(store, key, temp);
+            // Readers never see a partly written file
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteQuietly(temp);
+        }
+        files.put(cacheKey, target);
+        return target;
+    }
+
+    private static Path download(BlobStore store, String key, Path target) throws IOException {
+        try (InputStream in = store.open(key)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            return target;
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(target);
+            throw e;
+        }
+    }
+
+    /**
+     * Evict the coldest entries while the disk is fuller than the high
+     * watermark, by briefly lowering the cache's maximum to what the low
+     * watermark leaves room for
+     */
+    private synchronized void enforceDiskWatermarks() {
+        long total;
+        long usable;
+        try {
+            FileStore disk = Files.getFileStore(cacheDir);
+            total = disk.getTotalSpace();
+            usable = disk.getUsableSpace();
+        } catch (IOException e) {
+            logger.debug("Could not read disk usage of {}: {}", cacheDir, e.getMessage());
+            return;
+        }
+        long used = total - usable;
+        if (total <= 0 || used * 100 < total * diskHighWatermark) {
+            return;
+        }
+
+        Policy.Eviction<String, Path> eviction = eviction(files);
+        long cached = eviction.weightedSize().orElse(0);
+        long excess = used - total * diskLowWatermark / 100;
+        long target = Math.max(0, cached - excess);
+        logger.info("Disk holding {} is {}% full; shrinking the remote object cache from {} to {} bytes",
+                cacheDir, used * 100 / total, cached, target);
+        eviction.setMaximum(target);
+        files.cleanUp();
+        eviction.setMaximum(maxSize);
+    }
+
+    // An entry evicted since it was looked up is downloaded again, but not cached
+    private LocalCopy linkOrDownload(Path cached, BlobStore store, String key) throws IOException {
+        LocalCopy link = LocalCopy.link(cached);
+        if (link != null) {
+            return link;
+        }
+        Path temp = cached.resolveSibling(UUID.randomUUID() + TEMP_SUFFIX);
+        return new LocalCopy(download(store, key, temp), true);
+    }
+
+    private static String cacheKey(String backend, String key) {
+        return backend + "/" + key;
+    }
+
+    private static Policy.Eviction<String, Path> eviction(Cache<String, Path> cache) {
+        return cache.policy().eviction().orElseThrow();
+    }
+
+    // A file deleted behind the cache's back weighs nothing; the next read replaces it
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.faceshare.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Objects in an S3-compatible bucket (AWS S3, MinIO, ...). Only created when
+ * storage.s3.bucket is set; storage.s3.endpoint points it at anything but AWS.
+ *
+ * Files larger than storage.s3.part-size go up as a multipart upload whose
+ * parts are sent in parallel, each read straight from its slice of the file.
+ * Reads are ranged GETs, so Range requests are proxied without fetching the
+ * whole object.
+ */
+@Component
+@ConditionalOnExpression("'${storage.s3.bucket:}' != ''")
+public class S3BlobStore implements BlobStore {
+
+    public static final String NAME = "s3";
+
+    private static final Logger logger = LoggerFactory.getLogger(S3BlobStore.class);
+
+    private final S3Client s3;
+    private final String bucket;
+    private final long partSize;
+
+    // Parts are uploaded on their own pool: uploads also run on the task executor,
+    // and waiting there for parts queued behind them could starve it
+    private final ExecutorService partUploads;
+
+    public S3BlobStore(@Value("${storage.s3.bucket}") String bucket,
+                       @Value("${storage.s3.endpoint:}") String endpoint,
+                       @Value("${storage.s3.region:us-east-1}") String region,
+                       @Value("${storage.s3.access-key:}") String accessKey,
+                       @Value("${storage.s3.secret-key:}") String secretKey,
+                       @Value("${storage.s3.path-style:true}") boolean pathStyle,
+                       @Value("${storage.s3.part-size:8388608}") long partSize,
+                       @Value("${storage.s3.upload-concurrency:4}") int uploadConcurrency) {
+        AwsCredentialsProvider credentials = StringUtils.hasText(accessKey)
+                ? StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey))
+                : DefaultCredentialsProvider.create();
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build());
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+
+        this.s3 = builder.build();
+        this.bucket = bucket;
+        this.partSize = partSize;
+        AtomicInteger threads = new AtomicInteger();
+        this.partUploads = Executors.newFixedThreadPool(uploadConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "s3-part-upload-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void close() {
+        partUploads.shutdownNow();
+        s3.close();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long size = Files.size(source);
+        try {
+            if (size <= partSize) {
+                s3.putObject(request -> request.bucket(bucket).key(key).contentType(contentType(key)),
+                        RequestBody.fromFile(source));
+            } else {
+                putMultipart(key, source, size);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Could not store " + key + " in bucket " + bucket, e);
+        }
+    }
+
+    private void putMultipart(String key, Path source, long size) throws IOException {
+        String uploadId = s3.createMultipartUpload(request -> request.bucket(bucket).key(key)
+                .contentType(contentType(key))).uploadId();
+
+        List<Future<CompletedPart>> parts = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += partSize, partNumber++) {
+                int number = partNumber;
+                long start = offset;
+                long length = Math.min(partSize, size - offset);
+                parts.add(partUploads.submit(() -> uploadPart(key, uploadId, source, number, start, length)));
+            }
+
+            List<CompletedPart> completed = new ArrayList<>(parts.size());
+            for (Future<CompletedPart> part : parts) {
+                completed.add(part.get());
+            }
+            s3.completeMultipartUpload(request -> request.bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(upload -> upload.parts(completed)));
+            logger.debug("Stored {} in {} parts", key, completed.size());
+        } catch (InterruptedException | ExecutionException | SdkException e) {
+            parts.forEach(part -> part.cancel(true));
+            abort(key, uploadId);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new IOException("Multipart upload of " + key + " failed", cause);
+        }
+    }
+
+    private CompletedPart uploadPart(String key, String uploadId, Path source, int partNumber,
+                                     long offset, long length) {
+        // A fresh stream per attempt, so the SDK can retry (and sign) the part
+        RequestBody body = RequestBody.fromContentProvider(() -> {
+            try {
+                InputStream in = Files.newInputStream(source);
+                in.skipNBytes(offset);
+                return new BoundedInputStream(in, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, length, MediaType.APPLICATION_OCTET_STREAM_VALUE);
+
+        String etag = s3.uploadPart(request -> request.bucket(bucket).key(key).uploadId(uploadId)
+                .partNumber(partNumber).contentLength(length), body).eTag();
+        return CompletedPart.builder().partNumber(partNumber).eTag(etag).build();
+    }
+
+    private void abort(String key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(request -> request.bucket(bucket).key(key).uploadId(uploadId));
+        } catch (SdkException e) {
+            // The bucket's lifecycle rule for incomplete uploads cleans up eventually
+            logger.warn("Could not abort multipart upload of {}: {}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucket).key(key);
+        if (offset > 0 || length >= 0) {
+            request.range("bytes=" + offset + "-" + (length >= 0 ? offset + length - 1 : ""));
+        }
+        try {
+            return s3.getObject(request.build());
+        } catch (S3Exception e) {
+            throw notFoundOr(e, key);
+        } catch (SdkException e) {
+            throw new IOException("Could not read " + key, e);
+        }
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        try {
+            return s3.headObject(request -> request.bucket(bucket).key(key)).contentLength();
+        } catch (S3Exception e) {
+            throw notFoundOr(e, key);
+        } catch (SdkException e) {
+            throw new IOException("Could not read " + key, e);
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        try {
+            s3.deleteObject(request -> request.bucket(bucket).key(key));
+            return true;
+        } catch (SdkException e) {
+            throw new IOException("Could not delete " + key, e);
+        }
+    }
+
+    @Override
+    public boolean supportsListing() {
+        return true;
+    }
+
+    // S3 lists keys in order, so the cursor is just the last key returned
+    @Override
+    public ObjectListing list(String cursor, int limit) throws IOException {
+        try {
+            ListObjectsV2Response page = s3.listObjectsV2(request -> request.bucket(bucket)
+                    .startAfter(cursor).maxKeys(limit));
+            List<StoredObject> objects = page.contents().stream()
+                    .map(object -> new StoredObject(object.key(), object.size(), object.lastModified()))
+                    .toList();
+            String nextCursor = Boolean.TRUE.equals(page.isTruncated()) && !objects.isEmpty()
+                    ? objects.get(objects.size() - 1).key() : null;
+            return new ObjectListing(objects, nextCursor);
+        } catch (SdkException e) {
+            throw new IOException("Could not list bucket " + bucket, e);
+        }
+    }
+
+    private static IOException notFoundOr(S3Exception e, String key) {
+        if (e.statusCode() == 404) {
+            return new NoSuchFileException(key);
+        }
+        return new IOException("Could not read " + key, e);
+    }
+
+    private static String contentType(String key) {
+        return MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.faceshare.storage;
+
+import java.time.Instant;
+
+/**
+ * An object found by BlobStore.list
+ *
+ * @param key its key in the store
+ * @param size size in bytes
+ * @param lastModified when it was last written
+ */
+public record StoredObject(String key, long size, Instant lastModified) {
+}
@@ -0,0 +1,92 @@
+package com.faceshare.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Burkhard-Keller tree over 64-bit hashes with Hamming distance. A search for
+ * everything within d of a hash only descends into children whose edge
+ * distance lies in [dist - d, dist + d] (triangle inequality), so small radii
+ * visit a small part of the tree. Values with the same hash share a node.
+ * Thread-safe.
+ */
+public class BkTree<V> {
+
+    public record Match<V>(V value, long hash, int distance) {}
+
+    private static final class Node<V> {
+        final long hash;
+        final List<V> values = new ArrayList<>(1);
+        final Map<Integer, Node<V>> children = new HashMap<>(4);
+
+        Node(long hash, V value) {
+            this.hash = hash;
+            this.values.add(value);
+        }
+    }
+
+    private Node<V> root;
+    private int size;
+
+    public synchronized void add(long hash, V value) {
+        size++;
+        if (root == null) {
+            root = new Node<>(hash, value);
+            return;
+        }
+
+        Node<V> node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance == 0) {
+                node.values.add(value);
+                return;
+            }
+            Node<V> child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node<>(hash, value));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Everything within maxDistance of hash, nearest first
+     */
+    public synchronized List<Match<V>> search(long hash, int maxDistance) {
+        List<Match<V>> matches = new ArrayList<>();
+        if (root == null) {
+            return matches;
+        }
+
+        Deque<Node<V>> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node<V> node = pending.pop();
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance <= maxDistance) {
+                for (V value : node.values) {
+                    matches.add(new Match<>(value, node.hash, distance));
+                }
+            }
+            for (Map.Entry<Integer, Node<V>> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                    pending.push(child.getValue());
+                }
+            }
+        }
+
+        matches.sort(Comparator.comparingInt(Match::distance));
+        return matches;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,142 @@
+package com.faceshare.util;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The EXIF Orientation tag (1-8) of a JPEG. Cameras and phones store pixels in
+ * sensor order and record in this tag how to turn them upright; ImageIO
+ * ignores it, so anything drawn from the decoded pixels must apply it.
+ */
+public final class ExifOrientation {
+
+    public static final int NORMAL = 1;
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final int APP1 = 0xE1;
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * Orientation of the first image of a reader with its input set, NORMAL
+     * for other formats and for missing or unreadable EXIF data.
+     */
+    public static int read(ImageReader reader) throws IOException {
+        IIOMetadata metadata;
+        try {
+            metadata = reader.getImageMetadata(0);
+        } catch (IIOException e) {
+            // Broken metadata need not mean broken pixels
+            return NORMAL;
+        }
+        if (metadata == null || !JPEG_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+            return NORMAL;
+        }
+
+        Node markers = ((IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT))
+                .getElementsByTagName("markerSequence").item(0);
+        for (Node marker = markers == null ? null : markers.getFirstChild(); marker != null;
+             marker = marker.getNextSibling()) {
+            if (marker instanceof IIOMetadataNode node && "unknown".equals(node.getNodeName())
+                    && String.valueOf(APP1).equals(node.getAttribute("MarkerTag"))
+                    && node.getUserObject() instanceof byte[] segment) {
+                int orientation = fromApp1(segment);
+                if (orientation != 0) {
+                    return orientation;
+                }
+            }
+        }
+        return NORMAL;
+    }
+
+    /** Whether turning the image upright swaps its width and height */
+    public static boolean swapsAxes(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+
+    /** The image turned upright; the image itself for NORMAL */
+    public static BufferedImage apply(BufferedImage image, int orientation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // Each maps stored pixel coordinates to upright ones
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);       // mirror
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height); // rotate 180
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);      // flip
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);            // transpose
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);      // rotate 90 clockwise
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width); // transverse
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, width);       // rotate 90 counter-clockwise
+            default -> null;
+        };
+        if (transform == null) {
+            return image;
+        }
+
+        BufferedImage upright = swapsAxes(orientation)
+                ? new BufferedImage(height, width, BufferedImage.TYPE_INT_RGB)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = upright.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return upright;
+    }
+
+    // The Orientation entry of IFD0 in an APP1 segment, 0 if there is none
+    private static int fromApp1(byte[] segment) {
+        int tiff = EXIF_HEADER.length;
+        if (segment.length < tiff + 8 || !startsWithExifHeader(segment)) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(segment);
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (segment[tiff] != 'M' || segment[tiff + 1] != 'M') {
+            return 0;
+        }
+
+        long ifd = tiff + Integer.toUnsignedLong(buffer.getInt(tiff + 4));
+        if (ifd + 2 > segment.length) {
+            return 0;
+        }
+        int entries = Short.toUnsignedInt(buffer.getShort((int) ifd));
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return 0;
+            }
+            if (Short.toUnsignedInt(buffer.getShort(entry)) == ORIENTATION_TAG) {
+                // A SHORT, left-aligned in the value field
+                int orientation = Short.toUnsignedInt(buffer.getShort(entry + 8));
+                return orientation >= 1 && orientation <= 8 ? orientation : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean startsWithExifHeader(byte[] segment) {
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (segment[i] != EXIF_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,76 @@
+package com.faceshare.util;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 64-bit difference hash (dHash) of an image. The image is reduced to a 9x8
+ * grid of average luminance, and each bit records whether a cell is brighter
+ * than its left neighbour. Recompression, rescaling and small colour shifts
+ * flip only a few bits, so near-duplicates are a small Hamming distance apart.
+ */
+public final class PerceptualHash {
+
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Hash of an image of any size. Best computed from a small rendition
+     * (e.g. the thumbnail); the result is the same up to a few bits.
+     */
+    public static long dHash(BufferedImage image) {
+        double[][] luminance = cellLuminance(image);
+        long hash = 0;
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            for (int x = 0; x < GRID_WIDTH - 1; x++) {
+                hash = (hash << 1) | (luminance[y][x + 1] > luminance[y][x] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Whether a hash carries enough structure to identify a shot. Flat or
+     * evenly graded images (blank frames, sky, a wall) hash to nearly all
+     * zeros or all ones, and unrelated images like that are near each other.
+     *
+     * @param minBits fewest bits that must be set, and also left unset
+     */
+    public static boolean isDistinctive(long hash, int minBits) {
+        int set = Long.bitCount(hash);
+        return set >= minBits && Long.SIZE - set >= minBits;
+    }
+
+    // Mean luminance of each grid cell (area averaging, so no aliasing)
+    private static double[][] cellLuminance(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[][] sums = new double[GRID_HEIGHT][GRID_WIDTH];
+        int[][] counts = new int[GRID_HEIGHT][GRID_WIDTH];
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int cellY = y * GRID_HEIGHT / height;
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int cellX = x * GRID_WIDTH / width;
+                sums[cellY][cellX] += 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+                counts[cellY][cellX]++;
+            }
+        }
+
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            for (int x = 0; x < GRID_WIDTH; x++) {
+                sums[y][x] = counts[y][x] == 0 ? 0 : sums[y][x] / counts[y][x];
+            }
+        }
+        return sums;
+    }
+}
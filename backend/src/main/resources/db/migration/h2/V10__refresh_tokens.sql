@@ -0,0 +1,25 @@
+-- Opaque refresh tokens. Only the SHA-256 of each token is stored, so the
+-- table cannot be used to sign in. Every rotation adds a row to the token's
+-- family and marks the presented one used; presenting a used token again
+-- revokes the whole family. Rows are deleted in batches once they expire.
+CREATE TABLE IF NOT EXISTS refresh_tokens (
+    id         bigint GENERATED BY DEFAULT AS IDENTITY,
+    user_id    bigint                      NOT NULL,
+    token_hash varchar(64)                 NOT NULL,
+    family_id  varchar(36)                 NOT NULL,
+    expires_at timestamp(6) with time zone NOT NULL,
+    created_at timestamp(6) with time zone NOT NULL,
+    used_at    timestamp(6) with time zone,
+    revoked_at timestamp(6) with time zone,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_refresh_tokens_user FOREIGN KEY (user_id) REFERENCES users ON DELETE CASCADE
+);
+
+-- A refresh is one lookup by hash
+CREATE UNIQUE INDEX IF NOT EXISTS uk_refresh_tokens_hash ON refresh_tokens (token_hash);
+
+-- Reuse detection and logout revoke a family at once
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_family ON refresh_tokens (family_id);
+
+-- Expiry cleanup takes the oldest rows a batch at a time
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_expires_at ON refresh_tokens (expires_at);
@@ -0,0 +1,76 @@
+-- Baseline schema, as previously generated by Hibernate (ddl-auto: update).
+-- Written to be idempotent: databases that predate Flyway are baselined at
+-- version 0, so this script also runs on them and only adds what is missing.
+
+CREATE SEQUENCE IF NOT EXISTS shared_photos_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS users (
+    id                bigint GENERATED BY DEFAULT AS IDENTITY,
+    email             varchar(255) NOT NULL,
+    password          varchar(255) NOT NULL,
+    full_name         varchar(255) NOT NULL,
+    profile_image_url varchar(255),
+    is_enabled        boolean      NOT NULL,
+    created_at        timestamp(6) NOT NULL,
+    updated_at        timestamp(6),
+    PRIMARY KEY (id),
+    UNIQUE (email)
+);
+
+CREATE TABLE IF NOT EXISTS photos (
+    id                bigint GENERATED BY DEFAULT AS IDENTITY,
+    user_id           bigint       NOT NULL,
+    file_name         varchar(255) NOT NULL,
+    file_path         varchar(255) NOT NULL,
+    file_size         bigint,
+    mime_type         varchar(255),
+    processing_status varchar(255) NOT NULL
+        CHECK (processing_status IN ('PENDING', 'PROCESSING', 'COMPLETED', 'FAILED')),
+    faces_detected    integer,
+    batch_id          varchar(36),
+    created_at        timestamp(6) NOT NULL,
+    updated_at        timestamp(6),
+    PRIMARY KEY (id),
+    CONSTRAINT FKnm381g1ktlpsorbtpco2ljhuv FOREIGN KEY (user_id) REFERENCES users
+);
+
+-- Added with batch uploads
+ALTER TABLE photos ADD COLUMN IF NOT EXISTS batch_id varchar(36);
+
+CREATE TABLE IF NOT EXISTS face_encodings (
+    id            bigint GENERATED BY DEFAULT AS IDENTITY,
+    user_id       bigint                      NOT NULL,
+    photo_id      bigint,
+    encoding_json CLOB                        NOT NULL,
+    quality_score float(53),
+    is_primary    boolean                     NOT NULL,
+    created_at    timestamp(6) with time zone NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT FK4dl9x0qf5ikyet0gfl8v4xbqm FOREIGN KEY (user_id) REFERENCES users,
+    CONSTRAINT FK5oux8tswpmi1v7e3rr0tqonaw FOREIGN KEY (photo_id) REFERENCES photos
+);
+
+-- Hibernate created this as TEXT, which H2 stores as VARCHAR; the mapping expects a CLOB
+ALTER TABLE face_encodings ALTER COLUMN encoding_json SET DATA TYPE CLOB;
+
+CREATE TABLE IF NOT EXISTS shared_photos (
+    id                bigint                      NOT NULL,
+    photo_id          bigint                      NOT NULL,
+    recipient_user_id bigint                      NOT NULL,
+    delivered         boolean                     NOT NULL,
+    created_at        timestamp(6) with time zone NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT FKpkoyus35998u9wccm2qn8cdoo FOREIGN KEY (photo_id) REFERENCES photos,
+    CONSTRAINT FKokxnxx1v92e2xlqtpbdxl8a8o FOREIGN KEY (recipient_user_id) REFERENCES users
+);
+
+-- One share per recipient; also serves "who is this photo shared with".
+-- Sharing used to insert a recipient again when face matching returned them
+-- more than once, so existing duplicates go first, keeping the oldest share
+DELETE FROM shared_photos sp
+WHERE EXISTS (SELECT 1 FROM shared_photos earlier
+              WHERE earlier.photo_id = sp.photo_id
+                AND earlier.recipient_user_id = sp.recipient_user_id
+                AND earlier.id < sp.id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_shared_photos_photo_recipient ON shared_photos (photo_id, recipient_user_id);
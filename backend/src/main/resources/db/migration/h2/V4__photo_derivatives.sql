@@ -0,0 +1,4 @@
+-- Scaled-down variants written during processing (NULL until then, or when the
+-- original is already small enough to serve as that variant)
+ALTER TABLE photos ADD COLUMN IF NOT EXISTS thumbnail_path varchar(255);
+ALTER TABLE photos ADD COLUMN IF NOT EXISTS preview_path varchar(255);
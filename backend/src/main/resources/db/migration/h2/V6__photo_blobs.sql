@@ -0,0 +1,20 @@
+-- Content-addressed originals: one row (and one stored file) per distinct
+-- SHA-256, shared by every photo with those bytes. ref_count is the number of
+-- photos pointing at the blob; the file is deleted when it drops to zero.
+-- Face detection runs once per blob, and its result is kept here for reuse.
+CREATE TABLE IF NOT EXISTS photo_blobs (
+    content_hash   varchar(64)  NOT NULL,
+    path           varchar(255) NOT NULL,
+    size           bigint       NOT NULL,
+    ref_count      integer      NOT NULL,
+    faces_detected integer,
+    face_encodings CLOB,
+    created_at     timestamp(6) NOT NULL,
+    PRIMARY KEY (content_hash)
+);
+
+-- deleteFile looks the blob up by the photo's file path
+CREATE UNIQUE INDEX IF NOT EXISTS uk_photo_blobs_path ON photo_blobs (path);
+
+-- Photos with identical content share derivatives
+CREATE INDEX IF NOT EXISTS idx_photos_content_hash ON photos (content_hash);
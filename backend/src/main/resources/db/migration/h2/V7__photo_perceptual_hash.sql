@@ -0,0 +1,3 @@
+-- 64-bit dHash of the photo, set during processing. Near-duplicate lookups
+-- load a user's hashes into an in-memory BK-tree, so this is not indexed.
+ALTER TABLE photos ADD COLUMN IF NOT EXISTS perceptual_hash bigint;
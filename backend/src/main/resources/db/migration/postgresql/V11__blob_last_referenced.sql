@@ -0,0 +1,6 @@
+-- When a blob last gained a reference. A row no photo uses is only dangling
+-- (left by an upload whose photo was never saved) once this is older than the
+-- orphan collector's grace period; until then the photo may still be written.
+ALTER TABLE photo_blobs ADD COLUMN IF NOT EXISTS last_referenced_at timestamp(6);
+UPDATE photo_blobs SET last_referenced_at = created_at WHERE last_referenced_at IS NULL;
+ALTER TABLE photo_blobs ALTER COLUMN last_referenced_at SET NOT NULL;
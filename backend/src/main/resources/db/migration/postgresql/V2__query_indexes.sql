@@ -0,0 +1,27 @@
+-- Indexes matched to the repository queries, so none of the hot paths scan a table.
+
+-- Photo feeds (my-photos lists and keyset pages): user_id = ? ORDER BY created_at DESC, id DESC
+CREATE INDEX IF NOT EXISTS idx_photos_user_created ON photos (user_id, created_at, id);
+
+-- Processing queue: processing_status = ? ORDER BY created_at DESC
+CREATE INDEX IF NOT EXISTS idx_photos_status_created ON photos (processing_status, created_at);
+
+-- Batch upload progress
+CREATE INDEX IF NOT EXISTS idx_photos_batch_id ON photos (batch_id);
+
+-- Shared feed and inbox: recipient_user_id = ? ORDER BY created_at DESC, id DESC
+CREATE INDEX IF NOT EXISTS idx_shared_photos_recipient_created ON shared_photos (recipient_user_id, created_at, id);
+
+-- Per-view access check: recipient_user_id = ? AND photo_id = ?
+CREATE INDEX IF NOT EXISTS idx_shared_photos_recipient_photo ON shared_photos (recipient_user_id, photo_id);
+
+-- A user's encodings, and their primary one
+CREATE INDEX IF NOT EXISTS idx_face_encodings_user_primary ON face_encodings (user_id, is_primary);
+
+-- Encodings detected in a photo
+CREATE INDEX IF NOT EXISTS idx_face_encodings_photo ON face_encodings (photo_id);
+
+-- shared_photos used IDENTITY before the share fan-out was batched; move the pooled
+-- sequence past any existing IDs so new shares cannot collide with them
+ALTER SEQUENCE shared_photos_seq INCREMENT BY 50;
+SELECT setval('shared_photos_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM shared_photos));
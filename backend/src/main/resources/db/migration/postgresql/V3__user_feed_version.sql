@@ -0,0 +1,3 @@
+-- Per-user feed version, bumped on upload, status change and new share; the feed
+-- endpoints derive their ETags from it
+ALTER TABLE users ADD COLUMN IF NOT EXISTS feed_version bigint DEFAULT 0 NOT NULL;
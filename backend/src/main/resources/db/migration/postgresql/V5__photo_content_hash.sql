@@ -0,0 +1,3 @@
+-- SHA-256 (hex) of the uploaded original, used as its ETag. NULL for photos
+-- uploaded before this column existed.
+ALTER TABLE photos ADD COLUMN IF NOT EXISTS content_hash varchar(64);
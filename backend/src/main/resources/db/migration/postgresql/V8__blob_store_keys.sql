@@ -0,0 +1,42 @@
+-- Photos and blobs name a BlobStore and a key in it instead of holding a local
+-- path or a Cloudinary URL (see com.faceshare.storage).
+--   local:      paths under the upload directory (the upload-dir placeholder,
+--               i.e. file.upload-dir) become keys relative to it
+--   cloudinary: URLs become the public ID within faceshare/photos plus .jpg;
+--               Cloudinary scales on delivery, so variants point at the original
+ALTER TABLE photos ADD COLUMN storage_backend varchar(20);
+ALTER TABLE photo_blobs ADD COLUMN storage_backend varchar(20);
+
+UPDATE photos SET storage_backend = CASE WHEN file_path LIKE 'http%' THEN 'cloudinary' ELSE 'local' END;
+UPDATE photo_blobs SET storage_backend = CASE WHEN path LIKE 'http%' THEN 'cloudinary' ELSE 'local' END;
+
+UPDATE photos SET
+    thumbnail_path = CASE WHEN thumbnail_path IS NULL THEN NULL
+                          ELSE REGEXP_REPLACE(file_path, '^.*/upload/(v[0-9]+/)?(faceshare/photos/)?', '') END,
+    preview_path = CASE WHEN preview_path IS NULL THEN NULL
+                        ELSE REGEXP_REPLACE(file_path, '^.*/upload/(v[0-9]+/)?(faceshare/photos/)?', '') END,
+    file_path = REGEXP_REPLACE(file_path, '^.*/upload/(v[0-9]+/)?(faceshare/photos/)?', '')
+WHERE storage_backend = 'cloudinary';
+UPDATE photo_blobs SET path = REGEXP_REPLACE(path, '^.*/upload/(v[0-9]+/)?(faceshare/photos/)?', '')
+WHERE storage_backend = 'cloudinary';
+
+UPDATE photos SET file_path = SUBSTRING(file_path, LENGTH('${upload-dir}') + 2)
+WHERE storage_backend = 'local' AND LEFT(file_path, LENGTH('${upload-dir}') + 1) = '${upload-dir}/';
+UPDATE photos SET thumbnail_path = SUBSTRING(thumbnail_path, LENGTH('${upload-dir}') + 2)
+WHERE storage_backend = 'local' AND LEFT(thumbnail_path, LENGTH('${upload-dir}') + 1) = '${upload-dir}/';
+UPDATE photos SET preview_path = SUBSTRING(preview_path, LENGTH('${upload-dir}') + 2)
+WHERE storage_backend = 'local' AND LEFT(preview_path, LENGTH('${upload-dir}') + 1) = '${upload-dir}/';
+UPDATE photo_blobs SET path = SUBSTRING(path, LENGTH('${upload-dir}') + 2)
+WHERE storage_backend = 'local' AND LEFT(path, LENGTH('${upload-dir}') + 1) = '${upload-dir}/';
+
+ALTER TABLE photos ALTER COLUMN storage_backend SET NOT NULL;
+ALTER TABLE photo_blobs ALTER COLUMN storage_backend SET NOT NULL;
+
+ALTER TABLE photos RENAME COLUMN file_path TO storage_key;
+ALTER TABLE photos RENAME COLUMN thumbnail_path TO thumbnail_key;
+ALTER TABLE photos RENAME COLUMN preview_path TO preview_key;
+ALTER TABLE photo_blobs RENAME COLUMN path TO storage_key;
+
+-- deleteFile looks the blob up by the photo's backend and key
+DROP INDEX IF EXISTS uk_photo_blobs_path;
+CREATE UNIQUE INDEX IF NOT EXISTS uk_photo_blobs_location ON photo_blobs (storage_backend, storage_key);
@@ -0,0 +1,6 @@
+-- The orphan collector checks batches of listed keys against every key a
+-- photo uses (original, thumbnail, preview); blobs are already indexed by
+-- (storage_backend, storage_key)
+CREATE INDEX IF NOT EXISTS idx_photos_storage_key ON photos (storage_backend, storage_key);
+CREATE INDEX IF NOT EXISTS idx_photos_thumbnail_key ON photos (storage_backend, thumbnail_key);
+CREATE INDEX IF NOT EXISTS idx_photos_preview_key ON photos (storage_backend, preview_key);
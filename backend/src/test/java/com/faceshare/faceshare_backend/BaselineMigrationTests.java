@@ -0,0 +1,56 @@
+package com.faceshare.faceshare_backend;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The baseline runs on databases that predate Flyway, which can hold
+ * duplicate shares from before the unique index existed.
+ */
+class BaselineMigrationTests {
+
+    @Test
+    void baselineDropsDuplicateSharesKeepingTheOldest() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:baseline;DB_CLOSE_DELAY=-1", "sa", "password");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+
+        // A schema as Hibernate left it: the baseline's tables without the index or history
+        flyway(dataSource).migrate();
+        jdbc.execute("DROP INDEX uk_shared_photos_photo_recipient");
+        jdbc.execute("DROP TABLE \"flyway_schema_history\"");
+
+        jdbc.update("INSERT INTO users (id, email, password, full_name, is_enabled, created_at) " +
+                "VALUES (1, 'a@example.com', 'x', 'A', TRUE, CURRENT_TIMESTAMP), " +
+                "(2, 'b@example.com', 'x', 'B', TRUE, CURRENT_TIMESTAMP)");
+        jdbc.update("INSERT INTO photos (id, user_id, file_name, file_path, processing_status, created_at) " +
+                "VALUES (1, 1, 'p.jpg', 'p.jpg', 'COMPLETED', CURRENT_TIMESTAMP)");
+        for (long id : new long[] {7, 3, 5}) {
+            jdbc.update("INSERT INTO shared_photos (id, photo_id, recipient_user_id, delivered, created_at) " +
+                    "VALUES (?, 1, 2, FALSE, CURRENT_TIMESTAMP)", id);
+        }
+        jdbc.update("INSERT INTO shared_photos (id, photo_id, recipient_user_id, delivered, created_at) " +
+                "VALUES (9, 1, 1, FALSE, CURRENT_TIMESTAMP)");
+
+        flyway(dataSource).migrate();
+
+        assertEquals(List.of(3L, 9L),
+                jdbc.queryForList("SELECT id FROM shared_photos ORDER BY id", Long.class));
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM information_schema.indexes " +
+                "WHERE index_name = 'UK_SHARED_PHOTOS_PHOTO_RECIPIENT'", Integer.class));
+    }
+
+    // Later versions are not idempotent, so both runs stop at the baseline
+    private static Flyway flyway(DriverManagerDataSource dataSource) {
+        return Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/h2")
+                .baselineOnMigrate(true).baselineVersion("0").target("1")
+                .placeholders(Map.of("upload-dir", "./uploads")).load();
+    }
+}
@@ -0,0 +1,157 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.Photo;
+import com.faceshare.model.User;
+import com.faceshare.repository.PhotoBlobRepository;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.service.FaceRecognitionService;
+import com.faceshare.service.FileStorageService;
+import com.faceshare.service.PhotoService;
+import com.faceshare.service.StoredFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Identical uploads must share one stored file, which survives until the last
+ * photo pointing at it lets go, and must not be sent for face detection again.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:blobs;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "file.deduplicate=true"
+})
+class ContentAddressedStorageTests {
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadDir(DynamicPropertyRegistry registry) {
+        registry.add("file.upload-dir", uploadDir::toString);
+    }
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private FaceRecognitionService faceRecognitionService;
+
+    @Autowired
+    private PhotoBlobRepository photoBlobRepository;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void identicalContentIsStoredOnceAndDeletedWithTheLastReference() throws Exception {
+        StoredFile first = store("same bytes", "a.jpg");
+        StoredFile second = store("same bytes", "b.jpg");
+
+        assertEquals(first.key(), second.key());
+        assertEquals(first.contentHash(), second.contentHash());
+        assertEquals(2, photoBlobRepository.findById(first.contentHash()).orElseThrow().getRefCount());
+
+        assertFalse(fileStorageService.deleteFile(first.backend(), first.key()));
+        assertTrue(Files.exists(uploadDir.resolve(first.key())));
+
+        assertTrue(fileStorageService.deleteFile(second.backend(), second.key()));
+        assertFalse(Files.exists(uploadDir.resolve(second.key())));
+        assertTrue(photoBlobRepository.findById(first.contentHash()).isEmpty());
+    }
+
+    // Each upload puts its object before inserting the row, so all but one lose the insert
+    @Test
+    void concurrentIdenticalUploadsShareOneBlob() throws Exception {
+        int uploads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(uploads);
+        try {
+            List<Future<StoredFile>> results = new ArrayList<>();
+            for (int i = 0; i < uploads; i++) {
+                String fileName = i % 2 == 0 ? "race.jpg" : "race.png";
+                results.add(executor.submit(() -> store("raced bytes", fileName)));
+            }
+            Set<String> keys = new HashSet<>();
+            for (Future<StoredFile> result : results) {
+                keys.add(result.get().key());
+            }
+
+            assertEquals(1, keys.size());
+            StoredFile stored = results.get(0).get();
+            assertEquals(uploads, photoBlobRepository.findById(stored.contentHash()).orElseThrow().getRefCount());
+            assertTrue(Files.exists(uploadDir.resolve(stored.key())));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void differentContentGetsItsOwnBlob() throws Exception {
+        StoredFile first = store("one", "a.jpg");
+        StoredFile second = store("two", "a.jpg");
+
+        assertNotEquals(first.key(), second.key());
+        assertEquals(1, photoBlobRepository.findById(second.contentHash()).orElseThrow().getRefCount());
+    }
+
+    @Test
+    void detectionOfIdenticalContentIsReused() throws Exception {
+        StoredFile stored = store("detected", "a.jpg");
+        photoBlobRepository.saveDetection(stored.contentHash(), 1, "[[0.25, 0.5]]");
+
+        // The AI service is not running in tests, so only a reused result can succeed
+        Map<String, Object> result = faceRecognitionService.detectFaces(uploadDir.resolve(stored.key()).toFile(), stored.contentHash());
+
+        assertEquals(true, result.get("success"));
+        assertEquals(1, result.get("faces_detected"));
+        assertEquals(List.of(List.of(0.25, 0.5)), result.get("face_encodings"));
+    }
+
+    @Test
+    void uploadsWhosePhotoIsNotSavedGiveTheirReferenceBack() throws Exception {
+        StoredFile kept = store("batch bytes", "a.jpg");
+        StoredFile failed = store("batch bytes", "b.jpg");
+        StoredFile onlyFailed = store("only in the failed batch", "c.jpg");
+        User alice = userRepository.findByEmail("alice@example.com").orElseThrow();
+
+        // No file name: the insert fails, so the batch is rolled back
+        List<Photo> batch = List.of(
+                new Photo(null, failed.backend(), failed.key(), 11L, "image/jpeg", alice),
+                new Photo(null, onlyFailed.backend(), onlyFailed.key(), 24L, "image/jpeg", alice));
+        assertThrows(RuntimeException.class, () -> photoService.saveBatchAndEnqueue(batch));
+
+        assertEquals(1, photoBlobRepository.findById(kept.contentHash()).orElseThrow().getRefCount());
+        assertTrue(Files.exists(uploadDir.resolve(kept.key())));
+        assertTrue(photoBlobRepository.findById(onlyFailed.contentHash()).isEmpty());
+        assertFalse(Files.exists(uploadDir.resolve(onlyFailed.key())));
+    }
+
+    private StoredFile store(String content, String fileName) throws Exception {
+        return fileStorageService.storeStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), fileName);
+    }
+}
@@ -0,0 +1,100 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.User;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.service.FeedVersionService;
+import com.faceshare.service.JwtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The photo feeds carry an ETag from the user's feed version: presenting it
+ * again is a 304 until the feed changes, and browsers may read it.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:feedetags;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureMockMvc
+class FeedETagTests {
+
+    private static final String FEED = "/api/photos/my-photos/feed";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private FeedVersionService feedVersionService;
+
+    private User alice;
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        alice = userRepository.findByEmail("alice@example.com").orElseThrow();
+        authorization = "Bearer " + jwtService.generateToken(alice);
+    }
+
+    @Test
+    void unchangedFeedIsNotModified() throws Exception {
+        String etag = feedETag();
+
+        mockMvc.perform(get(FEED)
+                        .header(HttpHeaders.AUTHORIZATION, authorization)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void changedFeedGetsANewETag() throws Exception {
+        String etag = feedETag();
+
+        feedVersionService.bump(alice.getId());
+
+        String changed = mockMvc.perform(get(FEED)
+                        .header(HttpHeaders.AUTHORIZATION, authorization)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, changed);
+    }
+
+    // Cross-origin (Flutter web) clients only see exposed headers
+    @Test
+    void browsersMayReadTheETag() throws Exception {
+        mockMvc.perform(get(FEED)
+                        .header(HttpHeaders.AUTHORIZATION, authorization)
+                        .header(HttpHeaders.ORIGIN, "http://localhost:8080"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, containsString("ETag")));
+    }
+
+    private String feedETag() throws Exception {
+        String etag = mockMvc.perform(get(FEED).header(HttpHeaders.AUTHORIZATION, authorization))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        return etag;
+    }
+}
@@ -0,0 +1,149 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.service.ImageResizer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Phone photos are stored in sensor orientation with an EXIF Orientation tag;
+ * decoding must turn them upright before anything is scaled or hashed.
+ */
+class ImageOrientationTests {
+
+    private final ImageResizer imageResizer = new ImageResizer(0.9f);
+
+    @TempDir
+    Path dir;
+
+    // A portrait shot as the sensor stored it: its top half on the left
+    @Test
+    void orientationSixIsTurnedClockwise() throws Exception {
+        Path photo = jpeg(halves(120, 60), 6);
+
+        BufferedImage decoded = imageResizer.decode(photo, 1000, 1000, ImageResizer.Fit.CONTAIN);
+
+        assertEquals(60, decoded.getWidth());
+        assertEquals(120, decoded.getHeight());
+        assertColor(Color.RED, decoded.getRGB(30, 10));
+        assertColor(Color.BLUE, decoded.getRGB(30, 110));
+    }
+
+    // Subsampling must follow the upright shape: scaled by the stored 800x200,
+    // a 100x400 box would decode at a quarter and end up 50x200
+    @Test
+    void portraitIsSubsampledByItsUprightSize() throws Exception {
+        Path photo = jpeg(halves(800, 200), 6);
+
+        for (ImageResizer.Fit fit : ImageResizer.Fit.values()) {
+            BufferedImage decoded = imageResizer.decode(photo, 100, 400, fit);
+            BufferedImage resized = imageResizer.resize(decoded, 100, 400, fit);
+
+            assertEquals(100, resized.getWidth(), fit.key());
+            assertEquals(400, resized.getHeight(), fit.key());
+        }
+    }
+
+    @Test
+    void coverCropsTheLongUprightAxis() throws Exception {
+        Path photo = jpeg(halves(800, 200), 6);
+
+        BufferedImage decoded = imageResizer.decode(photo, 100, 100, ImageResizer.Fit.COVER);
+        BufferedImage resized = imageResizer.resize(decoded, 100, 100, ImageResizer.Fit.COVER);
+
+        // 200x800 upright, scaled to 100x400 and cropped to its middle
+        assertEquals(100, resized.getWidth());
+        assertEquals(100, resized.getHeight());
+        assertColor(Color.RED, resized.getRGB(50, 20));
+        assertColor(Color.BLUE, resized.getRGB(50, 80));
+    }
+
+    @Test
+    void withoutExifTheImageIsLeftAsStored() throws Exception {
+        Path photo = jpeg(halves(120, 60), 0);
+
+        BufferedImage decoded = imageResizer.decode(photo, 1000, 1000, ImageResizer.Fit.CONTAIN);
+
+        assertEquals(120, decoded.getWidth());
+        assertEquals(60, decoded.getHeight());
+        assertColor(Color.RED, decoded.getRGB(10, 30));
+        assertColor(Color.BLUE, decoded.getRGB(110, 30));
+    }
+
+    // Left half red, right half blue
+    private static BufferedImage halves(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(width / 2, 0, width - width / 2, height);
+        graphics.dispose();
+        return image;
+    }
+
+    // A JPEG with an EXIF segment holding just the orientation (none for 0)
+    private Path jpeg(BufferedImage image, int orientation) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", encoded);
+        byte[] jpeg = encoded.toByteArray();
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        // SOI and the JFIF APP0 segment come first
+        int app0End = 4 + (((jpeg[4] & 0xFF) << 8) | (jpeg[5] & 0xFF));
+        file.write(jpeg, 0, app0End);
+        if (orientation != 0) {
+            file.write(app1(orientation));
+        }
+        file.write(jpeg, app0End, jpeg.length - app0End);
+
+        Path path = dir.resolve("orientation-" + orientation + ".jpg");
+        Files.write(path, file.toByteArray());
+        return path;
+    }
+
+    private static byte[] app1(int orientation) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream exif = new DataOutputStream(payload);
+        exif.write("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        exif.write("MM".getBytes(StandardCharsets.US_ASCII));
+        exif.writeShort(42);
+        exif.writeInt(8);               // IFD0 right after the header
+        exif.writeShort(1);             // one entry
+        exif.writeShort(0x0112);        // Orientation
+        exif.writeShort(3);             // SHORT
+        exif.writeInt(1);
+        exif.writeShort(orientation);
+        exif.writeShort(0);
+        exif.writeInt(0);               // no next IFD
+
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(segment);
+        out.writeShort(0xFFE1);
+        out.writeShort(payload.size() + 2);
+        out.write(payload.toByteArray());
+        return segment.toByteArray();
+    }
+
+    // JPEG shifts colours a little
+    private static void assertColor(Color expected, int rgb) {
+        Color actual = new Color(rgb);
+        int distance = Math.abs(expected.getRed() - actual.getRed())
+                + Math.abs(expected.getGreen() - actual.getGreen())
+                + Math.abs(expected.getBlue() - actual.getBlue());
+        assertTrue(distance < 60, "expected " + expected + " but was " + actual);
+    }
+}
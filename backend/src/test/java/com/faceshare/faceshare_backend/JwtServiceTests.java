@@ -0,0 +1,56 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.User;
+import com.faceshare.service.JwtService;
+import com.faceshare.service.VerifiedToken;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tokens are verified once, and only signed, unexpired tokens are accepted.
+ */
+class JwtServiceTests {
+
+    private static final String SECRET = "testSecretKey12345678901234567890123456789012345678";
+
+    private final JwtService jwtService = new JwtService(SECRET, 3_600_000, 100);
+    private final User alice = user(7L, "alice@example.com", "Alice Johnson");
+
+    @Test
+    void validTokensAreVerifiedOnceAndCached() {
+        String token = jwtService.generateToken(alice);
+
+        VerifiedToken first = jwtService.verify(token).orElseThrow();
+        assertEquals("alice@example.com", first.subject());
+        assertEquals(7L, first.userId());
+        assertEquals("Alice Johnson", first.fullName());
+        assertSame(first, jwtService.verify(token).orElseThrow());
+    }
+
+    @Test
+    void tamperedTokensAreRejected() {
+        String token = jwtService.generateToken(alice);
+        String forged = new JwtService("anotherSecretKey1234567890123456789012345678901234", 3_600_000, 100)
+                .generateToken(alice);
+
+        assertTrue(jwtService.verify(forged).isEmpty());
+        assertTrue(jwtService.verify(token.substring(0, token.length() - 2) + "xx").isEmpty());
+        assertTrue(jwtService.verify("not.a.token").isEmpty());
+    }
+
+    @Test
+    void expiredTokensAreRejected() {
+        String expired = new JwtService(SECRET, -1000, 100).generateToken(alice);
+
+        assertTrue(jwtService.verify(expired).isEmpty());
+    }
+
+    private static User user(Long id, String email, String fullName) {
+        User user = new User(email, "password", fullName);
+        user.setId(id);
+        return user;
+    }
+}
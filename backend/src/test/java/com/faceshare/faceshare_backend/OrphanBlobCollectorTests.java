@@ -0,0 +1,161 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.Photo;
+import com.faceshare.model.User;
+import com.faceshare.repository.PhotoBlobRepository;
+import com.faceshare.repository.PhotoRepository;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.service.FileStorageService;
+import com.faceshare.service.OrphanBlobCollector;
+import com.faceshare.service.StoredFile;
+import com.faceshare.storage.LocalBlobStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The collector reports first and only deletes what nothing uses: not live
+ * blobs, not photos' originals or derivatives (under either layout), and not
+ * objects young enough to belong to an upload still in progress. A blob row no
+ * photo uses goes with its object once it is past the grace period.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:orphans;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "storage.gc.batch-size=2",
+        "storage.gc.grace-period=3600000"
+})
+class OrphanBlobCollectorTests {
+
+    private static final Duration OLD = Duration.ofDays(2);
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadDir(DynamicPropertyRegistry registry) {
+        registry.add("file.upload-dir", uploadDir::toString);
+    }
+
+    @Autowired
+    private OrphanBlobCollector dryRunCollector;
+
+    @Autowired
+    private LocalBlobStore localBlobStore;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private PhotoBlobRepository photoBlobRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void reportsFirstThenDeletesOnlyUnusedObjects() throws Exception {
+        // Its photo may still be on the way: referenced within the grace period
+        StoredFile blob = fileStorageService.storeStream(
+                new ByteArrayInputStream("a blob".getBytes(StandardCharsets.UTF_8)), "a.jpg");
+        // Left by an upload whose photo was never saved
+        StoredFile dangling = fileStorageService.storeStream(
+                new ByteArrayInputStream("a dangling blob".getBytes(StandardCharsets.UTF_8)), "d.jpg");
+        jdbcTemplate.update("UPDATE photo_blobs SET last_referenced_at = ? WHERE content_hash = ?",
+                LocalDateTime.now().minus(OLD), dangling.contentHash());
+        User alice = userRepository.findByEmail("alice@example.com").orElseThrow();
+        Photo photo = new Photo("b.jpg", LocalBlobStore.NAME, "11/22/1122photo.jpg", 5L, "image/jpeg", alice);
+        photo.setThumbnailKey("11/22/1122photo-thumbnail.jpg");
+        photoRepository.save(photo);
+
+        write("11/22/1122photo.jpg");
+        write("11/22/1122photo-thumbnail.jpg");
+        write("11/22/1122photo-preview.jpg");       // replaced derivative
+        write("33/44/3344orphan.jpg");              // upload whose row was never saved
+        write("upload-123.tmp");                    // abandoned spool
+        // Row already points at the fanned-out key, file not moved yet
+        Photo legacy = new Photo("c.jpg", LocalBlobStore.NAME, "55/66/5566legacy.jpg", 5L, "image/jpeg", alice);
+        photoRepository.save(legacy);
+        write("5566legacy.jpg");
+        Path young = uploadDir.resolve("77/88/7788young.jpg");
+        Files.createDirectories(young.getParent());
+        Files.writeString(young, "in progress");
+        ageAll(young);
+
+        List<String> orphans = List.of("11/22/1122photo-preview.jpg", "33/44/3344orphan.jpg", "upload-123.tmp",
+                dangling.key());
+
+        OrphanBlobCollector.Pass report = dryRunCollector.collectAll().get(LocalBlobStore.NAME);
+        assertTrue(report.dryRun());
+        assertEquals(9, report.scanned());
+        assertEquals(1, report.young());
+        assertEquals(4, report.referenced());
+        assertEquals(orphans.size(), report.orphans());
+        assertEquals(1, report.danglingBlobs());
+        assertEquals(orphans.stream().sorted().toList(), report.sample().stream().sorted().toList());
+        assertEquals(0, report.deleted());
+        // A snapshot: the collecting thread can't change what the endpoint is serialising
+        assertThrows(UnsupportedOperationException.class, () -> report.sample().add("x"));
+        orphans.forEach(key -> assertTrue(Files.exists(uploadDir.resolve(key))));
+
+        OrphanBlobCollector collector = new OrphanBlobCollector(List.of(localBlobStore), photoRepository,
+                photoBlobRepository, transactionTemplate, false, Duration.ofHours(1).toMillis(), 2, 1000, 0, 0);
+        Map<String, OrphanBlobCollector.Pass> passes = collector.collectAll();
+        assertEquals(orphans.size(), passes.get(LocalBlobStore.NAME).deleted());
+
+        orphans.forEach(key -> assertFalse(Files.exists(uploadDir.resolve(key)), key));
+        assertTrue(Files.exists(uploadDir.resolve(blob.key())));
+        assertTrue(photoBlobRepository.findById(blob.contentHash()).isPresent());
+        assertTrue(photoBlobRepository.findById(dangling.contentHash()).isEmpty());
+        assertTrue(Files.exists(uploadDir.resolve("11/22/1122photo.jpg")));
+        assertTrue(Files.exists(uploadDir.resolve("11/22/1122photo-thumbnail.jpg")));
+        assertTrue(Files.exists(uploadDir.resolve("5566legacy.jpg")));
+        assertTrue(Files.exists(young));
+    }
+
+    private void write(String key) throws Exception {
+        Path file = uploadDir.resolve(key);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, key);
+    }
+
+    // Backdate everything but the young file past the grace period
+    private void ageAll(Path young) throws Exception {
+        FileTime old = FileTime.from(Instant.now().minus(OLD));
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            for (Path file : files.filter(Files::isRegularFile).filter(file -> !file.equals(young)).toList()) {
+                Files.setLastModifiedTime(file, old);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.exception.CustomExceptions;
+import com.faceshare.model.User;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.security.PooledPasswordEncoder;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * A password stored at an old BCrypt cost is rehashed at the configured cost
+ * when its owner next logs in, without the user noticing, and without
+ * failing the login if the BCrypt pool has no room for the extra hash.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:rehash;DB_CLOSE_DELAY=-1",
+        "auth.bcrypt.strength=5"
+})
+@AutoConfigureMockMvc
+class PasswordRehashOnLoginTests {
+
+    private static final String EMAIL = "carol@example.com";
+    private static final String BUSY_EMAIL = "dave@example.com";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @SpyBean
+    private PooledPasswordEncoder passwordEncoder;
+
+    @Test
+    void loginRehashesAtTheConfiguredCost() throws Exception {
+        userRepository.save(new User(EMAIL, new BCryptPasswordEncoder(4).encode("secret123"), "Carol"));
+
+        mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + EMAIL + "\",\"password\":\"secret123\"}"))
+                .andExpect(status().isOk());
+
+        String stored = userRepository.findByEmail(EMAIL).orElseThrow().getPassword();
+        assertTrue(stored.startsWith("$2a$05$"), stored);
+
+        // And the new hash still logs in
+        mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + EMAIL + "\",\"password\":\"secret123\"}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void loginSucceedsWhenThePoolRefusesTheRehash() throws Exception {
+        String oldHash = new BCryptPasswordEncoder(4).encode("secret123");
+        userRepository.save(new User(BUSY_EMAIL, oldHash, "Dave"));
+        // Only the rehash: the provider also hashes a dummy password once, for unknown emails
+        doThrow(new CustomExceptions.ServiceUnavailable("Too many password checks in progress"))
+                .when(passwordEncoder).encode("secret123");
+
+        mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + BUSY_EMAIL + "\",\"password\":\"secret123\"}"))
+                .andExpect(status().isOk());
+
+        // Left for a later login
+        assertEquals(oldHash, userRepository.findByEmail(BUSY_EMAIL).orElseThrow().getPassword());
+    }
+}
@@ -0,0 +1,106 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.service.ImageResizer;
+import com.faceshare.util.BkTree;
+import com.faceshare.util.PerceptualHash;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Re-uploads of the same shot must hash close together, different shots far
+ * apart, and the BK-tree must find exactly the hashes within the radius.
+ */
+class PerceptualHashTests {
+
+    private final ImageResizer imageResizer = new ImageResizer(0.5f);
+
+    @Test
+    void recompressedAndResizedCopyIsNear() throws Exception {
+        BufferedImage original = scene(1600, 1200, Color.ORANGE, Color.BLUE);
+        BufferedImage copy = recompress(imageResizer.resize(original, 640, 640, ImageResizer.Fit.CONTAIN));
+
+        int distance = PerceptualHash.distance(PerceptualHash.dHash(original), PerceptualHash.dHash(copy));
+        assertTrue(distance <= 4, "distance " + distance);
+    }
+
+    @Test
+    void differentShotIsFar() {
+        BufferedImage first = scene(800, 600, Color.ORANGE, Color.BLUE);
+        BufferedImage second = mirrored(first);
+
+        int distance = PerceptualHash.distance(PerceptualHash.dHash(first), PerceptualHash.dHash(second));
+        assertTrue(distance > 16, "distance " + distance);
+    }
+
+    // A blank frame and a plain gradient hash to all zeros and all ones
+    @Test
+    void featurelessImagesAreNotDistinctive() {
+        BufferedImage blank = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        BufferedImage gradient = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = gradient.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.BLACK, 800, 0, Color.WHITE));
+        graphics.fillRect(0, 0, 800, 600);
+        graphics.dispose();
+
+        assertFalse(PerceptualHash.isDistinctive(PerceptualHash.dHash(blank), 8));
+        assertFalse(PerceptualHash.isDistinctive(PerceptualHash.dHash(gradient), 8));
+        assertTrue(PerceptualHash.isDistinctive(PerceptualHash.dHash(scene(800, 600, Color.ORANGE, Color.BLUE)), 8));
+    }
+
+    @Test
+    void bkTreeReturnsMatchesWithinRadiusNearestFirst() {
+        BkTree<String> tree = new BkTree<>();
+        tree.add(0b0000L, "zero");
+        tree.add(0b0001L, "one bit");
+        tree.add(0b0111L, "three bits");
+        tree.add(0xFFFFL, "sixteen bits");
+        tree.add(0b0001L, "one bit again");
+
+        List<BkTree.Match<String>> matches = tree.search(0b0000L, 3);
+
+        assertEquals(4, matches.size());
+        assertEquals("zero", matches.get(0).value());
+        assertEquals(3, matches.get(3).distance());
+        assertEquals(5, tree.size());
+    }
+
+    // A diagonal gradient with a few shapes, so the hash has structure in both directions
+    private static BufferedImage scene(int width, int height, Color from, Color to) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, from, width, height, to));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.WHITE);
+        graphics.fillOval(width / 8, height / 6, width / 4, height / 3);
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(width / 2, height / 2, width / 3, height / 4);
+        graphics.dispose();
+        return image;
+    }
+
+    private static BufferedImage mirrored(BufferedImage image) {
+        BufferedImage mirrored = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = mirrored.createGraphics();
+        graphics.drawImage(image, image.getWidth(), 0, -image.getWidth(), image.getHeight(), null);
+        graphics.dispose();
+        return mirrored;
+    }
+
+    private BufferedImage recompress(BufferedImage image) throws Exception {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        imageResizer.writeJpeg(image, jpeg);
+        return ImageIO.read(new ByteArrayInputStream(jpeg.toByteArray()));
+    }
+}
@@ -0,0 +1,37 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.service.PhotoEventService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A user past the per-user emitter cap loses their oldest connection at once:
+ * it stops counting against the node's subscriber limit without waiting for
+ * the container to notice the client is gone.
+ */
+class PhotoEventServiceTests {
+
+    private final PhotoEventService photoEventService = new PhotoEventService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(photoEventService, "maxSubscribers", 100);
+        ReflectionTestUtils.setField(photoEventService, "maxSubscribersPerUser", 2);
+        ReflectionTestUtils.setField(photoEventService, "replaySize", 8);
+        ReflectionTestUtils.setField(photoEventService, "emitterTimeoutMs", 60000L);
+        ReflectionTestUtils.setField(photoEventService, "retentionMs", 60000L);
+    }
+
+    @Test
+    void evictedEmitterStopsCountingRightAway() {
+        for (int i = 0; i < 5; i++) {
+            photoEventService.subscribe(1L, null);
+        }
+        photoEventService.subscribe(2L, null);
+
+        assertEquals(3, photoEventService.getSubscriberCount());
+    }
+}
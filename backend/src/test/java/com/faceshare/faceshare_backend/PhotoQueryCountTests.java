@@ -0,0 +1,136 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.dto.CursorPage;
+import com.faceshare.dto.PhotoDto;
+import com.faceshare.model.Photo;
+import com.faceshare.model.SharedPhoto;
+import com.faceshare.model.User;
+import com.faceshare.repository.PhotoRepository;
+import com.faceshare.repository.SharedPhotoRepository;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.service.PhotoService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Guards the photo list endpoints against N+1 regressions: each one must stay
+ * a fixed number of statements regardless of how many photos it returns.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:querycount;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class PhotoQueryCountTests {
+
+    private static final String ALICE = "alice@example.com";
+    private static final String BOB = "bob@example.com";
+    private static final int PHOTO_COUNT = 5;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private SharedPhotoRepository sharedPhotoRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Statistics statistics;
+    private Long aliceId;
+    private Long bobId;
+
+    @BeforeEach
+    void setUp() {
+        sharedPhotoRepository.deleteAll();
+        photoRepository.deleteAll();
+
+        User alice = userRepository.findByEmail(ALICE).orElseThrow();
+        User bob = userRepository.findByEmail(BOB).orElseThrow();
+        aliceId = alice.getId();
+        bobId = bob.getId();
+        for (int i = 0; i < PHOTO_COUNT; i++) {
+            Photo photo = photoRepository.save(new Photo("p" + i + ".jpg", "local", "p" + i + ".jpg", 100L, "image/jpeg", alice));
+            SharedPhoto share = new SharedPhoto();
+            share.setPhoto(photo);
+            share.setRecipient(bob);
+            sharedPhotoRepository.save(share);
+        }
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void myPhotosIsOneStatement() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        photoService.writeUserPhotos(aliceId, out);
+
+        assertEquals(PHOTO_COUNT, objectMapper.readTree(out.toByteArray()).size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void myPhotosPageIsPageQueryPlusCount() {
+        Page<PhotoDto> photos = photoService.getUserPhotos(aliceId, 0, 2);
+
+        assertEquals(PHOTO_COUNT, photos.getTotalElements());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void sharedPhotosIsOneStatement() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        photoService.writeSharedPhotos(bobId, out);
+
+        JsonNode photos = objectMapper.readTree(out.toByteArray());
+        assertEquals(PHOTO_COUNT, photos.size());
+        assertEquals("Alice Johnson", photos.get(0).get("userFullName").asText());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void sharedPhotosPageIsPageQueryPlusCount() {
+        Page<PhotoDto> photos = photoService.getSharedPhotos(bobId, 0, 2);
+
+        assertEquals(PHOTO_COUNT, photos.getTotalElements());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    // The user ID comes from the token, so there is no user lookup
+    @Test
+    void feedsAreOnePageQuery() {
+        CursorPage<PhotoDto> mine = photoService.getUserPhotoFeed(aliceId, null, 2);
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        photoService.getUserPhotoFeed(aliceId, mine.getNextCursor(), 2);
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        CursorPage<PhotoDto> shared = photoService.getSharedPhotoFeed(bobId, null, PHOTO_COUNT);
+        assertEquals(PHOTO_COUNT, shared.getItems().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
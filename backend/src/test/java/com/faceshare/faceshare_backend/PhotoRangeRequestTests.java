@@ -0,0 +1,178 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.Photo;
+import com.faceshare.model.User;
+import com.faceshare.repository.PhotoRepository;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.service.FileStorageService;
+import com.faceshare.service.JwtService;
+import com.faceshare.service.StoredFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Conditional and range requests for stored photos (LocalFileSender): single
+ * and suffix ranges get a 206, a range past the end a 416, a stale If-Range or
+ * several ranges the whole file, and a matching If-None-Match a 304 without
+ * the file being touched.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ranges;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureMockMvc
+class PhotoRangeRequestTests {
+
+    // 100 bytes, each range's content is easy to spell out
+    private static final String CONTENT = "0123456789".repeat(10);
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadDir(DynamicPropertyRegistry registry) {
+        registry.add("file.upload-dir", uploadDir::toString);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    private User alice;
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        alice = userRepository.findByEmail("alice@example.com").orElseThrow();
+        authorization = "Bearer " + jwtService.generateToken(alice);
+    }
+
+    @Test
+    void wholeFileAdvertisesRanges() throws Exception {
+        Photo photo = photo(CONTENT);
+
+        view(photo, HttpHeaders.ACCEPT, "*/*")
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.ETAG, etag(photo)))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 100))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void singleRangeIsPartialContent() throws Exception {
+        view(photo(CONTENT), HttpHeaders.RANGE, "bytes=10-14")
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-14/100"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 5))
+                .andExpect(content().string("01234"));
+    }
+
+    @Test
+    void suffixRangeIsTheLastBytes() throws Exception {
+        view(photo(CONTENT), HttpHeaders.RANGE, "bytes=-3")
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 97-99/100"))
+                .andExpect(content().string("789"));
+    }
+
+    @Test
+    void rangePastTheEndIsNotSatisfiable() throws Exception {
+        view(photo(CONTENT), HttpHeaders.RANGE, "bytes=100-")
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */100"))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void rangeIsOnlyHonouredForTheCurrentStrongETag() throws Exception {
+        Photo photo = photo(CONTENT);
+
+        mockMvc.perform(get("/api/photos/view/{id}", photo.getId())
+                        .header(HttpHeaders.AUTHORIZATION, authorization)
+                        .header(HttpHeaders.RANGE, "bytes=0-4")
+                        .header(HttpHeaders.IF_RANGE, etag(photo)))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("01234"));
+
+        for (String stale : new String[] {"\"something-else\"", "W/" + etag(photo)}) {
+            mockMvc.perform(get("/api/photos/view/{id}", photo.getId())
+                            .header(HttpHeaders.AUTHORIZATION, authorization)
+                            .header(HttpHeaders.RANGE, "bytes=0-4")
+                            .header(HttpHeaders.IF_RANGE, stale))
+                    .andExpect(status().isOk())
+                    .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                    .andExpect(content().string(CONTENT));
+        }
+    }
+
+    // The ETag is the content hash, so revalidation works with the file gone
+    @Test
+    void matchingIfNoneMatchIsNotModifiedWithoutOpeningTheFile() throws Exception {
+        Photo photo = photo("revalidated " + CONTENT);
+        Files.delete(uploadDir.resolve(photo.getStorageKey()));
+
+        view(photo, HttpHeaders.IF_NONE_MATCH, etag(photo))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag(photo)))
+                .andExpect(content().string(""));
+    }
+
+    // Multiple ranges are rare for images; the whole file is a valid answer
+    @Test
+    void multipleRangesGetTheWholeFile() throws Exception {
+        view(photo(CONTENT), HttpHeaders.RANGE, "bytes=0-1,5-6")
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().string(CONTENT));
+    }
+
+    private ResultActions view(Photo photo, String header, String value) throws Exception {
+        return mockMvc.perform(get("/api/photos/view/{id}", photo.getId())
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .header(header, value));
+    }
+
+    private Photo photo(String content) throws Exception {
+        StoredFile stored = fileStorageService.storeStream(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "range.jpg");
+        Photo photo = new Photo("range.jpg", stored.backend(), stored.key(), (long) content.length(),
+                "image/jpeg", alice);
+        photo.setContentHash(stored.contentHash());
+        return photoRepository.save(photo);
+    }
+
+    private static String etag(Photo photo) {
+        return "\"" + photo.getContentHash() + "\"";
+    }
+}
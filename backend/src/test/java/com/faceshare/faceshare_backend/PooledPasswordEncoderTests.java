@@ -0,0 +1,89 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.exception.CustomExceptions;
+import com.faceshare.security.PooledPasswordEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BCrypt runs on the encoder's own pool at the configured cost, reports
+ * hashes of any other cost for rehashing, and turns callers away once the
+ * pool's queue is full.
+ */
+class PooledPasswordEncoderTests {
+
+    @Test
+    void hashesAtTheConfiguredCostAndRecordsTimings() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PooledPasswordEncoder encoder = new PooledPasswordEncoder(registry, 5, 1, 4);
+
+        String hash = encoder.encode("password");
+        assertTrue(hash.startsWith("$2a$05$"));
+        assertTrue(encoder.matches("password", hash));
+        assertFalse(encoder.matches("wrong", hash));
+
+        assertEquals(1, registry.get("auth.bcrypt.duration").tag("operation", "encode").timer().count());
+        assertEquals(2, registry.get("auth.bcrypt.duration").tag("operation", "matches").timer().count());
+        assertEquals(3, registry.get("auth.bcrypt.queue.wait").timer().count());
+    }
+
+    @Test
+    void hashesOfAnotherCostAreUpgraded() {
+        PooledPasswordEncoder encoder = new PooledPasswordEncoder(new SimpleMeterRegistry(), 5, 1, 4);
+
+        assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(5).encode("password")));
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password")));
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("password")));
+        assertFalse(encoder.upgradeEncoding("not a bcrypt hash"));
+    }
+
+    @Test
+    void fullQueueIsRejectedRightAway() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // One thread, one queue slot: of three simultaneous hashes at least one has no room
+        PooledPasswordEncoder encoder = new PooledPasswordEncoder(registry, 12, 1, 1);
+        String hash = new BCryptPasswordEncoder(12).encode("password");
+
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> calls = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                calls.add(callers.submit(() -> {
+                    start.await();
+                    return encoder.matches("password", hash);
+                }));
+            }
+            start.countDown();
+
+            int rejected = 0;
+            for (Future<Boolean> call : calls) {
+                try {
+                    assertTrue(call.get(30, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertInstanceOf(CustomExceptions.ServiceUnavailable.class, e.getCause());
+                    rejected++;
+                }
+            }
+            assertTrue(rejected >= 1);
+            assertEquals(rejected, registry.get("auth.bcrypt.rejected").counter().count());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
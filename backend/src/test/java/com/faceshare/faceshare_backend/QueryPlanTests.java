@@ -0,0 +1,240 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.Photo;
+import com.faceshare.repository.FaceEncodingRepository;
+import com.faceshare.repository.PhotoBlobRepository;
+import com.faceshare.repository.PhotoRepository;
+import com.faceshare.repository.RefreshTokenRepository;
+import com.faceshare.repository.SharedPhotoRepository;
+import com.faceshare.repository.UserRepository;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Query-plan regression check: calls each hot repository method against the
+ * migrated schema and a seeded dataset, captures the SQL Hibernate actually
+ * sends, and fails if EXPLAIN shows any table read with a full scan instead
+ * of an index.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:queryplan;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+                "com.faceshare.faceshare_backend.QueryPlanTests$CapturedSql",
+        // Cache hits would send no SQL at all
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+class QueryPlanTests {
+
+    private static final int SEED_USERS = 20;
+    private static final int SEED_PHOTOS_PER_USER = 50;
+
+    private static final LocalDateTime CURSOR_CREATED_AT = LocalDateTime.of(2024, 1, 1, 0, 0, 30);
+    private static final List<String> KEYS = List.of("p1.jpg", "p2.jpg");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private SharedPhotoRepository sharedPhotoRepository;
+
+    @Autowired
+    private FaceEncodingRepository faceEncodingRepository;
+
+    @Autowired
+    private PhotoBlobRepository photoBlobRepository;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    /**
+     * Records the SQL Hibernate prepares on the calling thread while a
+     * capture is open; registered through hibernate.session_factory.statement_inspector.
+     */
+    public static class CapturedSql implements StatementInspector {
+
+        private static final ThreadLocal<List<String>> statements = new ThreadLocal<>();
+
+        @Override
+        public String inspect(String sql) {
+            List<String> captured = statements.get();
+            if (captured != null) {
+                captured.add(sql);
+            }
+            return sql;
+        }
+    }
+
+    static Stream<Arguments> hotQueries() {
+        return Stream.of(
+                hot("UserRepository.findByEmail", t -> t.userRepository.findByEmail("seed1@example.com")),
+                hot("UserRepository.findExistingIds", t -> t.userRepository.findExistingIds(List.of(1L, 2L))),
+                hot("UserRepository.findFeedVersionById", t -> t.userRepository.findFeedVersionById(1L)),
+                hot("UserRepository.incrementFeedVersions", t -> t.userRepository.incrementFeedVersions(List.of(1L, 2L))),
+                hot("PhotoRepository.findDtosByUserId",
+                        t -> t.photoRepository.findDtosByUserId(1L, PageRequest.of(0, 20))),
+                hot("PhotoRepository.streamDtosByUserId", t -> t.photoRepository.streamDtosByUserId(1L).count()),
+                hot("PhotoRepository.findFeedFirstPage", t -> t.photoRepository.findFeedFirstPage(1L, Limit.of(21))),
+                hot("PhotoRepository.findFeedAfter",
+                        t -> t.photoRepository.findFeedAfter(1L, CURSOR_CREATED_AT, 100L, Limit.of(21))),
+                hot("PhotoRepository.existsByIdAndUserId", t -> t.photoRepository.existsByIdAndUserId(10L, 1L)),
+                hot("PhotoRepository.findByProcessingStatusOrderByCreatedAtDesc",
+                        t -> t.photoRepository.findByProcessingStatusOrderByCreatedAtDesc(Photo.ProcessingStatus.PENDING)),
+                hot("PhotoRepository.findByBatchIdAndUserIdOrderByIdAsc",
+                        t -> t.photoRepository.findByBatchIdAndUserIdOrderByIdAsc("batch-1", 1L)),
+                hot("PhotoRepository.findPerceptualHashes",
+                        t -> t.photoRepository.findPerceptualHashes(1L, Photo.ProcessingStatus.COMPLETED)),
+                hot("PhotoRepository.findFirstByContentHashAndProcessingStatusAndIdNot",
+                        t -> t.photoRepository.findFirstByContentHashAndProcessingStatusAndIdNot(
+                                "abc", Photo.ProcessingStatus.COMPLETED, 10L)),
+                hot("PhotoRepository.findUsedStorageKeys", t -> t.photoRepository.findUsedStorageKeys("local", KEYS)),
+                hot("PhotoRepository.findUsedThumbnailKeys", t -> t.photoRepository.findUsedThumbnailKeys("local", KEYS)),
+                hot("PhotoRepository.findUsedPreviewKeys", t -> t.photoRepository.findUsedPreviewKeys("local", KEYS)),
+                hot("SharedPhotoRepository.findPhotoDtosByRecipientId",
+                        t -> t.sharedPhotoRepository.findPhotoDtosByRecipientId(2L, PageRequest.of(0, 20))),
+                hot("SharedPhotoRepository.findFeedFirstPage",
+                        t -> t.sharedPhotoRepository.findFeedFirstPage(2L, Limit.of(21))),
+                hot("SharedPhotoRepository.findFeedAfter",
+                        t -> t.sharedPhotoRepository.findFeedAfter(2L, Instant.now(), 100L, Limit.of(21))),
+                hot("SharedPhotoRepository.existsByRecipientIdAndPhotoId",
+                        t -> t.sharedPhotoRepository.existsByRecipientIdAndPhotoId(2L, 10L)),
+                hot("SharedPhotoRepository.findRecipientIdsByPhotoId",
+                        t -> t.sharedPhotoRepository.findRecipientIdsByPhotoId(10L)),
+                hot("FaceEncodingRepository.findByUserId", t -> t.faceEncodingRepository.findByUserId(1L)),
+                hot("FaceEncodingRepository.existsByUserId", t -> t.faceEncodingRepository.existsByUserId(1L)),
+                hot("FaceEncodingRepository.findByUserAndIsPrimaryTrue",
+                        t -> t.faceEncodingRepository.findByUserAndIsPrimaryTrue(t.userRepository.getReferenceById(1L))),
+                hot("FaceEncodingRepository.findByPhoto",
+                        t -> t.faceEncodingRepository.findByPhoto(t.photoRepository.getReferenceById(10L))),
+                hot("FaceEncodingRepository.findMatchingSetVersion",
+                        t -> t.faceEncodingRepository.findMatchingSetVersion()),
+                hot("PhotoBlobRepository.findByContentHashForUpdate",
+                        t -> t.photoBlobRepository.findByContentHashForUpdate("abc")),
+                hot("PhotoBlobRepository.findByStorageKeyForUpdate",
+                        t -> t.photoBlobRepository.findByStorageKeyForUpdate("local", "p1.jpg")),
+                hot("PhotoBlobRepository.findUsedStorageKeys",
+                        t -> t.photoBlobRepository.findUsedStorageKeys("local", KEYS)),
+                hot("PhotoBlobRepository.findRecentlyReferencedStorageKeys",
+                        t -> t.photoBlobRepository.findRecentlyReferencedStorageKeys("local", KEYS, CURSOR_CREATED_AT)),
+                hot("RefreshTokenRepository.findByTokenHash", t -> t.refreshTokenRepository.findByTokenHash("abc")),
+                hot("RefreshTokenRepository.markUsed", t -> t.refreshTokenRepository.markUsed(1L, Instant.now())),
+                hot("RefreshTokenRepository.revokeFamily",
+                        t -> t.refreshTokenRepository.revokeFamily("family-1", Instant.now())),
+                hot("RefreshTokenRepository.deleteExpired",
+                        t -> t.refreshTokenRepository.deleteExpired(Instant.now(), 1000))
+        );
+    }
+
+    private static Arguments hot(String method, Consumer<QueryPlanTests> call) {
+        return Arguments.of(method, call);
+    }
+
+    @BeforeEach
+    void seed() {
+        if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE email LIKE 'seed%'", Integer.class) > 0) {
+            return;
+        }
+
+        jdbcTemplate.update("INSERT INTO users (email, password, full_name, is_enabled, created_at) " +
+                "SELECT 'seed' || x || '@example.com', 'x', 'Seed User ' || x, TRUE, CURRENT_TIMESTAMP " +
+                "FROM SYSTEM_RANGE(1, ?)", SEED_USERS);
+        jdbcTemplate.update("INSERT INTO photos (user_id, file_name, storage_backend, storage_key, processing_status, faces_detected, " +
+                "batch_id, created_at) " +
+                "SELECT u.id, 'p' || x || '.jpg', 'local', 'p' || x || '.jpg', 'COMPLETED', 1, " +
+                "'batch-' || MOD(x, 10), DATEADD('SECOND', x, TIMESTAMP '2024-01-01 00:00:00') " +
+                "FROM users u CROSS JOIN SYSTEM_RANGE(1, ?) WHERE u.email LIKE 'seed%'", SEED_PHOTOS_PER_USER);
+        // Every photo shared with the next user along
+        jdbcTemplate.update("INSERT INTO shared_photos (id, photo_id, recipient_user_id, delivered, created_at) " +
+                "SELECT NEXT VALUE FOR shared_photos_seq, p.id, " +
+                "(SELECT MIN(r.id) FROM users r WHERE r.id > p.user_id), FALSE, CURRENT_TIMESTAMP " +
+                "FROM photos p WHERE p.user_id < (SELECT MAX(id) FROM users)");
+        jdbcTemplate.update("INSERT INTO face_encodings (user_id, photo_id, encoding_json, is_primary, created_at) " +
+                "SELECT p.user_id, p.id, '[0.1, 0.2, 0.3]', FALSE, CURRENT_TIMESTAMP FROM photos p");
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("hotQueries")
+    void hotQueryUsesIndexes(String method, Consumer<QueryPlanTests> call) {
+        List<String> statements = capture(call);
+
+        assertFalse(statements.isEmpty(), () -> method + " sent no SQL");
+        for (String sql : statements) {
+            String plan = explain(sql);
+            assertFalse(plan.contains(".tableScan"), () -> "Full table scan in plan:\n" + plan);
+        }
+    }
+
+    // A deep page must seek to the cursor: created_at has to be part of the
+    // index condition, not a filter applied to every newer row
+    @Test
+    void feedPagesSeekToTheCursor() {
+        String photos = explain(capture(t -> t.photoRepository.findFeedAfter(1L, CURSOR_CREATED_AT, 100L, Limit.of(21))).get(0));
+        String shared = explain(capture(t -> t.sharedPhotoRepository.findFeedAfter(2L, Instant.now(), 100L, Limit.of(21))).get(0));
+
+        assertTrue(indexCondition(photos, "IDX_PHOTOS_USER_CREATED").contains("CREATED_AT <="),
+                () -> "Photo feed does not seek on created_at:\n" + photos);
+        assertTrue(indexCondition(shared, "IDX_SHARED_PHOTOS_RECIPIENT_CREATED").contains("CREATED_AT <="),
+                () -> "Shared feed does not seek on created_at:\n" + shared);
+    }
+
+    // Runs the call in a transaction that is rolled back, so bulk updates and
+    // deletes leave the seeded data alone and streams can be consumed
+    private List<String> capture(Consumer<QueryPlanTests> call) {
+        List<String> statements = new ArrayList<>();
+        CapturedSql.statements.set(statements);
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                status.setRollbackOnly();
+                call.accept(this);
+            });
+        } finally {
+            CapturedSql.statements.remove();
+        }
+        return statements;
+    }
+
+    // H2 plans a statement without its parameter values, so the captured SQL
+    // is explained as is
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+    }
+
+    // The comment H2 puts after a table, e.g. "/* PUBLIC.IDX_X: USER_ID = ?1 AND ... */"
+    private static String indexCondition(String plan, String index) {
+        int start = plan.indexOf(index + ":");
+        assertTrue(start >= 0, () -> "Plan does not use " + index + ":\n" + plan);
+        return plan.substring(start, plan.indexOf("*/", start));
+    }
+}
@@ -0,0 +1,171 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.config.ReplicaRoutingDataSource;
+import com.faceshare.model.User;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.security.AuthenticatedUser;
+import com.faceshare.service.ReadYourWritesTracker;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Read-replica routing against two embedded databases. The "replica" is a
+ * separate H2 database; each side holds a user the other does not have, so
+ * every read shows which database served it. The second-level cache is off
+ * so that every lookup actually reaches a database.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+        "read-replicas.urls=" + ReadReplicaRoutingTests.REPLICA_URL,
+        "read-replicas.lag-query=SELECT seconds FROM replica_lag",
+        "read-replicas.max-lag-seconds=5",
+        "read-replicas.health-check-interval=3600000"
+})
+class ReadReplicaRoutingTests {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_ONLY_EMAIL = "replica-only@example.com";
+    private static final String PRIMARY_ONLY_EMAIL = "primary-only@example.com";
+
+    private static JdbcTemplate replicaJdbc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWrites;
+
+    // No transaction, so this always goes to the primary
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void createReplica() {
+        DriverManagerDataSource replica = new DriverManagerDataSource(REPLICA_URL, "sa", "password");
+        Flyway.configure().dataSource(replica).locations("classpath:db/migration/h2")
+                .placeholders(Map.of("upload-dir", "./uploads")).load().migrate();
+
+        replicaJdbc = new JdbcTemplate(replica);
+        replicaJdbc.execute("CREATE TABLE replica_lag (seconds DOUBLE PRECISION)");
+        replicaJdbc.update("INSERT INTO replica_lag VALUES (0)");
+        replicaJdbc.update("INSERT INTO users (email, password, full_name, is_enabled, created_at) " +
+                "VALUES (?, 'x', 'Replica Only', TRUE, CURRENT_TIMESTAMP)", REPLICA_ONLY_EMAIL);
+    }
+
+    @BeforeEach
+    void seedPrimary() {
+        jdbcTemplate.update("MERGE INTO users (email, password, full_name, is_enabled, created_at) KEY (email) " +
+                "VALUES (?, 'x', 'Primary Only', TRUE, CURRENT_TIMESTAMP)", PRIMARY_ONLY_EMAIL);
+    }
+
+    @AfterEach
+    void reset() {
+        SecurityContextHolder.clearContext();
+        replicaJdbc.update("UPDATE replica_lag SET seconds = 0");
+        routingDataSource.checkReplicas();
+    }
+
+    @Test
+    void readOnlyTransactionsUseTheReplica() {
+        assertTrue(findUser(true, REPLICA_ONLY_EMAIL).isPresent());
+        assertTrue(findUser(true, PRIMARY_ONLY_EMAIL).isEmpty());
+    }
+
+    @Test
+    void readWriteTransactionsUseThePrimary() {
+        assertTrue(findUser(false, REPLICA_ONLY_EMAIL).isEmpty());
+        assertTrue(findUser(false, PRIMARY_ONLY_EMAIL).isPresent());
+    }
+
+    @Test
+    void recentWriterReadsFromThePrimary() {
+        authenticate(41L);
+        readYourWrites.recordWrite(41L);
+
+        assertTrue(findUser(true, PRIMARY_ONLY_EMAIL).isPresent());
+    }
+
+    // Any read-write commit counts, without the write path recording it
+    @Test
+    void readWriteCommitMakesTheUserReadFromThePrimary() {
+        authenticate(42L);
+        assertTrue(findUser(true, PRIMARY_ONLY_EMAIL).isEmpty());
+
+        findUser(false, PRIMARY_ONLY_EMAIL);
+
+        assertTrue(findUser(true, PRIMARY_ONLY_EMAIL).isPresent());
+    }
+
+    @Test
+    void readOnlyTransactionsDoNotCountAsWrites() {
+        authenticate(43L);
+        findUser(true, PRIMARY_ONLY_EMAIL);
+
+        assertFalse(readYourWrites.wroteRecently(43L));
+    }
+
+    // Shares and processing record the users whose data changed, not the one writing
+    @Test
+    void writesRecordedForAnotherUserPinThatUser() {
+        readYourWrites.recordWrite(List.of(44L, 45L));
+
+        authenticate(45L);
+        assertTrue(findUser(true, PRIMARY_ONLY_EMAIL).isPresent());
+        authenticate(46L);
+        assertTrue(findUser(true, PRIMARY_ONLY_EMAIL).isEmpty());
+    }
+
+    private static void authenticate(Long userId) {
+        AuthenticatedUser user = new AuthenticatedUser(userId, "user" + userId + "@example.com", "User " + userId);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+
+    @Test
+    void laggingReplicaFallsBackToThePrimary() {
+        replicaJdbc.update("UPDATE replica_lag SET seconds = 60");
+        routingDataSource.checkReplicas();
+
+        assertEquals(List.of(), routingDataSource.getHealthyReplicas());
+        assertFalse(findUser(true, REPLICA_ONLY_EMAIL).isPresent());
+
+        replicaJdbc.update("UPDATE replica_lag SET seconds = 1");
+        routingDataSource.checkReplicas();
+
+        assertTrue(findUser(true, REPLICA_ONLY_EMAIL).isPresent());
+    }
+
+    private Optional<User> findUser(boolean readOnly, String email) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        return template.execute(status -> userRepository.findByEmail(email));
+    }
+}
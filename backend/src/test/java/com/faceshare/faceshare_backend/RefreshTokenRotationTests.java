@@ -0,0 +1,211 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.RefreshToken;
+import com.faceshare.model.User;
+import com.faceshare.repository.RefreshTokenRepository;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.service.RefreshTokenService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.time.Duration;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Refresh tokens are single use: each refresh returns a new pair without a
+ * password check, a spent token presented again (after the grace period for
+ * retries) revokes every token of its login, and expired rows are cleaned up
+ * in batches.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:refreshtokens;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "jwt.refresh.cleanup-batch-size=2",
+        "jwt.refresh.cleanup-initial-delay=3600000"
+})
+@AutoConfigureMockMvc
+class RefreshTokenRotationTests {
+
+    private static final String ALICE = "alice@example.com";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        refreshTokenRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void refreshReturnsANewPairWithoutCheckingThePassword() throws Exception {
+        JsonNode login = login();
+        double passwordChecks = passwordChecks();
+        statistics.clear();
+
+        JsonNode refreshed = read(refresh(login.get("refreshToken").asText()).andExpect(status().isOk()));
+
+        // Lookup by hash (with the user), mark used, insert the successor
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(passwordChecks, passwordChecks());
+        assertNotEquals(login.get("refreshToken").asText(), refreshed.get("refreshToken").asText());
+        assertEquals(ALICE, refreshed.get("email").asText());
+
+        mockMvc.perform(get("/api/auth/me").header("Authorization", "Bearer " + refreshed.get("token").asText()))
+                .andExpect(status().isOk());
+        read(refresh(refreshed.get("refreshToken").asText()).andExpect(status().isOk()));
+    }
+
+    @Test
+    void reusingASpentTokenRevokesItsFamily() throws Exception {
+        String first = login().get("refreshToken").asText();
+        String second = read(refresh(first).andExpect(status().isOk())).get("refreshToken").asText();
+
+        spentLongAgo();
+        refresh(first).andExpect(status().isUnauthorized());
+
+        // The thief's (or the client's) newer token is gone too
+        refresh(second).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void otherLoginsSurviveReuse() throws Exception {
+        String stolen = login().get("refreshToken").asText();
+        String otherDevice = login().get("refreshToken").asText();
+        refresh(stolen).andExpect(status().isOk());
+        spentLongAgo();
+        refresh(stolen).andExpect(status().isUnauthorized());
+
+        refresh(otherDevice).andExpect(status().isOk());
+    }
+
+    // A client that lost the response to its refresh sends the same token again
+    @Test
+    void retryWithinTheGracePeriodGetsAnotherSuccessor() throws Exception {
+        String first = login().get("refreshToken").asText();
+        String lost = read(refresh(first).andExpect(status().isOk())).get("refreshToken").asText();
+
+        String retried = read(refresh(first).andExpect(status().isOk())).get("refreshToken").asText();
+
+        assertNotEquals(lost, retried);
+        read(refresh(retried).andExpect(status().isOk()));
+        assertEquals(0, refreshTokenRepository.findAll().stream().filter(t -> t.getRevokedAt() != null).count());
+    }
+
+    @Test
+    void logoutRevokesTheRefreshToken() throws Exception {
+        JsonNode login = login();
+        String refreshToken = login.get("refreshToken").asText();
+
+        mockMvc.perform(post("/api/auth/logout")
+                        .header("Authorization", "Bearer " + login.get("token").asText())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"" + refreshToken + "\"}"))
+                .andExpect(status().isOk());
+
+        refresh(refreshToken).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void unknownAndExpiredTokensAreRejected() throws Exception {
+        refresh("not-a-token").andExpect(status().isUnauthorized());
+
+        String token = refreshTokenService.issue(alice());
+        refreshTokenRepository.deleteAll();
+        refresh(token).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void expiredTokensAreDeletedInBatches() {
+        User alice = alice();
+        Instant past = Instant.now().minus(Duration.ofMinutes(1));
+        for (int i = 0; i < 5; i++) {
+            refreshTokenRepository.save(new RefreshToken(alice, "expired-" + i, UUID.randomUUID().toString(), past));
+        }
+        refreshTokenService.issue(alice);
+
+        statistics.clear();
+        assertEquals(5, refreshTokenService.deleteExpired());
+
+        // Batches of 2: 2, 2, 1
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(1, refreshTokenRepository.count());
+        assertTrue(refreshTokenRepository.findAll().get(0).getExpiresAt().isAfter(Instant.now()));
+    }
+
+    // Moves every use out of the grace period, so presenting those tokens again is reuse
+    private void spentLongAgo() {
+        jdbcTemplate.update("UPDATE refresh_tokens SET used_at = ? WHERE used_at IS NOT NULL",
+                Timestamp.from(Instant.now().minus(Duration.ofHours(1))));
+    }
+
+    private User alice() {
+        return userRepository.findByEmail(ALICE).orElseThrow();
+    }
+
+    private JsonNode login() throws Exception {
+        return read(mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + ALICE + "\",\"password\":\"password\"}"))
+                .andExpect(status().isOk()));
+    }
+
+    private ResultActions refresh(String refreshToken) throws Exception {
+        return mockMvc.perform(post("/api/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"refreshToken\":\"" + refreshToken + "\"}"));
+    }
+
+    private JsonNode read(ResultActions result) throws Exception {
+        return objectMapper.readTree(result.andReturn().getResponse().getContentAsString());
+    }
+
+    private double passwordChecks() {
+        return meterRegistry.get("auth.bcrypt.duration").tag("operation", "matches").timer().count();
+    }
+}
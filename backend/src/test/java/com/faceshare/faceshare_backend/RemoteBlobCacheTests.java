@@ -0,0 +1,165 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.storage.BlobStore;
+import com.faceshare.storage.LocalCopy;
+import com.faceshare.storage.RemoteBlobCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Remote objects are downloaded once, by one of the readers asking for them
+ * at the same time, and stay readable by whoever holds a copy when the cache
+ * evicts them.
+ */
+class RemoteBlobCacheTests {
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void repeatedReadsDownloadOnce() throws Exception {
+        CountingStore store = new CountingStore();
+        RemoteBlobCache cache = cache(1 << 20, 100);
+
+        for (int i = 0; i < 3; i++) {
+            try (LocalCopy copy = cache.localCopy(store, "ab/cd/photo.jpg")) {
+                assertEquals("ab/cd/photo.jpg", Files.readString(copy.path()));
+            }
+        }
+
+        assertEquals(1, store.opens.get());
+        assertTrue(Files.exists(cached("ab/cd/photo.jpg")));
+    }
+
+    @Test
+    void concurrentMissesShareOneDownload() throws Exception {
+        CountingStore store = new CountingStore();
+        store.gate = new CountDownLatch(1);
+        RemoteBlobCache cache = cache(1 << 20, 100);
+
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> reads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                reads.add(readers.submit(() -> {
+                    try (LocalCopy copy = cache.localCopy(store, "ab/cd/shared.jpg")) {
+                        return Files.readString(copy.path());
+                    }
+                }));
+            }
+            Thread.sleep(200);
+            store.gate.countDown();
+            for (Future<String> read : reads) {
+                assertEquals("ab/cd/shared.jpg", read.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+
+        assertEquals(1, store.opens.get());
+    }
+
+    @Test
+    void evictedFilesStayReadableUntilTheCopyIsClosed() throws Exception {
+        CountingStore store = new CountingStore();
+        RemoteBlobCache cache = cache(1 << 20, 100);
+
+        try (LocalCopy copy = cache.localCopy(store, "ab/cd/held.jpg");
+             LocalCopy sending = cache.cachedCopy("remote", "ab/cd/held.jpg").orElseThrow()) {
+            cache.invalidate("remote", "ab/cd/held.jpg");
+
+            assertFalse(Files.exists(cached("ab/cd/held.jpg")));
+            assertEquals("ab/cd/held.jpg", Files.readString(copy.path()));
+            assertEquals("ab/cd/held.jpg", Files.readString(sending.path()));
+        }
+        assertTrue(cache.cachedCopy("remote", "ab/cd/held.jpg").isEmpty());
+    }
+
+    @Test
+    void fullDiskShedsTheCacheBeforeTheNextDownload() throws Exception {
+        CountingStore store = new CountingStore();
+        // Any disk is past a 0% watermark, so each download first evicts everything cached
+        RemoteBlobCache cache = cache(1 << 20, 0);
+
+        try (LocalCopy first = cache.localCopy(store, "ab/cd/first.jpg")) {
+            assertEquals("ab/cd/first.jpg", Files.readString(first.path()));
+        }
+        assertTrue(Files.exists(cached("ab/cd/first.jpg")));
+
+        try (LocalCopy second = cache.localCopy(store, "ab/cd/second.jpg")) {
+            assertEquals("ab/cd/second.jpg", Files.readString(second.path()));
+        }
+
+        assertFalse(Files.exists(cached("ab/cd/first.jpg")));
+        assertTrue(cache.cachedCopy("remote", "ab/cd/first.jpg").isEmpty());
+        assertTrue(Files.exists(cached("ab/cd/second.jpg")));
+    }
+
+    private Path cached(String key) {
+        return cacheDir.resolve("remote").resolve(key);
+    }
+
+    private RemoteBlobCache cache(long maxSize, int diskHighWatermark) {
+        return new RemoteBlobCache(new SimpleMeterRegistry(), true, cacheDir.toString(), maxSize,
+                diskHighWatermark, 0);
+    }
+
+    // Each object's content is its key
+    private static class CountingStore implements BlobStore {
+
+        final AtomicInteger opens = new AtomicInteger();
+        volatile CountDownLatch gate;
+
+        @Override
+        public String name() {
+            return "remote";
+        }
+
+        @Override
+        public void put(String key, Path source) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputStream open(String key, long offset, long length) {
+            opens.incrementAndGet();
+            if (gate != null) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public long size(String key) {
+            return key.length();
+        }
+
+        @Override
+        public boolean delete(String key) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.storage.ObjectListing;
+import com.faceshare.storage.S3BlobStore;
+import com.faceshare.storage.StoredObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The S3 store against a minimal in-process stand-in for MinIO: small files
+ * go up in one request, larger ones as a multipart upload, and reads are
+ * ranged GETs.
+ */
+class S3BlobStoreTests {
+
+    private static final String BUCKET = "photos";
+    private static final int PART_SIZE = 1024;
+
+    private static final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private static final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private static final AtomicInteger partRequests = new AtomicInteger();
+
+    private static HttpServer server;
+    private static S3BlobStore store;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", S3BlobStoreTests::handle);
+        server.start();
+        store = new S3BlobStore(BUCKET, "http://127.0.0.1:" + server.getAddress().getPort(), "us-east-1",
+                "minio", "minio-secret", true, PART_SIZE, 2);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void smallFilesArePutWhole() throws Exception {
+        byte[] content = "a small photo".getBytes(StandardCharsets.UTF_8);
+        store.put("ab/cd/small.jpg", file(content));
+
+        assertArrayEquals(content, objects.get("ab/cd/small.jpg"));
+        assertEquals(content.length, store.size("ab/cd/small.jpg"));
+        try (InputStream in = store.open("ab/cd/small.jpg")) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void largeFilesAreUploadedInParts() throws Exception {
+        byte[] content = new byte[PART_SIZE * 3 + 100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        int partsBefore = partRequests.get();
+        store.put("ef/01/large.jpg", file(content));
+
+        assertEquals(4, partRequests.get() - partsBefore);
+        assertArrayEquals(content, objects.get("ef/01/large.jpg"));
+        assertTrue(uploads.isEmpty());
+
+        // A range across a part boundary comes back without the rest of the object
+        try (InputStream in = store.open("ef/01/large.jpg", PART_SIZE - 10, 20)) {
+            assertArrayEquals(Arrays.copyOfRange(content, PART_SIZE - 10, PART_SIZE + 10), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void missingObjectsAreReportedAsMissing() throws Exception {
+        store.put("12/34/gone.jpg", file(new byte[] {1, 2, 3}));
+        assertTrue(store.delete("12/34/gone.jpg"));
+
+        assertThrows(NoSuchFileException.class, () -> store.size("12/34/gone.jpg"));
+        assertThrows(NoSuchFileException.class, () -> store.open("12/34/gone.jpg").close());
+    }
+
+    @Test
+    void listingPagesThroughKeysInOrder() throws Exception {
+        for (String key : List.of("list/b.jpg", "list/a.jpg", "list/c.jpg")) {
+            store.put(key, file(key.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        List<String> keys = new ArrayList<>();
+        String cursor = "list/";
+        do {
+            ObjectListing page = store.list(cursor, 2);
+            page.objects().stream().map(StoredObject::key).filter(key -> key.startsWith("list/")).forEach(keys::add);
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertEquals(List.of("list/a.jpg", "list/b.jpg", "list/c.jpg"), keys);
+    }
+
+    private Path file(byte[] content) throws IOException {
+        Path file = tempDir.resolve(UUID.randomUUID() + ".tmp");
+        Files.write(file, content);
+        return file;
+    }
+
+    // Path-style requests only: /{bucket}/{key}
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Map<String, String> query = query(exchange.getRequestURI());
+            String method = exchange.getRequestMethod();
+            if (query.containsKey("list-type")) {
+                list(exchange, query);
+                return;
+            }
+            String key = exchange.getRequestURI().getPath().substring(BUCKET.length() + 2);
+
+            if (method.equals("PUT") && query.containsKey("partNumber")) {
+                byte[] part = body(exchange);
+                uploads.get(query.get("uploadId")).put(Integer.parseInt(query.get("partNumber")), part);
+                partRequests.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", etag(part));
+                exchange.sendResponseHeaders(200, -1);
+            } else if (method.equals("PUT")) {
+                byte[] content = body(exchange);
+                objects.put(key, content);
+                exchange.getResponseHeaders().add("ETag", etag(content));
+                exchange.sendResponseHeaders(200, -1);
+            } else if (method.equals("POST") && query.containsKey("uploads")) {
+                String uploadId = UUID.randomUUID().toString();
+                uploads.put(uploadId, new TreeMap<>());
+                xml(exchange, "<InitiateMultipartUploadResult><Bucket>" + BUCKET + "</Bucket><Key>" + key
+                        + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+            } else if (method.equals("POST") && query.containsKey("uploadId")) {
+                body(exchange);
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                for (byte[] part : uploads.remove(query.get("uploadId")).values()) {
+                    content.write(part);
+                }
+                objects.put(key, content.toByteArray());
+                xml(exchange, "<CompleteMultipartUploadResult><Bucket>" + BUCKET + "</Bucket><Key>" + key
+                        + "</Key><ETag>\"multipart\"</ETag></CompleteMultipartUploadResult>");
+            } else if (method.equals("DELETE")) {
+                objects.remove(key);
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                read(exchange, key, method.equals("HEAD"));
+            }
+        }
+    }
+
+    private static void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String startAfter = URLDecoder.decode(query.getOrDefault("start-after", ""), StandardCharsets.UTF_8);
+        int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+        List<String> keys = new TreeMap<>(objects).keySet().stream()
+                .filter(key -> key.compareTo(startAfter) > 0)
+                .toList();
+
+        StringBuilder xml = new StringBuilder("<ListBucketResult><Name>" + BUCKET + "</Name>");
+        for (String key : keys.subList(0, Math.min(maxKeys, keys.size()))) {
+            xml.append("<Contents><Key>").append(key).append("</Key><Size>").append(objects.get(key).length)
+                    .append("</Size><LastModified>2024-01-01T00:00:00.000Z</LastModified></Contents>");
+        }
+        xml.append("<IsTruncated>").append(keys.size() > maxKeys).append("</IsTruncated></ListBucketResult>");
+        xml(exchange, xml.toString());
+    }
+
+    private static void read(HttpExchange exchange, String key, boolean head) throws IOException {
+        byte[] content = objects.get(key);
+        if (content == null) {
+            if (head) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                xml(exchange, 404, "<Error><Code>NoSuchKey</Code><Message>Not found</Message></Error>");
+            }
+            return;
+        }
+        if (head) {
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+            exchange.getResponseHeaders().add("ETag", etag(content));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int status = 200;
+        byte[] body = content;
+        if (range != null) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds[1].isEmpty() ? content.length - 1 : Integer.parseInt(bounds[1]);
+            body = Arrays.copyOfRange(content, start, end + 1);
+            status = 206;
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        } else {
+            exchange.getResponseHeaders().add("ETag", etag(content));
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Signed uploads over plain HTTP arrive aws-chunked: "<hex size>;chunk-signature=...\r\n<data>\r\n"
+    private static byte[] body(HttpExchange exchange) throws IOException {
+        byte[] raw = exchange.getRequestBody().readAllBytes();
+        String sha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (sha256 == null || !sha256.startsWith("STREAMING-")) {
+            return raw;
+        }
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        int position = 0;
+        while (true) {
+            int lineEnd = indexOfCrlf(raw, position);
+            String header = new String(raw, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.split(";")[0], 16);
+            if (size == 0) {
+                return decoded.toByteArray();
+            }
+            decoded.write(raw, lineEnd + 2, size);
+            position = lineEnd + 2 + size + 2;
+        }
+    }
+
+    private static int indexOfCrlf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length - 1; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Malformed aws-chunked body");
+    }
+
+    private static void xml(HttpExchange exchange, String body) throws IOException {
+        xml(exchange, 200, body);
+    }
+
+    private static void xml(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String etag(byte[] content) {
+        try {
+            return "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content)) + "\"";
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> query = new TreeMap<>();
+        if (uri.getRawQuery() != null) {
+            for (String parameter : uri.getRawQuery().split("&")) {
+                int equals = parameter.indexOf('=');
+                query.put(equals < 0 ? parameter : parameter.substring(0, equals),
+                        equals < 0 ? "" : parameter.substring(equals + 1));
+            }
+        }
+        return query;
+    }
+}
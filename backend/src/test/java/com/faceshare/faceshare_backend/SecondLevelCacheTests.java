@@ -0,0 +1,102 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.FaceEncoding;
+import com.faceshare.model.User;
+import com.faceshare.repository.FaceEncodingRepository;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.service.FaceEncodingIndex;
+import com.faceshare.service.FeedVersionService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The second-level cache must actually take reads off the database: warm
+ * lookups run no statements, and the frequent feed version bumps must not
+ * flush the users region. Face matching keeps its own in-memory set.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:l2cache;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never"
+})
+class SecondLevelCacheTests {
+
+    private static final String ALICE = "alice@example.com";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FaceEncodingRepository faceEncodingRepository;
+
+    @Autowired
+    private FaceEncodingIndex faceEncodingIndex;
+
+    @Autowired
+    private FeedVersionService feedVersionService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void findByEmailIsServedFromTheNaturalIdCache() {
+        userRepository.findByEmail(ALICE).orElseThrow();
+        statistics.clear();
+
+        User alice = userRepository.findByEmail(ALICE).orElseThrow();
+
+        assertEquals(ALICE, alice.getEmail());
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getNaturalIdCacheHitCount() > 0);
+    }
+
+    @Test
+    void feedVersionBumpKeepsUsersCached() {
+        User alice = userRepository.findByEmail(ALICE).orElseThrow();
+        long version = feedVersionService.currentVersion(alice.getId());
+
+        feedVersionService.bump(alice.getId());
+        statistics.clear();
+
+        userRepository.findByEmail(ALICE).orElseThrow();
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(version + 1, feedVersionService.currentVersion(alice.getId()));
+    }
+
+    // Registered directly, as another node would: only the version query tells
+    @Test
+    void faceMatchingSetIsKeptUntilAnEncodingIsRegistered() {
+        int before = faceEncodingIndex.registeredFaces().size();
+        statistics.clear();
+
+        assertEquals(before, faceEncodingIndex.registeredFaces().size());
+        // The version check only
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        User alice = userRepository.findByEmail(ALICE).orElseThrow();
+        FaceEncoding added = faceEncodingRepository.save(new FaceEncoding(alice, "[0.5, 0.5, 0.5]"));
+        try {
+            statistics.clear();
+            assertEquals(before + 1, faceEncodingIndex.registeredFaces().size());
+            // The version check and one projection query, not a select per encoding
+            assertEquals(2, statistics.getPrepareStatementCount());
+        } finally {
+            faceEncodingRepository.delete(added);
+        }
+        assertEquals(before, faceEncodingIndex.registeredFaces().size());
+    }
+}
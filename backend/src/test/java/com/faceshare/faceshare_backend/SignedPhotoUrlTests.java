@@ -0,0 +1,156 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.Photo;
+import com.faceshare.model.User;
+import com.faceshare.repository.PhotoRepository;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.service.FileStorageService;
+import com.faceshare.service.PhotoUrlSigner;
+import com.faceshare.service.StoredFile;
+import com.faceshare.storage.BlobRef;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * /api/photos/signed is open to anyone holding a URL, so the signature is the
+ * only check: a valid URL serves the photo without authentication, and any
+ * changed part, or an expired URL, is refused before the database is used.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:signedurls;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureMockMvc
+class SignedPhotoUrlTests {
+
+    private static final String CONTENT = "signed photo content";
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadDir(DynamicPropertyRegistry registry) {
+        registry.add("file.upload-dir", uploadDir::toString);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PhotoUrlSigner photoUrlSigner;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${jwt.secret}")
+    private String jwtSecret;
+
+    private Statistics statistics;
+    private Photo photo;
+    private String key;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        User alice = userRepository.findByEmail("alice@example.com").orElseThrow();
+        StoredFile stored = fileStorageService.storeStream(
+                new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8)), "signed.jpg");
+        photo = new Photo("signed.jpg", stored.backend(), stored.key(), (long) CONTENT.length(), "image/jpeg", alice);
+        photo.setContentHash(stored.contentHash());
+        photo = photoRepository.save(photo);
+        key = new BlobRef(stored.backend(), stored.key()).toString();
+    }
+
+    @Test
+    void validUrlServesThePhotoWithoutAuthentication() throws Exception {
+        String url = photoUrlSigner.sign(photo.getId(), "original", key);
+        statistics.clear();
+
+        mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(content().string(CONTENT));
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void tamperedUrlsAreRefused() throws Exception {
+        UriComponents signed = UriComponentsBuilder.fromUriString(
+                photoUrlSigner.sign(photo.getId(), "original", key)).build();
+        String exp = signed.getQueryParams().getFirst("exp");
+        String sig = signed.getQueryParams().getFirst("sig");
+
+        assertRefused(url(photo.getId() + 1, "original", key, exp, sig));
+        assertRefused(url(photo.getId(), "thumbnail", key, exp, sig));
+        assertRefused(url(photo.getId(), "original", key + "x", exp, sig));
+        assertRefused(url(photo.getId(), "original", key, String.valueOf(Long.parseLong(exp) + 1), sig));
+        assertRefused(url(photo.getId(), "original", key, exp, (sig.startsWith("A") ? "B" : "A") + sig.substring(1)));
+    }
+
+    // Signed with the right key, but its expiry has passed
+    @Test
+    void expiredUrlIsRefused() throws Exception {
+        PhotoUrlSigner expired = new PhotoUrlSigner("", jwtSecret, -7200);
+
+        assertRefused(expired.sign(photo.getId(), "original", key));
+    }
+
+    @Test
+    void urlKeyIsNotTheJwtKey() {
+        UriComponents signed = UriComponentsBuilder.fromUriString(
+                photoUrlSigner.sign(photo.getId(), "original", key)).build();
+        PhotoUrlSigner withJwtKey = new PhotoUrlSigner(jwtSecret, jwtSecret, 3600);
+
+        assertFalse(withJwtKey.verify(photo.getId(), "original", key,
+                Long.parseLong(signed.getQueryParams().getFirst("exp")), signed.getQueryParams().getFirst("sig")));
+    }
+
+    private void assertRefused(String url) throws Exception {
+        statistics.clear();
+        mockMvc.perform(get(url)).andExpect(status().isForbidden());
+        assertEquals(0, statistics.getPrepareStatementCount(), url);
+    }
+
+    private static String url(Long photoId, String variant, String key, String exp, String sig) {
+        return UriComponentsBuilder.fromPath(PhotoUrlSigner.SIGNED_PATH)
+                .pathSegment(String.valueOf(photoId), variant)
+                .queryParam("key", key)
+                .queryParam("exp", exp)
+                .queryParam("sig", sig)
+                .encode()
+                .build()
+                .toUriString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.util.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Concurrent requests for the same on-demand render must share one render.
+ */
+class SingleFlightTests {
+
+    @Test
+    void concurrentCallsForOneKeyRunTheWorkOnce() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                release.await();
+                return "rendered-" + runs.incrementAndGet();
+            })));
+            started.await();
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> "rendered-" + runs.incrementAndGet())));
+            }
+            // Let the followers reach the in-flight call before it completes
+            while (executor.getActiveCount() < 8) {
+                Thread.sleep(5);
+            }
+            Thread.sleep(50);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("rendered-1", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, runs.get());
+            assertEquals(0, singleFlight.inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failureIsRethrownAndNotRemembered() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        assertThrows(IOException.class, () -> singleFlight.execute("key", () -> {
+            throw new IOException("decode failed");
+        }));
+        assertEquals("ok", singleFlight.execute("key", () -> "ok"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.model.User;
+import com.faceshare.repository.UserRepository;
+import com.faceshare.service.JwtService;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Requests are authenticated from the token's claims: the feed costs its page
+ * query and nothing else, no user is looked up by email, and a token revoked
+ * at logout stops working straight away. Only configured admins reach the
+ * actuator endpoints besides health.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statelessauth;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "security.admin-emails=Bob@example.com"
+})
+@AutoConfigureMockMvc
+class StatelessAuthenticationTests {
+
+    private static final String ALICE = "alice@example.com";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${jwt.secret}")
+    private String secret;
+
+    private Statistics statistics;
+    private User alice;
+
+    @BeforeEach
+    void setUp() {
+        alice = userRepository.findByEmail(ALICE).orElseThrow();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void feedRequestRunsOnlyThePageQuery() throws Exception {
+        String authorization = "Bearer " + jwtService.generateToken(alice);
+        // Warms the feed version used for the ETag
+        mockMvc.perform(get("/api/photos/my-photos/feed").header("Authorization", authorization))
+                .andExpect(status().isOk());
+        statistics.clear();
+
+        mockMvc.perform(get("/api/photos/my-photos/feed").header("Authorization", authorization))
+                .andExpect(status().isOk());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getNaturalIdCacheHitCount() + statistics.getNaturalIdQueryExecutionCount());
+    }
+
+    @Test
+    void revokedTokensAreRejected() throws Exception {
+        String authorization = "Bearer " + jwtService.generateToken(alice);
+        mockMvc.perform(get("/api/face-encoding/status").header("Authorization", authorization))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/api/auth/logout").header("Authorization", authorization))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/face-encoding/status").header("Authorization", authorization))
+                .andExpect(status().isForbidden());
+    }
+
+    // Issued before the uid and name claims existed: the user is loaded by email instead
+    @Test
+    void tokensWithoutUserClaimsStillAuthenticate() throws Exception {
+        String legacy = Jwts.builder()
+                .setSubject(ALICE)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(secret.getBytes()), SignatureAlgorithm.HS256)
+                .compact();
+
+        mockMvc.perform(get("/api/photos/my-photos/feed").header("Authorization", "Bearer " + legacy))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void actuatorEndpointsOtherThanHealthNeedAnAdmin() throws Exception {
+        User bob = userRepository.findByEmail("bob@example.com").orElseThrow();
+
+        mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+        mockMvc.perform(get("/actuator/metrics")).andExpect(status().isForbidden());
+        mockMvc.perform(get("/actuator/metrics").header("Authorization", "Bearer " + jwtService.generateToken(alice)))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/actuator/storagegc").header("Authorization", "Bearer " + jwtService.generateToken(alice)))
+                .andExpect(status().isForbidden());
+
+        mockMvc.perform(get("/actuator/metrics").header("Authorization", "Bearer " + jwtService.generateToken(bob)))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,91 @@
+package com.faceshare.faceshare_backend;
+
+import com.faceshare.config.UploadLayoutMigration;
+import com.faceshare.model.PhotoBlob;
+import com.faceshare.repository.PhotoBlobRepository;
+import com.faceshare.service.FileStorageService;
+import com.faceshare.service.StoredFile;
+import com.faceshare.storage.LocalBlobStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * New uploads land in the two-level layout, and the migration moves files
+ * stored flat by older versions there without losing track of them.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:layout;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never",
+        "file.migrate-layout=true",
+        "file.write-buffer-size=4"
+})
+class UploadLayoutTests {
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadDir(DynamicPropertyRegistry registry) {
+        registry.add("file.upload-dir", uploadDir::toString);
+    }
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PhotoBlobRepository photoBlobRepository;
+
+    @Autowired
+    private LocalBlobStore localBlobStore;
+
+    @Autowired
+    private UploadLayoutMigration uploadLayoutMigration;
+
+    @Test
+    void uploadsAreFannedOutByName() throws Exception {
+        String content = "streamed through a tiny buffer";
+        StoredFile stored = fileStorageService.storeStream(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "a.jpg");
+
+        String hash = stored.contentHash();
+        Path expected = uploadDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + ".jpg");
+        assertEquals("local", stored.backend());
+        assertEquals(expected, uploadDir.resolve(stored.key()));
+        assertEquals(content, Files.readString(expected));
+    }
+
+    @Test
+    void migrationMovesFlatFilesAndRepointsTheirRows() throws Exception {
+        String hash = "ab12" + "0".repeat(60);
+        Path flat = uploadDir.resolve(hash + ".jpg");
+        Files.writeString(flat, "legacy");
+        String flatKey = hash + ".jpg";
+        photoBlobRepository.save(new PhotoBlob(hash, LocalBlobStore.NAME, flatKey, 6));
+
+        // Found in the other layout while a row still has the old key
+        uploadLayoutMigration.run();
+        assertEquals(uploadDir.resolve("ab/12/" + flatKey), localBlobStore.resolve(flatKey));
+
+        String migratedKey = photoBlobRepository.findById(hash).orElseThrow().getStorageKey();
+        assertEquals("ab/12/" + flatKey, migratedKey);
+        assertFalse(Files.exists(flat));
+        assertTrue(Files.exists(uploadDir.resolve(migratedKey)));
+
+        // Rerunning is a no-op
+        uploadLayoutMigration.run();
+        assertTrue(Files.exists(uploadDir.resolve(migratedKey)));
+    }
+}
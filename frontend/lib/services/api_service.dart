@@ -113,11 +113,14 @@ class ApiService {
     }
   }
 
-  Future<Map<String, dynamic>> refreshToken(String token) async {
+  // Exchanges the refresh token for a new access token and refresh token;
+  // the one sent is spent and must not be used again
+  Future<Map<String, dynamic>> refreshToken(String refreshToken) async {
     try {
       final response = await http.post(
         Uri.parse('$_baseUrl${ApiConstants.refreshEndpoint}'),
-        headers: _getHeaders(token: token),
+        headers: _getHeaders(),
+        body: jsonEncode({'refreshToken': refreshToken}),
       ).timeout(ApiConstants.requestTimeout);
 
       return _handleResponse(response);
@@ -127,6 +130,18 @@ class ApiService {
     }
   }
 
+  Future<void> logout(String token, String? refreshToken) async {
+    try {
+      await http.post(
+        Uri.parse('$_baseUrl${ApiConstants.logoutEndpoint}'),
+        headers: _getHeaders(token: token),
+        body: jsonEncode({'refreshToken': refreshToken}),
+      ).timeout(ApiConstants.requestTimeout);
+    } catch (e) {
+      debugPrint('Logout error: $e');
+    }
+  }
+
   // Photo APIs
   Future<List<Map<String, dynamic>>> getMyPhotos(String token) async {
     try {
@@ -6,12 +6,22 @@ import '../models/user.dart';
 import '../utils/constants.dart';
 import 'api_service.dart';
 
+// How a refresh ended: only a rejected refresh token ends the session
+enum _RefreshOutcome { refreshed, rejected, failed }
+
 class AuthService extends ChangeNotifier {
   final SharedPreferences _prefs;
   
   User? _currentUser;
   String? _token;
+  String? _refreshToken;
   bool _isLoading = false;
+
+  // Access tokens last minutes; they are renewed this long before they expire
+  static const Duration _refreshMargin = Duration(minutes: 1);
+
+  // A refresh in flight, shared so concurrent callers don't spend the refresh token twice
+  Future<_RefreshOutcome>? _refreshing;
   
   // Static instance for backward compatibility
   static AuthService? _instance;
@@ -41,6 +51,7 @@ class AuthService extends ChangeNotifier {
       
       if (token != null && userJson != null) {
         _token = token;
+        _refreshToken = _prefs.getString(StorageKeys.refreshToken);
         _currentUser = User.fromJson(jsonDecode(userJson));
         
         // Verify token is still valid
@@ -55,18 +66,98 @@ class AuthService extends ChangeNotifier {
     notifyListeners();
   }
   
-  // Verify token with backend
+  // Verify token with backend, renewing it first if it has expired. Offline
+  // or with the server unavailable the stored session is kept as it is
   Future<void> _verifyToken() async {
     if (_token == null) return;
     
     try {
+      final token = await validToken();
+      if (token == null) return;
       final apiService = ApiService();
-      await apiService.getCurrentUser(_token!);
+      await apiService.getCurrentUser(token);
       // Token is valid, keep current user
     } catch (e) {
       debugPrint('Token verification failed: $e');
-      await _clearUserData();
+      if (e is ApiException && e.statusCode == 401) {
+        await _clearUserData();
+      }
+    }
+  }
+
+  // The access token, renewed with the refresh token when it is about to
+  // expire. Null if it could not be renewed: logged out if the server
+  // rejected the refresh token, otherwise (offline, timeout, server error)
+  // both tokens are kept so a later call can try again
+  Future<String?> validToken() async {
+    if (_token == null) return null;
+
+    final expiry = _tokenExpiry(_token!);
+    if (expiry != null && DateTime.now().add(_refreshMargin).isBefore(expiry)) {
+      return _token;
+    }
+
+    switch (await _refreshSession()) {
+      case _RefreshOutcome.refreshed:
+        return _token;
+      case _RefreshOutcome.rejected:
+        await _clearUserData();
+        return null;
+      case _RefreshOutcome.failed:
+        return null;
+    }
+  }
+
+  Future<_RefreshOutcome> _refreshSession() {
+    return _refreshing ??= _doRefresh().whenComplete(() => _refreshing = null);
+  }
+
+  Future<_RefreshOutcome> _doRefresh() async {
+    if (_refreshToken == null) return _RefreshOutcome.rejected;
+
+    try {
+      final apiService = ApiService();
+      final response = await apiService.refreshToken(_refreshToken!);
+      await _saveSession(response);
+      return _RefreshOutcome.refreshed;
+    } on ApiException catch (e) {
+      debugPrint('Token refresh failed: $e');
+      // 401: unknown, expired, revoked or reused; anything else may pass
+      return e.statusCode == 401 ? _RefreshOutcome.rejected : _RefreshOutcome.failed;
+    } catch (e) {
+      debugPrint('Token refresh failed: $e');
+      return _RefreshOutcome.failed;
+    }
+  }
+
+  // The access token's exp claim
+  DateTime? _tokenExpiry(String token) {
+    try {
+      final parts = token.split('.');
+      if (parts.length != 3) return null;
+      final payload = jsonDecode(utf8.decode(base64Url.decode(base64Url.normalize(parts[1]))));
+      final exp = payload['exp'];
+      if (exp is! int) return null;
+      return DateTime.fromMillisecondsSinceEpoch(exp * 1000);
+    } catch (e) {
+      return null;
+    }
+  }
+
+  // Keep the tokens and user from a login, registration or refresh response
+  Future<void> _saveSession(Map<String, dynamic> response) async {
+    _token = response['token'];
+    _refreshToken = response['refreshToken'];
+    _currentUser = User.fromJson(response);
+
+    // Save to storage
+    await _prefs.setString(StorageKeys.authToken, _token!);
+    if (_refreshToken != null) {
+      await _prefs.setString(StorageKeys.refreshToken, _refreshToken!);
+    } else {
+      await _prefs.remove(StorageKeys.refreshToken);
     }
+    await _prefs.setString(StorageKeys.userData, jsonEncode(_currentUser!.toJson()));
   }
 
   // Login method
@@ -78,12 +169,7 @@ class AuthService extends ChangeNotifier {
       final apiService = ApiService();
       final response = await apiService.login(email, password);
       
-      _token = response['token'];
-      _currentUser = User.fromJson(response);
-      
-      // Save to storage
-      await _prefs.setString(StorageKeys.authToken, _token!);
-      await _prefs.setString(StorageKeys.userData, jsonEncode(_currentUser!.toJson()));
+      await _saveSession(response);
       
       _isLoading = false;
       notifyListeners();
@@ -105,12 +191,7 @@ class AuthService extends ChangeNotifier {
       final apiService = ApiService();
       final response = await apiService.register(email, password, fullName);
       
-      _token = response['token'];
-      _currentUser = User.fromJson(response);
-      
-      // Save to storage
-      await _prefs.setString(StorageKeys.authToken, _token!);
-      await _prefs.setString(StorageKeys.userData, jsonEncode(_currentUser!.toJson()));
+      await _saveSession(response);
       
       _isLoading = false;
       notifyListeners();
@@ -125,6 +206,10 @@ class AuthService extends ChangeNotifier {
 
   // Logout method
   Future<void> logout() async {
+    if (_token != null) {
+      // Revokes the refresh token too, so a copy of it can't sign back in
+      await ApiService().logout(_token!, _refreshToken);
+    }
     await _clearUserData();
   }
 
@@ -132,7 +217,9 @@ class AuthService extends ChangeNotifier {
   Future<void> _clearUserData() async {
     _currentUser = null;
     _token = null;
+    _refreshToken = null;
     await _prefs.remove(StorageKeys.authToken);
+    await _prefs.remove(StorageKeys.refreshToken);
     await _prefs.remove(StorageKeys.userData);
     notifyListeners();
   }
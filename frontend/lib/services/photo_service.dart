@@ -24,14 +24,15 @@ class PhotoService extends ChangeNotifier {
 
   // Load my photos
   Future<void> loadMyPhotos() async {
-    if (_authService.token == null) return;
+    final token = await _authService.validToken();
+    if (token == null) return;
 
     _isLoading = true;
     _error = null;
     notifyListeners();
 
     try {
-      final photosData = await _apiService.getMyPhotos(_authService.token!);
+      final photosData = await _apiService.getMyPhotos(token);
       _myPhotos = photosData.map((json) => Photo.fromJson(json)).toList();
     } catch (e) {
       _error = e.toString();
@@ -44,14 +45,15 @@ class PhotoService extends ChangeNotifier {
 
   // Load shared photos
   Future<void> loadSharedPhotos() async {
-    if (_authService.token == null) return;
+    final token = await _authService.validToken();
+    if (token == null) return;
 
     _isLoading = true;
     _error = null;
     notifyListeners();
 
     try {
-      final photosData = await _apiService.getSharedPhotos(_authService.token!);
+      final photosData = await _apiService.getSharedPhotos(token);
       _sharedPhotos = photosData.map((json) => Photo.fromJson(json)).toList();
     } catch (e) {
       _error = e.toString();
@@ -64,7 +66,8 @@ class PhotoService extends ChangeNotifier {
 
   // Upload photo
   Future<bool> uploadPhoto(File imageFile) async {
-    if (_authService.token == null) {
+    final token = await _authService.validToken();
+    if (token == null) {
       _error = 'Not authenticated';
       return false;
     }
@@ -74,7 +77,7 @@ class PhotoService extends ChangeNotifier {
     notifyListeners();
 
     try {
-      final response = await _apiService.uploadPhoto(_authService.token!, imageFile);
+      final response = await _apiService.uploadPhoto(token, imageFile);
       final newPhoto = Photo.fromJson(response);
       
       // Add to my photos list
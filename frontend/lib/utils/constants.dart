@@ -41,6 +41,7 @@ class ApiConstants {
 // Storage Keys
 class StorageKeys {
   static const String authToken = 'auth_token';
+  static const String refreshToken = 'refresh_token';
   static const String userData = 'user_data';
   static const String lastSyncTime = 'last_sync_time';
   static const String appTheme = 'app_theme';